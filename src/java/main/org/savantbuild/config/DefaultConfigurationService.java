@@ -83,6 +83,7 @@ public class DefaultConfigurationService implements ConfigurationService {
     // Load the project and the plugins definitions
     Project project = null;
     determineBuildFile(context);
+    determineRefresh(context);
     if (context.getBuildFile().isFile()) {
       project = loadProject(gcl, context.getBuildFile(), context);
       addProjectDefaults(project);
@@ -157,6 +158,12 @@ public class DefaultConfigurationService implements ConfigurationService {
     }
   }
 
+  private void determineRefresh(Context context) {
+    if (context.getCli() != null && context.getCli().hasOption("refresh")) {
+      context.setRefreshDependencies(true);
+    }
+  }
+
   private void determineWorkflowFile(Context context) {
     if (context.getCli() != null && context.getCli().hasOption("workflows")) {
       File file = new File(context.getCli().getOptionValue("workflows"));
@@ -15,6 +15,8 @@
  */
 package org.savantbuild.config.groovy;
 
+import java.util.Map;
+
 import org.savantbuild.BuildException;
 import org.savantbuild.domain.Workflow;
 import org.savantbuild.domain.Workflows;
@@ -30,8 +32,9 @@ public class WorkflowMetaMethod extends AbstractMetaMethod {
   // Package protected reference to the current workflow
   static Workflow current;
 
-  private static final String MESSAGE = "Invalid workflow definition. You can optional supply a name for the workflow like this:\n" +
-    "  workflow(\"name\") {\n" +
+  private static final String MESSAGE = "Invalid workflow definition. You can optional supply a name and attributes " +
+    "for the workflow like this:\n" +
+    "  workflow(\"name\", fetchThreads: 4) {\n" +
     "    fetchProcesses {\n" +
     "      process(...)\n" +
     "    }\n" +
@@ -53,16 +56,26 @@ public class WorkflowMetaMethod extends AbstractMetaMethod {
     }
 
     Object[] argArray = (Object[]) arguments[0];
-    if (argArray == null || argArray.length < 1 || argArray.length > 2) {
+    if (argArray == null || argArray.length < 1 || argArray.length > 3) {
       throw new BuildException(MESSAGE);
     }
 
-    String name = null;
+    // Groovy passes the named arguments as a Map at the front of the arguments
+    Map<?, ?> attributes = null;
     int index = 0;
-    if (argArray.length == 2) {
+    if (argArray[index] instanceof Map) {
+      attributes = (Map<?, ?>) argArray[index++];
+    }
+
+    String name = null;
+    if (argArray.length - index == 2) {
       name = argArray[index++].toString();
     }
 
+    if (argArray.length - index != 1) {
+      throw new BuildException(MESSAGE);
+    }
+
     if (!(argArray[index] instanceof Closure)) {
       throw new BuildException(MESSAGE);
     }
@@ -77,6 +90,12 @@ public class WorkflowMetaMethod extends AbstractMetaMethod {
     }
 
     Workflow workflow = new Workflow();
+    if (attributes != null) {
+      for (Map.Entry<?, ?> entry : attributes.entrySet()) {
+        workflow.getAttributes().put(entry.getKey().toString(), entry.getValue().toString());
+      }
+    }
+
     workflows.getWorkflows().put(name, workflow);
 
     current = workflow;
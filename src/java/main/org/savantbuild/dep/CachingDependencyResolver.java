@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.savantbuild.dep.graph.ArtifactGraph;
+import org.savantbuild.dep.workflow.WorkflowHandler;
+import org.savantbuild.domain.Artifact;
+import org.savantbuild.domain.ArtifactGroup;
+import org.savantbuild.domain.Context;
+import org.savantbuild.domain.Dependencies;
+import org.savantbuild.domain.Process;
+import org.savantbuild.domain.Workflow;
+import org.savantbuild.run.output.Level;
+import org.savantbuild.run.output.Output;
+import org.savantbuild.util.ErrorList;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * <p>
+ * This class is the dependency resolver used during a build. It is a
+ * singleton and remembers the dependency graphs and artifact files it
+ * resolves for the rest of the build.
+ * </p>
+ *
+ * <p>
+ * Graphs are stored before they are mediated and are keyed by the
+ * dependencies, the processes of the workflow and the transitive flag. Each
+ * resolution mediates its own copy of the graph for the artifact group types
+ * it requested, so resolving the same dependencies for different group types
+ * only builds the graph once. Dependencies that use latest or integration
+ * versions are always resolved again because those versions are updated in
+ * place during the resolution.
+ * </p>
+ *
+ * <p>
+ * Artifact files are kept separately for the processes of each workflow,
+ * since workflows can use different caches, and are keyed by the artifact.
+ * Listeners are still notified for artifacts whose files are reused.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+@Singleton
+public class CachingDependencyResolver extends DefaultDependencyResolver {
+  private final Output output;
+  private final Map<String, ArtifactGraph> graphs = new ConcurrentHashMap<String, ArtifactGraph>();
+  private final Map<String, Map<Artifact, File>> files = new ConcurrentHashMap<String, Map<Artifact, File>>();
+
+  public CachingDependencyResolver(Output output) {
+    this(output, null);
+  }
+
+  @Inject
+  public CachingDependencyResolver(Output output, Context context) {
+    super(output, context);
+    this.output = output;
+  }
+
+  @Override
+  protected ArtifactGraph buildGraph(Dependencies dependencies, Workflow workflow, WorkflowHandler handler,
+                                     boolean transitive, ResolutionContext resolutionContext) {
+    for (Artifact artifact : dependencies.getAllArtifacts()) {
+      if (artifact.isLatestBuild() || artifact.isIntegrationBuild()) {
+        return super.buildGraph(dependencies, workflow, handler, transitive, resolutionContext);
+      }
+    }
+
+    String key = graphKey(dependencies, workflow, transitive);
+    ArtifactGraph graph = graphs.get(key);
+    if (graph == null) {
+      graph = super.buildGraph(dependencies, workflow, handler, transitive, resolutionContext);
+      graphs.put(key, graph.copy());
+      return graph;
+    }
+
+    output.println(Level.DEBUG, "Reusing the dependency graph built earlier in the build");
+    graph = graph.copy();
+    dependencies.setGraph(graph);
+    return graph;
+  }
+
+  @Override
+  protected File resolveSingleArtifact(WorkflowHandler handler, Artifact artifact, ErrorList errors,
+                                       ResolutionContext resolutionContext, DependencyListener... listeners) {
+    Map<Artifact, File> files = files(handler.getWorkflow());
+    File file = files == null ? null : files.get(artifact);
+    if (file != null && file.isFile()) {
+      notifyListeners(file, artifact, listeners);
+      return file;
+    }
+
+    file = super.resolveSingleArtifact(handler, artifact, errors, resolutionContext, listeners);
+    if (file != null && files != null) {
+      files.put(artifact, file);
+    }
+
+    return file;
+  }
+
+  /**
+   * Returns the files resolved using the processes of the given workflow.
+   *
+   * @param workflow The workflow or null if it isn't known.
+   * @return The files keyed by artifact or null if the workflow is null.
+   */
+  private Map<Artifact, File> files(Workflow workflow) {
+    if (workflow == null) {
+      return null;
+    }
+
+    String key = workflowKey(workflow);
+    synchronized (files) {
+      Map<Artifact, File> map = files.get(key);
+      if (map == null) {
+        map = new ConcurrentHashMap<Artifact, File>();
+        files.put(key, map);
+      }
+
+      return map;
+    }
+  }
+
+  /**
+   * Builds the key of a graph. Two resolutions with the same key build the same unmediated graph.
+   *
+   * @param dependencies The dependencies being resolved.
+   * @param workflow     The workflow used for the resolution.
+   * @param transitive   The transitive flag.
+   * @return The key.
+   */
+  private String graphKey(Dependencies dependencies, Workflow workflow, boolean transitive) {
+    StringBuilder build = new StringBuilder();
+    Map<String, ArtifactGroup> groups = new TreeMap<String, ArtifactGroup>(dependencies.getArtifactGroups());
+    for (ArtifactGroup group : groups.values()) {
+      build.append("group ").append(group.getType()).append("\n");
+      for (Artifact artifact : group.getArtifacts()) {
+        build.append(artifact.getId()).append(":").append(artifact.getVersion()).append(":").
+          append(artifact.getCompatibility()).append("\n");
+      }
+    }
+
+    build.append(workflowKey(workflow));
+    build.append("transitive ").append(transitive);
+    return build.toString();
+  }
+
+  /**
+   * Builds the key of the processes of a workflow. The other workflow attributes don't change what is resolved.
+   *
+   * @param workflow The workflow.
+   * @return The key.
+   */
+  private String workflowKey(Workflow workflow) {
+    StringBuilder build = new StringBuilder();
+    for (Process process : workflow.getFetchProcesses()) {
+      build.append("fetch ").append(new TreeMap<String, String>(process.getAttributes())).append("\n");
+    }
+    for (Process process : workflow.getPublishProcesses()) {
+      build.append("publish ").append(new TreeMap<String, String>(process.getAttributes())).append("\n");
+    }
+
+    return build.toString();
+  }
+}
@@ -16,11 +16,16 @@
 package org.savantbuild.dep;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.savantbuild.BuildException;
 import org.savantbuild.dep.graph.ArtifactGraph;
@@ -35,11 +40,13 @@ import org.savantbuild.dep.workflow.WorkflowHandler;
 import org.savantbuild.domain.Artifact;
 import org.savantbuild.domain.ArtifactGroup;
 import org.savantbuild.domain.ArtifactID;
+import org.savantbuild.domain.Context;
 import org.savantbuild.domain.Dependencies;
 import org.savantbuild.domain.Workflow;
 import org.savantbuild.run.output.Level;
 import org.savantbuild.run.output.Output;
 import org.savantbuild.util.ErrorList;
+import org.savantbuild.util.StringTools;
 
 import com.google.inject.Inject;
 import static org.savantbuild.util.CollectionTools.*;
@@ -50,14 +57,47 @@ import static org.savantbuild.util.CollectionTools.*;
  * and artifact groups) and call out to interested listeners.
  * </p>
  *
+ * <p>
+ * Once the graph has been built and verified, the artifacts are downloaded
+ * using the number of threads given by the <strong>fetchThreads</strong>
+ * attribute of the workflow. This defaults to a single thread. The same
+ * number of threads is used to fetch the artifact meta data while the graph
+ * is being built. Listeners are always notified one at a time, regardless of
+ * the number of threads.
+ * </p>
+ *
+ * <p>
+ * If a context is given, mediated graphs are stored in lock files in the
+ * lock directory of the context and reused by later resolutions of the same
+ * dependencies, unless the context says the dependencies must be refreshed.
+ * See {@link ResolutionLock}.
+ * </p>
+ *
+ * <p>
+ * If the workflow has a <strong>resolveTimeout</strong> attribute, the
+ * entire resolution must finish within that many seconds. Otherwise the
+ * resolution fails with the list of the requests that were still
+ * outstanding, instead of waiting on a server that stopped responding.
+ * The deadline covers checking the lock file, listing the versions and
+ * fetching the meta data and artifacts. A thread that is blocked reading
+ * from a server still runs until the read timeout of its process, so the
+ * processes should keep their timeouts when this is set.
+ * </p>
+ *
  * @author Brian Pontarelli
  */
 public class DefaultDependencyResolver implements DependencyResolver {
   private final Output output;
+  private final Context context;
 
-  @Inject
   public DefaultDependencyResolver(Output output) {
+    this(output, null);
+  }
+
+  @Inject
+  public DefaultDependencyResolver(Output output, Context context) {
     this.output = output;
+    this.context = context;
   }
 
   @Override
@@ -78,25 +118,53 @@ public class DefaultDependencyResolver implements DependencyResolver {
     }
 
     WorkflowHandler handler = WorkflowHandler.build(workflow, output);
+    int resolveTimeout = StringTools.toInt(workflow.getAttributes().get("resolveTimeout"), 0);
+    ResolutionContext resolutionContext = new ResolutionContext(resolveTimeout * 1000L);
+    try {
+      return resolve(dependencies, workflow, handler, resolutionContext, artifactGroupTypes, transitive, listeners);
+    } finally {
+      resolutionContext.shutdown();
+      handler.shutdown();
+    }
+  }
 
+  private Map<Artifact, File> resolve(Dependencies dependencies, Workflow workflow, WorkflowHandler handler,
+                                      ResolutionContext resolutionContext, Set<String> artifactGroupTypes,
+                                      boolean transitive, DependencyListener... listeners) {
     output.println(Level.DEBUG, "Running dependency mediator");
-    ResolutionContext resolutionContext = new ResolutionContext();
     ArtifactGraph graph = dependencies.getGraph();
-    if (graph == null) {
-      GraphBuilder builder = new GraphBuilder(output, dependencies, handler, transitive);
-      graph = builder.buildGraph(resolutionContext);
+    ResolutionLock lock = null;
+    String fingerprint = null;
+    if (graph == null && context != null) {
+      lock = new ResolutionLock(output, context.getLockDirectory());
+      fingerprint = lock.fingerprint(dependencies, workflow, artifactGroupTypes, transitive);
+      if (fingerprint != null && !context.isRefreshDependencies()) {
+        graph = lock.load(fingerprint, handler, resolutionContext);
+      }
     }
 
-    CompatibilityVerifier verifier = new CompatibilityVerifier(output);
-    ErrorList errors = verifier.verifyCompatibility(dependencies, graph, artifactGroupTypes);
-    if (errors != null && !errors.isEmpty()) {
-      throw new BuildException("Artifact compatibility error", errors);
+    // Locked graphs are already mediated, so they go straight to the fetch
+    ErrorList errors;
+    if (graph != null && fingerprint != null) {
+      dependencies.setGraph(graph);
+    } else {
+      if (graph == null) {
+        graph = buildGraph(dependencies, workflow, handler, transitive, resolutionContext);
+      }
+
+      CompatibilityVerifier verifier = new CompatibilityVerifier(output);
+      errors = verifier.verifyCompatibility(dependencies, graph, artifactGroupTypes);
+      if (errors != null && !errors.isEmpty()) {
+        throw new BuildException("Artifact compatibility error", errors);
+      }
+
+      if (fingerprint != null) {
+        lock.store(fingerprint, graph, handler, resolutionContext);
+      }
     }
 
-    // Perform depth first traversal and download
-    output.println(Level.DEBUG, "Fetching artifacts");
-    errors = new ErrorList();
-    Map<Artifact, File> results = new HashMap<Artifact, File>();
+    // Determine the artifacts to download
+    List<Artifact> artifacts = new ArrayList<Artifact>();
     Set<GraphNode<ArtifactID, ArtifactLink>> nodes = graph.getAllGraphNodes();
     for (GraphNode<ArtifactID, ArtifactLink> node : nodes) {
       ArtifactID id = node.getValue();
@@ -126,32 +194,33 @@ public class DefaultDependencyResolver implements DependencyResolver {
 
       // If we found a suitable version, resolve it
       if (bestLink != null) {
-        Artifact artifact = bestLink.toArtifact(id);
-        File file = resolveSingleArtifact(handler, artifact, errors, resolutionContext, listeners);
-        if (file != null) {
-          results.put(artifact, file);
-        }
+        artifacts.add(bestLink.toArtifact(id));
       }
     }
 
+    output.println(Level.DEBUG, "Fetching artifacts");
+    errors = new ErrorList();
+    int threads = StringTools.toInt(workflow.getAttributes().get("fetchThreads"), 1);
+    Map<Artifact, File> results = fetchArtifacts(handler, artifacts, threads, errors, resolutionContext, listeners);
+
     if (!errors.isEmpty()) {
       throw new BuildException("Savant encountered an error(s) while attempting to resolve the dependencies.", errors);
     }
 
-    // Handle all the negatives
+    // Handle all the negatives at once
     Map<Artifact, Set<String>> missingItems = resolutionContext.getMissingItems();
-    PublishWorkflowHandler pw = handler.getPublishWorkflowHandler();
+    Map<Artifact, Set<String>> negatives = new HashMap<Artifact, Set<String>>();
     for (Artifact artifact : missingItems.keySet()) {
-      Set<String> items = missingItems.get(artifact);
-      for (String item : items) {
-        if (item.equals("AMD_FILE")) {
-          pw.publishNegativeMetaData(artifact);
-        } else {
-          pw.publishNegative(artifact, item);
-        }
+      Set<String> items = new HashSet<String>();
+      for (String item : missingItems.get(artifact)) {
+        items.add(item.equals("AMD_FILE") ? artifact.getArtifactMetaDataFile() : item);
       }
+
+      negatives.put(artifact, items);
     }
 
+    handler.getPublishWorkflowHandler().publishNegatives(negatives);
+
     return results;
   }
 
@@ -168,6 +237,86 @@ public class DefaultDependencyResolver implements DependencyResolver {
   }
 
 
+  /**
+   * Builds the dependency graph. The graph returned has not been mediated yet and is mediated by the caller, which
+   * will modify it.
+   *
+   * @param dependencies      The dependencies to build the graph for.
+   * @param workflow          The workflow.
+   * @param handler           The workflow handler.
+   * @param transitive        Determines if the graph includes the transitive dependencies.
+   * @param resolutionContext The resolution context.
+   * @return The graph.
+   */
+  protected ArtifactGraph buildGraph(Dependencies dependencies, Workflow workflow, WorkflowHandler handler,
+                                     boolean transitive, ResolutionContext resolutionContext) {
+    int threads = StringTools.toInt(workflow.getAttributes().get("fetchThreads"), 1);
+    GraphBuilder builder = new GraphBuilder(output, dependencies, handler, transitive, threads);
+    return builder.buildGraph(resolutionContext);
+  }
+
+  /**
+   * Fetches all of the given artifacts. If the number of threads is greater than one, the artifacts are fetched in
+   * parallel using the pool of the resolution, which has that many threads. Any failures are added to the ErrorList
+   * rather than stopping the other downloads. If the resolution has a deadline, the artifacts are always fetched on
+   * the pool so that this method can stop waiting once the deadline passes.
+   *
+   * @param handler           The workflow handler.
+   * @param artifacts         The artifacts to fetch.
+   * @param threads           The maximum number of threads to fetch with.
+   * @param errors            The ErrorList to add any errors to.
+   * @param resolutionContext The resolution context.
+   * @param listeners         The listeners.
+   * @return The files for the artifacts that were found.
+   */
+  protected Map<Artifact, File> fetchArtifacts(final WorkflowHandler handler, List<Artifact> artifacts, int threads,
+                                               final ErrorList errors, final ResolutionContext resolutionContext,
+                                               final DependencyListener... listeners) {
+    Map<Artifact, File> results = new HashMap<Artifact, File>();
+    if (artifacts.isEmpty() || ((threads <= 1 || artifacts.size() <= 1) && !resolutionContext.hasDeadline())) {
+      for (Artifact artifact : artifacts) {
+        File file = resolveSingleArtifact(handler, artifact, errors, resolutionContext, listeners);
+        if (file != null) {
+          results.put(artifact, file);
+        }
+      }
+
+      return results;
+    }
+
+    output.debug("Fetching [%s] artifacts using [%s] threads", artifacts.size(), threads);
+    ExecutorService executor = resolutionContext.executor(Math.max(1, threads));
+    Map<Artifact, Future<File>> futures = new HashMap<Artifact, Future<File>>();
+    try {
+      for (final Artifact artifact : artifacts) {
+        futures.put(artifact, executor.submit(new Callable<File>() {
+          public File call() {
+            return resolveSingleArtifact(handler, artifact, errors, resolutionContext, listeners);
+          }
+        }));
+      }
+
+      for (Artifact artifact : artifacts) {
+        try {
+          File file = resolutionContext.await(futures.get(artifact));
+          if (file != null) {
+            results.put(artifact, file);
+          }
+        } catch (ExecutionException e) {
+          errors.addError("Unable to fetch dependency [" + artifact + "] because " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+          throw new BuildException("Interrupted while fetching dependencies", e);
+        }
+      }
+    } finally {
+      for (Future<File> future : futures.values()) {
+        future.cancel(true);
+      }
+    }
+
+    return results;
+  }
+
   /**
    * Handles the fetching of a single artifact.
    *
@@ -194,12 +343,23 @@ public class DefaultDependencyResolver implements DependencyResolver {
     // Fetch the source JAR for the artifact, if it exists. If it doesn't that's okay.
     fw.fetchItem(artifact, artifact.getArtifactSourceFile(), pw, resolutionContext);
 
-    output.println(Level.DEBUG, "Done resolving artifact [" + artifact + "]");
+    output.debug("Done resolving artifact [%s]", artifact);
 
+    notifyListeners(file, artifact, listeners);
+    return file;
+  }
+
+  /**
+   * Notifies the listeners that the artifact was found. Listeners aren't required to be thread safe, so they are only
+   * notified one at a time.
+   *
+   * @param file      The file for the artifact.
+   * @param artifact  The artifact.
+   * @param listeners The listeners.
+   */
+  protected synchronized void notifyListeners(File file, Artifact artifact, DependencyListener... listeners) {
     for (DependencyListener listener : listeners) {
       listener.artifactFound(file, artifact);
     }
-
-    return file;
   }
 }
@@ -32,7 +32,7 @@ import com.google.inject.ImplementedBy;
  *
  * @author Brian Pontarelli
  */
-@ImplementedBy(DefaultDependencyResolver.class)
+@ImplementedBy(CachingDependencyResolver.class)
 public interface DependencyResolver {
   /**
    * Resolves the single artifact using the given workflow. If this is a transitive resolution, the set of artifact
@@ -16,12 +16,26 @@
 package org.savantbuild.dep;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.savantbuild.BuildException;
 import org.savantbuild.domain.Artifact;
+import org.savantbuild.domain.ArtifactMetaData;
+import org.savantbuild.util.ErrorList;
 
 /**
  * <p>
@@ -32,11 +46,50 @@ import org.savantbuild.domain.Artifact;
  * items.
  * </p>
  *
+ * <p>
+ * The context can also have a deadline for the entire resolution. The
+ * context keeps track of the requests that are running, so that if the
+ * deadline passes the resolution fails right away with a list of the
+ * requests that were still outstanding.
+ * </p>
+ *
+ * <p>
+ * The context also owns the pool of threads that fetch in parallel, so that
+ * building the graph and fetching the artifacts of a resolution share one
+ * pool. The pool is created the first time it is needed and must be shut
+ * down once the resolution is done. The context is safe to use from those
+ * threads.
+ * </p>
+ *
  * @author Brian Pontarelli
  */
 public class ResolutionContext {
   private final Map<Artifact, Set<String>> missingItems = new HashMap<Artifact, Set<String>>();
   private final Map<Artifact, File> files = new HashMap<Artifact, File>();
+  private final Map<Artifact, ArtifactMetaData> metaData = new HashMap<Artifact, ArtifactMetaData>();
+  private final List<String> outstanding = new ArrayList<String>();
+  private final long timeout;
+  private final long deadline;
+  private int metaDataHits;
+  private int metaDataMisses;
+  private ThreadPoolExecutor executor;
+
+  /**
+   * Constructs a context without a deadline.
+   */
+  public ResolutionContext() {
+    this(0);
+  }
+
+  /**
+   * Constructs a context whose deadline is the given number of milliseconds from now.
+   *
+   * @param timeout The number of milliseconds the resolution can take or 0 for no deadline.
+   */
+  public ResolutionContext(long timeout) {
+    this.timeout = timeout;
+    this.deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+  }
 
   /**
    * Adds a dependency item that could not be resolved.
@@ -44,7 +97,7 @@ public class ResolutionContext {
    * @param artifact The artifact for which the item (could be the artifact itself) could not be resolved.
    * @param item     The item.
    */
-  public void addMissingItem(Artifact artifact, String item) {
+  public synchronized void addMissingItem(Artifact artifact, String item) {
     Set<String> items = missingItems.get(artifact);
     if (items == null) {
       items = new HashSet<String>();
@@ -57,7 +110,7 @@ public class ResolutionContext {
   /**
    * @return The Map of missing items for artifacts. This Map is live.
    */
-  public Map<Artifact, Set<String>> getMissingItems() {
+  public synchronized Map<Artifact, Set<String>> getMissingItems() {
     return missingItems;
   }
 
@@ -67,14 +120,183 @@ public class ResolutionContext {
    * @param artifact The artifact.
    * @param file     The file.
    */
-  public void addArtifactFile(Artifact artifact, File file) {
+  public synchronized void addArtifactFile(Artifact artifact, File file) {
     files.put(artifact, file);
   }
 
   /**
    * @return The Map of artifact files.
    */
-  public Map<Artifact, File> getArtifactFiles() {
+  public synchronized Map<Artifact, File> getArtifactFiles() {
     return files;
   }
+
+  /**
+   * Determines if the meta data for the given artifact has already been fetched during this resolution. This includes
+   * artifacts that don't have any meta data.
+   *
+   * @param artifact The artifact.
+   * @return True if the meta data was fetched, false otherwise.
+   */
+  public synchronized boolean isMetaDataFetched(Artifact artifact) {
+    return metaData.containsKey(artifact);
+  }
+
+  /**
+   * Returns the meta data that was already fetched for the given artifact and counts it as a hit.
+   *
+   * @param artifact The artifact.
+   * @return The meta data or null if the artifact doesn't have any.
+   */
+  public synchronized ArtifactMetaData getMetaData(Artifact artifact) {
+    metaDataHits++;
+    return metaData.get(artifact);
+  }
+
+  /**
+   * Stores the meta data fetched for the given artifact and counts it as a miss.
+   *
+   * @param artifact The artifact.
+   * @param amd      The meta data or null if the artifact doesn't have any.
+   */
+  public synchronized void addMetaData(Artifact artifact, ArtifactMetaData amd) {
+    metaDataMisses++;
+    metaData.put(artifact, amd);
+  }
+
+  /**
+   * @return The number of times meta data was reused rather than fetched.
+   */
+  public synchronized int getMetaDataHits() {
+    return metaDataHits;
+  }
+
+  /**
+   * @return The number of times meta data was fetched.
+   */
+  public synchronized int getMetaDataMisses() {
+    return metaDataMisses;
+  }
+
+  /**
+   * @return True if the resolution has a deadline.
+   */
+  public boolean hasDeadline() {
+    return deadline > 0;
+  }
+
+  /**
+   * Records that a request, such as the download of an item, started.
+   *
+   * @param request The description of the request.
+   */
+  public synchronized void startRequest(String request) {
+    outstanding.add(request);
+  }
+
+  /**
+   * Records that a request finished, whether it worked or not.
+   *
+   * @param request The description of the request.
+   */
+  public synchronized void finishRequest(String request) {
+    outstanding.remove(request);
+  }
+
+  /**
+   * Fails if the deadline has passed.
+   *
+   * @throws BuildException If the deadline has passed.
+   */
+  public void checkDeadline() throws BuildException {
+    if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+      throw deadlineExceeded();
+    }
+  }
+
+  /**
+   * Waits for the given future until the deadline.
+   *
+   * @param future The future.
+   * @return The result of the future.
+   * @throws ExecutionException   If the future failed.
+   * @throws InterruptedException If the thread was interrupted.
+   * @throws BuildException       If the deadline passed first.
+   */
+  public <T> T await(Future<T> future) throws ExecutionException, InterruptedException, BuildException {
+    if (deadline == 0) {
+      return future.get();
+    }
+
+    try {
+      return future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      throw deadlineExceeded();
+    }
+  }
+
+  /**
+   * Waits for the next task of the given completion service to finish until the deadline.
+   *
+   * @param completion The completion service.
+   * @return The future of the task that finished.
+   * @throws InterruptedException If the thread was interrupted.
+   * @throws BuildException       If the deadline passed first.
+   */
+  public <T> Future<T> take(CompletionService<T> completion) throws InterruptedException, BuildException {
+    if (deadline == 0) {
+      return completion.take();
+    }
+
+    Future<T> future = completion.poll(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+    if (future == null) {
+      throw deadlineExceeded();
+    }
+
+    return future;
+  }
+
+  /**
+   * Returns the pool of threads for the fetches of this resolution, creating it the first time.
+   *
+   * @param threads The number of threads, which is only used when the pool is created.
+   * @return The pool.
+   */
+  public synchronized ExecutorService executor(int threads) {
+    if (executor == null) {
+      executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory() {
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "savant-fetch");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+      executor.allowCoreThreadTimeOut(true);
+    }
+
+    return executor;
+  }
+
+  /**
+   * Shuts down the pool of threads if it was created. Interrupting a thread doesn't stop a blocked socket read, so a
+   * thread can keep running until the connect or read timeout of its process. The threads are daemons so that they
+   * don't keep the JVM running.
+   */
+  public synchronized void shutdown() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  private synchronized BuildException deadlineExceeded() {
+    ErrorList errors = new ErrorList();
+    for (String request : outstanding) {
+      errors.addError("Still fetching " + request);
+    }
+
+    return new BuildException("Unable to resolve the dependencies within [" + (timeout / 1000) + "] seconds. " +
+      "There were [" + outstanding.size() + "] requests outstanding.", errors);
+  }
 }
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.savantbuild.dep.graph.ArtifactGraph;
+import org.savantbuild.dep.graph.ArtifactLink;
+import org.savantbuild.dep.graph.GraphLink;
+import org.savantbuild.dep.version.ArtifactVersionTools;
+import org.savantbuild.dep.workflow.WorkflowHandler;
+import org.savantbuild.domain.Artifact;
+import org.savantbuild.domain.ArtifactGroup;
+import org.savantbuild.domain.ArtifactID;
+import org.savantbuild.domain.Dependencies;
+import org.savantbuild.domain.Process;
+import org.savantbuild.domain.Workflow;
+import org.savantbuild.io.FileTools;
+import org.savantbuild.run.output.Level;
+import org.savantbuild.run.output.Output;
+import org.savantbuild.util.StringTools;
+
+/**
+ * <p>
+ * This class stores fully mediated dependency graphs in lock files so that
+ * later builds can skip building and verifying the graph. Each lock file is
+ * named using a fingerprint of the dependencies, the workflow, the artifact
+ * group types and the transitive flag. The lock also records the MD5 of the
+ * AMD file of every artifact in the graph and it is only used if all of the
+ * AMD files still have the same MD5.
+ * </p>
+ *
+ * <p>
+ * Dependencies that use latest or integration versions are never locked
+ * because those versions must be determined on every build.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class ResolutionLock {
+  private static final String VERSION = "1";
+  private final Output output;
+  private final File directory;
+
+  public ResolutionLock(Output output, File directory) {
+    this.output = output;
+    this.directory = directory;
+  }
+
+  /**
+   * Builds the fingerprint for a resolution.
+   *
+   * @param dependencies       The dependencies being resolved.
+   * @param workflow           The workflow used for the resolution.
+   * @param artifactGroupTypes The artifact group types being resolved.
+   * @param transitive         The transitive flag.
+   * @return The fingerprint or null if the dependencies contain latest or integration versions and therefore can't
+   *         be locked.
+   */
+  public String fingerprint(Dependencies dependencies, Workflow workflow, Set<String> artifactGroupTypes,
+                            boolean transitive) {
+    for (Artifact artifact : dependencies.getAllArtifacts()) {
+      if (artifact.isLatestBuild() || artifact.isIntegrationBuild()) {
+        return null;
+      }
+    }
+
+    StringBuilder build = new StringBuilder(VERSION).append("\n");
+    build.append(describe(dependencies, workflow, transitive)).append("\n");
+    build.append("types ").append(new TreeSet<String>(artifactGroupTypes));
+
+    try {
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      return StringTools.toHex(digest.digest(build.toString().getBytes("UTF-8")));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Describes a resolution using the dependencies, the workflow processes and the transitive flag. Two resolutions
+   * with the same description produce the same dependency graph.
+   *
+   * @param dependencies The dependencies being resolved.
+   * @param workflow     The workflow used for the resolution.
+   * @param transitive   The transitive flag.
+   * @return The description.
+   */
+  private String describe(Dependencies dependencies, Workflow workflow, boolean transitive) {
+    StringBuilder build = new StringBuilder();
+    Map<String, ArtifactGroup> groups = new TreeMap<String, ArtifactGroup>(dependencies.getArtifactGroups());
+    for (ArtifactGroup group : groups.values()) {
+      build.append("group ").append(group.getType()).append("\n");
+      for (Artifact artifact : group.getArtifacts()) {
+        build.append(artifact.getGroup()).append(":").append(artifact.getProject()).append(":").
+          append(artifact.getName()).append(":").append(artifact.getVersion()).append(":").
+          append(artifact.getType()).append("\n");
+      }
+    }
+
+    for (Process process : workflow.getFetchProcesses()) {
+      build.append("fetch ").append(new TreeMap<String, String>(process.getAttributes())).append("\n");
+    }
+    for (Process process : workflow.getPublishProcesses()) {
+      build.append("publish ").append(new TreeMap<String, String>(process.getAttributes())).append("\n");
+    }
+
+    build.append("transitive ").append(transitive);
+    return build.toString();
+  }
+
+  /**
+   * Loads the graph for the given fingerprint.
+   *
+   * @param fingerprint       The fingerprint.
+   * @param handler           The workflow handler used to fetch the AMD files so their MD5s can be checked.
+   * @param resolutionContext The resolution context of the resolution that the graph is for.
+   * @return The mediated graph or null if there isn't a lock file, the lock file is stale or one of the AMD files
+   *         couldn't be fetched. The dependencies must then be resolved without the lock.
+   */
+  public ArtifactGraph load(String fingerprint, WorkflowHandler handler, ResolutionContext resolutionContext) {
+    File file = lockFile(fingerprint);
+    if (!file.isFile()) {
+      return null;
+    }
+
+    List<ArtifactID> ids = new ArrayList<ArtifactID>();
+    ArtifactGraph graph = null;
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] parts = line.split("\t", -1);
+          if (parts[0].equals("version") && !parts[1].equals(VERSION)) {
+            return null;
+          } else if (parts[0].equals("root")) {
+            Artifact root = new Artifact(parts[1], parts[2], parts[3], parts[4], parts[5]);
+            graph = new ArtifactGraph(root);
+            ids.add(root.getId());
+          } else if (parts[0].equals("node")) {
+            ids.add(ArtifactID.intern(parts[1], parts[2], parts[3], parts[4]));
+          } else if (parts[0].equals("link")) {
+            ArtifactLink link = new ArtifactLink(value(parts[3]), value(parts[4]), value(parts[5]), value(parts[6]),
+              value(parts[7]));
+            graph.addLink(ids.get(Integer.parseInt(parts[1])), ids.get(Integer.parseInt(parts[2])), link);
+          } else if (parts[0].equals("amd")) {
+            Artifact artifact = new Artifact(ids.get(Integer.parseInt(parts[1])), parts[2], null);
+            String md5 = amdMD5(artifact, handler, resolutionContext);
+            if (md5 == null ? !parts[3].equals("") : !md5.equals(parts[3])) {
+              output.debug("The AMD file for [%s] changed. Ignoring lock file [%s]", artifact, file);
+              return null;
+            }
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (Exception e) {
+      // The deadline covers the whole resolution, so a lock file that took too long to check isn't a reason to start
+      // the full resolution
+      resolutionContext.checkDeadline();
+
+      // This includes failures fetching the AMD files, which the full resolution reports if they happen again
+      if (output.isEnabled(Level.DEBUG)) {
+        output.println(Level.DEBUG, "Unable to read lock file [" + file + "]. Ignoring it.", e);
+      }
+      return null;
+    }
+
+    output.debug("Using dependency graph from lock file [%s]", file);
+    return graph;
+  }
+
+  /**
+   * Stores the given mediated graph in the lock file for the fingerprint. Graphs that contain integration builds
+   * aren't stored.
+   *
+   * @param fingerprint       The fingerprint.
+   * @param graph             The mediated graph.
+   * @param handler           The workflow handler used to fetch the AMD files so their MD5s can be recorded.
+   * @param resolutionContext The resolution context of the resolution that built the graph.
+   */
+  public void store(String fingerprint, ArtifactGraph graph, WorkflowHandler handler,
+                    ResolutionContext resolutionContext) {
+    List<ArtifactID> ids = new ArrayList<ArtifactID>(graph.getAllGraphNodesValues());
+    ids.remove(graph.getRoot().getId());
+    Collections.sort(ids, new Comparator<ArtifactID>() {
+      public int compare(ArtifactID first, ArtifactID second) {
+        return first.toString().compareTo(second.toString());
+      }
+    });
+    ids.add(0, graph.getRoot().getId());
+
+    Map<ArtifactID, Integer> indexes = new HashMap<ArtifactID, Integer>();
+    for (ArtifactID id : ids) {
+      indexes.put(id, indexes.size());
+    }
+
+    Map<Artifact, Integer> artifacts = new LinkedHashMap<Artifact, Integer>();
+    List<String> links = new ArrayList<String>();
+    for (ArtifactID id : ids) {
+      for (GraphLink<ArtifactID, ArtifactLink> link : graph.getOutboundLinks(id)) {
+        ArtifactLink value = link.value;
+        if (value.getDependencyIntegrationVersion() != null ||
+          value.getDependencyVersion().endsWith(ArtifactVersionTools.INTEGRATION)) {
+          output.println(Level.DEBUG, "Not locking the dependency graph because it contains integration builds");
+          return;
+        }
+
+        ArtifactID destination = link.destination.getValue();
+        links.add(StringTools.join("\t", "link", indexes.get(id).toString(), indexes.get(destination).toString(),
+          safe(value.getDependentVersion()), safe(value.getDependencyVersion()), "", safe(value.getType()),
+          safe(value.getCompatibility())));
+        artifacts.put(value.toArtifact(destination), indexes.get(destination));
+      }
+    }
+
+    if (!directory.mkdirs() && !directory.isDirectory()) {
+      output.debug("Unable to create the lock directory [%s]", directory);
+      return;
+    }
+
+    File file = lockFile(fingerprint);
+    try {
+      File temp = File.createTempFile("savant-lock", ".tmp", directory);
+      PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"));
+      try {
+        writer.print(StringTools.join("\t", "version", VERSION) + "\n");
+
+        Artifact root = graph.getRoot();
+        writer.print(StringTools.join("\t", "root", root.getGroup(), root.getProject(), root.getName(),
+          root.getVersion(), root.getType()) + "\n");
+        for (ArtifactID id : ids.subList(1, ids.size())) {
+          writer.print(StringTools.join("\t", "node", id.getGroup(), id.getProject(), id.getName(), id.getType()) + "\n");
+        }
+
+        for (String link : links) {
+          writer.print(link + "\n");
+        }
+
+        for (Artifact artifact : artifacts.keySet()) {
+          writer.print(StringTools.join("\t", "amd", artifacts.get(artifact).toString(), artifact.getVersion(),
+            safe(amdMD5(artifact, handler, resolutionContext))) + "\n");
+        }
+      } finally {
+        writer.close();
+      }
+
+      if ((file.exists() && !file.delete()) || !temp.renameTo(file)) {
+        temp.delete();
+        output.debug("Unable to write lock file [%s]", file);
+      }
+    } catch (IOException e) {
+      if (output.isEnabled(Level.DEBUG)) {
+        output.println(Level.DEBUG, "Unable to write lock file [" + file + "]", e);
+      }
+    }
+  }
+
+  private File lockFile(String fingerprint) {
+    return new File(directory, fingerprint + ".lock");
+  }
+
+  private String amdMD5(Artifact artifact, WorkflowHandler handler, ResolutionContext resolutionContext)
+    throws IOException {
+    File amd = handler.getFetchWorkflowHandler().fetchItem(artifact, artifact.getArtifactMetaDataFile(),
+      handler.getPublishWorkflowHandler(), resolutionContext);
+    return amd == null ? null : FileTools.md5(amd).sum;
+  }
+
+  private String safe(String value) {
+    return value == null ? "" : value;
+  }
+
+  private String value(String value) {
+    return value.length() == 0 ? null : value;
+  }
+}
@@ -110,6 +110,9 @@ public class ArtifactCopyTask extends Copy {
       Workflow workflow = manager.determineProjectWorkflow(context.getWorkflows(), context.getProject());
 
       Dependencies deps = context.getProject().getDependencies().get(dependencies);
+
+      // The graph might have been mediated for other artifact group types. The resolver keeps the graph from before
+      // mediation, so clearing it doesn't cause the graph to be built again.
       deps.setGraph(null);
       manager.getResolver().resolve(deps, workflow, artifactGroupTypes, transitive, copyListener);
 
@@ -131,6 +131,18 @@ public class DependencyPathMain {
     public void debug(String message) {
     }
 
+    @Override
+    public void debug(String format, Object... args) {
+    }
+
+    @Override
+    public void debug(String format, Object arg) {
+    }
+
+    @Override
+    public void debug(String format, Object first, Object second) {
+    }
+
     @Override
     public void info(String message) {
     }
@@ -159,6 +171,11 @@ public class DependencyPathMain {
     public void println(Level level, String message, Throwable t) {
     }
 
+    @Override
+    public boolean isEnabled(Level level) {
+      return false;
+    }
+
     @Override
     public Level getLevel() {
       return null;
@@ -16,6 +16,7 @@
 package org.savantbuild.dep.graph;
 
 import java.util.List;
+import java.util.Set;
 
 import org.savantbuild.domain.Artifact;
 import org.savantbuild.domain.ArtifactGroup;
@@ -34,13 +35,40 @@ public class ArtifactGraph extends HashGraph<ArtifactID, ArtifactLink> {
 
   public ArtifactGraph(Artifact root) {
     this.root = root;
-    addGraphNode(root.getId());
+    addGraphNode(root.getId().intern());
   }
 
   public Artifact getRoot() {
     return root;
   }
 
+  /**
+   * Copies this graph. The nodes and links are copied in the same order so that the copy can be mediated without
+   * changing this graph. The node values and link values are shared because they are never modified.
+   *
+   * @return The copy.
+   */
+  public ArtifactGraph copy() {
+    ArtifactGraph copy = new ArtifactGraph(root);
+    Set<GraphNode<ArtifactID, ArtifactLink>> nodes = getAllGraphNodes();
+    for (GraphNode<ArtifactID, ArtifactLink> node : nodes) {
+      copy.addGraphNode(node.getValue());
+    }
+
+    for (GraphNode<ArtifactID, ArtifactLink> node : nodes) {
+      GraphNode<ArtifactID, ArtifactLink> copyNode = copy.getGraphNode(node.getValue());
+      for (GraphLink<ArtifactID, ArtifactLink> link : node.getOutboundLinksList()) {
+        copyNode.addOutboundLink(copy.getGraphNode(link.destination.getValue()), link.value);
+      }
+
+      for (GraphLink<ArtifactID, ArtifactLink> link : node.getInboundLinksList()) {
+        copyNode.addInboundLink(copy.getGraphNode(link.origin.getValue()), link.value);
+      }
+    }
+
+    return copy;
+  }
+
   public Dependencies getDependencies(Artifact artifact) {
     List<GraphLink<ArtifactID, ArtifactLink>> links = getOutboundLinks(artifact.getId());
 
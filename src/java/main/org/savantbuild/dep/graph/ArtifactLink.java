@@ -17,10 +17,13 @@ package org.savantbuild.dep.graph;
 
 import org.savantbuild.domain.Artifact;
 import org.savantbuild.domain.ArtifactID;
+import org.savantbuild.util.StringTools;
 
 /**
  * <p>
  * This class stores the information for links between artifacts in the graph.
+ * The Strings are interned because large graphs have many links with the same
+ * versions and types.
  * </p>
  *
  * @author Brian Pontarelli
@@ -33,11 +36,11 @@ public class ArtifactLink {
   private final String compatibility;
 
   public ArtifactLink(String dependentVersion, String dependencyVersion, String dependencyIntegrationVersion, String type, String compatibility) {
-    this.dependentVersion = dependentVersion;
-    this.dependencyVersion = dependencyVersion;
-    this.dependencyIntegrationVersion = dependencyIntegrationVersion;
-    this.type = type;
-    this.compatibility = compatibility;
+    this.dependentVersion = StringTools.intern(dependentVersion);
+    this.dependencyVersion = StringTools.intern(dependencyVersion);
+    this.dependencyIntegrationVersion = StringTools.intern(dependencyIntegrationVersion);
+    this.type = StringTools.intern(type);
+    this.compatibility = StringTools.intern(compatibility);
   }
 
   public String getDependentVersion() {
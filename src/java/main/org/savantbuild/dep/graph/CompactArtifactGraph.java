@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.graph;
+
+import java.util.Set;
+
+import org.savantbuild.domain.Artifact;
+import org.savantbuild.domain.ArtifactGroup;
+import org.savantbuild.domain.ArtifactID;
+import org.savantbuild.domain.Dependencies;
+
+/**
+ * <p>
+ * This class is the artifact and dependency version of the
+ * {@link CompactGraph}. It is used for very large graphs, such as the graphs
+ * of dependency reports that contain entire organizations. The root is
+ * always the node with the id zero.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class CompactArtifactGraph extends CompactGraph<ArtifactID, ArtifactLink> {
+  private final Artifact root;
+
+  public CompactArtifactGraph(Artifact root) {
+    this.root = root;
+    addNode(root.getId());
+  }
+
+  /**
+   * Copies the given graph. The outbound links of each node stay in the same order.
+   *
+   * @param graph The graph to copy.
+   */
+  public CompactArtifactGraph(ArtifactGraph graph) {
+    this(graph.getRoot());
+
+    Set<GraphNode<ArtifactID, ArtifactLink>> nodes = graph.getAllGraphNodes();
+    for (GraphNode<ArtifactID, ArtifactLink> node : nodes) {
+      addNode(node.getValue());
+    }
+
+    for (GraphNode<ArtifactID, ArtifactLink> node : nodes) {
+      int origin = getId(node.getValue());
+      for (GraphLink<ArtifactID, ArtifactLink> link : node.getOutboundLinksList()) {
+        addLink(origin, getId(link.destination.getValue()), link.value);
+      }
+    }
+  }
+
+  public Artifact getRoot() {
+    return root;
+  }
+
+  /**
+   * Mediates the versions of the given node the same way the
+   * {@link org.savantbuild.dep.version.CompatibilityVerifier} does once it has picked the best version. The inbound
+   * links are changed in place to the best version and the outbound links of the other versions are removed. This
+   * uses the int API, so nothing is copied and the index isn't rebuilt.
+   *
+   * @param node          The id of the node.
+   * @param best          The inbound link of the best version.
+   * @param compatibility The compatibility type of the node.
+   */
+  public void mediate(int node, ArtifactLink best, String compatibility) {
+    for (int i = 0; i < getInboundCount(node); i++) {
+      int link = getInboundLink(node, i);
+      ArtifactLink value = getLinkValue(link);
+      setLinkValue(link, new ArtifactLink(value.getDependentVersion(), best.getDependencyVersion(),
+        best.getDependencyIntegrationVersion(), value.getType(), compatibility));
+    }
+
+    for (int i = getOutboundCount(node) - 1; i >= 0; i--) {
+      int link = getOutboundLink(node, i);
+      if (!getLinkValue(link).getDependentVersion().equals(best.getDependencyVersion())) {
+        removeLink(link);
+      }
+    }
+  }
+
+  public Dependencies getDependencies(Artifact artifact) {
+    Dependencies deps = new Dependencies();
+    int node = getId(artifact.getId());
+    if (node == -1) {
+      return deps;
+    }
+
+    for (int i = 0; i < getOutboundCount(node); i++) {
+      int link = getOutboundLink(node, i);
+      ArtifactLink value = getLinkValue(link);
+      Artifact dep = value.toArtifact(getValue(getDestination(link)));
+      dep.setCompatibility(value.getCompatibility());
+
+      ArtifactGroup group = deps.getArtifactGroups().get(value.getType());
+      if (group == null) {
+        // The group cannot be empty during the add to the Dependencies object, therefor
+        // I have to add the artifact here first and then add the group.
+        group = new ArtifactGroup(value.getType());
+        group.getArtifacts().add(dep);
+        deps.getArtifactGroups().put(group.getType(), group);
+      } else {
+        group.getArtifacts().add(dep);
+      }
+    }
+
+    return deps;
+  }
+}
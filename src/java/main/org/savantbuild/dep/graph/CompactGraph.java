@@ -0,0 +1,521 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * This class is a Graph implementation for large graphs. Unlike the
+ * {@link HashGraph}, it doesn't create any objects for the nodes or the links.
+ * </p>
+ * <p/>
+ * <h3>Internals</h3>
+ * <p>
+ * Each node value is given a dense int id when it is added to the graph. The
+ * ids start at zero and are never reused. Each link is also given an int id
+ * and the origin, destination and value of the link are stored in parallel
+ * arrays indexed by the link id.
+ * </p>
+ * <p/>
+ * <p>
+ * The inbound and outbound links of the nodes are stored CSR style. All of the
+ * outbound link ids are kept in a single int array sorted by origin and an int
+ * array of offsets gives the start of each node's links. The inbound links are
+ * stored the same way. This index is built the first time it is needed, so
+ * building a graph costs a single pass over the links. Links that are added
+ * after the index is built are appended to small overflow arrays of their
+ * origin and destination nodes instead, so adding, removing or changing a
+ * link never throws the index away. Once there are more overflow links than
+ * indexed links, the next read folds them into the index, which keeps the
+ * cost of relinking a large graph linear.
+ * </p>
+ * <p/>
+ * <h3>Int API</h3>
+ * <p>
+ * The fast way to use this graph is the int API, which never copies anything:
+ * </p>
+ * <pre>
+ * for (int node = 0; node < graph.getNodeCount(); node++) {
+ *   for (int i = 0; i < graph.getInboundCount(node); i++) {
+ *     int link = graph.getInboundLink(node, i);
+ *     U value = graph.getLinkValue(link);
+ *   }
+ * }
+ * </pre>
+ * <p/>
+ * <p>
+ * The methods from the {@link Graph} interface work as well, but the GraphNode
+ * and GraphLink objects they return are built on each call and are only a view
+ * of the graph at the time of the call. Changing them doesn't change the graph.
+ * </p>
+ * <p/>
+ * <h3>Thread safety</h3>
+ * <p>
+ * The Graph is not thread safe. Classes must synchronize on the graph instance
+ * in order to protect multi-threaded use.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class CompactGraph<T, U> implements Graph<T, U> {
+  private final Map<T, Integer> ids = new HashMap<T, Integer>();
+  private Object[] values = new Object[16];
+  private int nodeCount;
+
+  private int[] origins = new int[16];
+  private int[] destinations = new int[16];
+  private Object[] linkValues = new Object[16];
+  private boolean[] removed = new boolean[16];
+  private int linkCount;
+
+  private int[] outOffsets;
+  private int[] outSizes;
+  private int[] outLinks;
+  private int[] inOffsets;
+  private int[] inSizes;
+  private int[] inLinks;
+  private int indexedNodes = -1;
+  private int indexedLinks = -1;
+  private int indexBuilds;
+
+  private int[][] outExtra = new int[16][];
+  private int[] outExtraSizes = new int[16];
+  private int[][] inExtra = new int[16][];
+  private int[] inExtraSizes = new int[16];
+  private int extraLinks;
+
+  /**
+   * Adds the value to the graph if it isn't already in the graph.
+   *
+   * @param t The value.
+   * @return The id of the node.
+   */
+  public int addNode(T t) {
+    Integer id = ids.get(t);
+    if (id != null) {
+      return id;
+    }
+
+    if (nodeCount == values.length) {
+      values = Arrays.copyOf(values, nodeCount * 2);
+    }
+
+    values[nodeCount] = t;
+    ids.put(t, nodeCount);
+    return nodeCount++;
+  }
+
+  /**
+   * @param t The value.
+   * @return The id of the node for the value or -1 if the value isn't in the graph.
+   */
+  public int getId(T t) {
+    Integer id = ids.get(t);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * @param node The id of the node.
+   * @return The value of the node.
+   */
+  @SuppressWarnings("unchecked")
+  public T getValue(int node) {
+    return (T) values[node];
+  }
+
+  /**
+   * @return The number of nodes in the graph. The node ids are 0 to this number minus one.
+   */
+  public int getNodeCount() {
+    return nodeCount;
+  }
+
+  /**
+   * Adds a link between the two nodes.
+   *
+   * @param origin      The id of the origin node.
+   * @param destination The id of the destination node.
+   * @param linkValue   The value of the link.
+   * @return The id of the link.
+   */
+  public int addLink(int origin, int destination, U linkValue) {
+    if (linkCount == origins.length) {
+      int size = linkCount * 2;
+      origins = Arrays.copyOf(origins, size);
+      destinations = Arrays.copyOf(destinations, size);
+      linkValues = Arrays.copyOf(linkValues, size);
+      removed = Arrays.copyOf(removed, size);
+    }
+
+    origins[linkCount] = origin;
+    destinations[linkCount] = destination;
+    linkValues[linkCount] = linkValue;
+    if (isIndexed()) {
+      growExtra();
+      outExtra[origin] = append(outExtra[origin], outExtraSizes, origin, linkCount);
+      inExtra[destination] = append(inExtra[destination], inExtraSizes, destination, linkCount);
+      extraLinks++;
+    }
+
+    return linkCount++;
+  }
+
+  /**
+   * Removes the link. This doesn't rebuild the index, it only removes the link from the index entries or overflow
+   * arrays of the origin and destination nodes.
+   *
+   * @param link The id of the link.
+   */
+  public void removeLink(int link) {
+    if (removed[link]) {
+      return;
+    }
+
+    removed[link] = true;
+    if (isIndexed()) {
+      if (link < indexedLinks) {
+        remove(outOffsets, outSizes, outLinks, origins[link], link);
+        remove(inOffsets, inSizes, inLinks, destinations[link], link);
+      } else {
+        removeExtra(outExtra[origins[link]], outExtraSizes, origins[link], link);
+        removeExtra(inExtra[destinations[link]], inExtraSizes, destinations[link], link);
+        extraLinks--;
+      }
+    }
+  }
+
+  /**
+   * @param link The id of the link.
+   * @return The id of the origin node of the link.
+   */
+  public int getOrigin(int link) {
+    return origins[link];
+  }
+
+  /**
+   * @param link The id of the link.
+   * @return The id of the destination node of the link.
+   */
+  public int getDestination(int link) {
+    return destinations[link];
+  }
+
+  /**
+   * @param link The id of the link.
+   * @return The value of the link.
+   */
+  @SuppressWarnings("unchecked")
+  public U getLinkValue(int link) {
+    return (U) linkValues[link];
+  }
+
+  /**
+   * Changes the value of the link. This is the same as removing the link and adding a new link between the same
+   * nodes except that the link keeps its id and position.
+   *
+   * @param link      The id of the link.
+   * @param linkValue The new value.
+   */
+  public void setLinkValue(int link, U linkValue) {
+    linkValues[link] = linkValue;
+  }
+
+  /**
+   * @param node The id of the node.
+   * @return The number of outbound links of the node.
+   */
+  public int getOutboundCount(int node) {
+    index();
+    return (node < indexedNodes ? outSizes[node] : 0) + outExtraSizes[node];
+  }
+
+  /**
+   * @param node  The id of the node.
+   * @param index The index of the link, from zero to the outbound count minus one.
+   * @return The id of the outbound link.
+   */
+  public int getOutboundLink(int node, int index) {
+    index();
+    int indexed = node < indexedNodes ? outSizes[node] : 0;
+    return index < indexed ? outLinks[outOffsets[node] + index] : outExtra[node][index - indexed];
+  }
+
+  /**
+   * @param node The id of the node.
+   * @return The number of inbound links of the node.
+   */
+  public int getInboundCount(int node) {
+    index();
+    return (node < indexedNodes ? inSizes[node] : 0) + inExtraSizes[node];
+  }
+
+  /**
+   * @param node  The id of the node.
+   * @param index The index of the link, from zero to the inbound count minus one.
+   * @return The id of the inbound link.
+   */
+  public int getInboundLink(int node, int index) {
+    index();
+    int indexed = node < indexedNodes ? inSizes[node] : 0;
+    return index < indexed ? inLinks[inOffsets[node] + index] : inExtra[node][index - indexed];
+  }
+
+  public GraphNode<T, U> addGraphNode(T t) {
+    Integer id = ids.get(t);
+    if (id != null) {
+      // Replace the value but keep the node, just like the HashGraph
+      ids.remove(t);
+      ids.put(t, id);
+      values[id] = t;
+      return makeNode(id);
+    }
+
+    return makeNode(addNode(t));
+  }
+
+  public GraphNode<T, U> getGraphNode(T t) {
+    int id = getId(t);
+    return id == -1 ? null : makeNode(id);
+  }
+
+  public boolean contains(T t) {
+    return ids.containsKey(t);
+  }
+
+  public void addLink(T origin, T destination, U linkValue) {
+    addLink(addNode(origin), addNode(destination), linkValue);
+  }
+
+  public void addLink(GraphNode<T, U> origin, GraphNode<T, U> destination, U linkValue) {
+    addLink(origin.getValue(), destination.getValue(), linkValue);
+  }
+
+  /**
+   * Removes all of the links between the two values that have the given value.
+   *
+   * @param origin      The origin value.
+   * @param destination The destination value.
+   * @param linkValue   The link value.
+   */
+  public void removeLink(T origin, T destination, U linkValue) {
+    int originId = getId(origin);
+    int destinationId = getId(destination);
+    if (originId == -1 || destinationId == -1) {
+      return;
+    }
+
+    for (int i = getOutboundCount(originId) - 1; i >= 0; i--) {
+      int link = getOutboundLink(originId, i);
+      if (destinations[link] == destinationId && linkValues[link].equals(linkValue)) {
+        removeLink(link);
+      }
+    }
+  }
+
+  public List<GraphLink<T, U>> getOutboundLinks(T t) {
+    int id = getId(t);
+    if (id == -1) {
+      return null;
+    }
+
+    return makeNode(id).getOutboundLinksList();
+  }
+
+  public List<GraphLink<T, U>> getInboundLinks(T t) {
+    int id = getId(t);
+    if (id == -1) {
+      return null;
+    }
+
+    return makeNode(id).getInboundLinksList();
+  }
+
+  /**
+   * Determines the paths in the same order as the {@link HashGraph}. Links that would lead back to a node that is
+   * already in the path are skipped, so cyclic graphs don't recurse forever.
+   *
+   * @param origin      The origin value.
+   * @param destination The destination value.
+   * @return The paths or null if either of the nodes don't exist.
+   */
+  public List<GraphPath<T>> getPaths(T origin, T destination) {
+    int originId = getId(origin);
+    int destinationId = getId(destination);
+    if (originId == -1 || destinationId == -1) {
+      return null;
+    }
+
+    List<GraphPath<T>> paths = new ArrayList<GraphPath<T>>();
+    LinkedList<Integer> path = new LinkedList<Integer>();
+    path.add(originId);
+    findPaths(originId, destinationId, path, new boolean[nodeCount], paths);
+    return paths;
+  }
+
+  /**
+   * @return An unmodifiable view of all the values in the graph. This doesn't copy the values.
+   */
+  public Set<T> getAllGraphNodesValues() {
+    return Collections.unmodifiableSet(ids.keySet());
+  }
+
+  private void findPaths(int node, int destination, LinkedList<Integer> path, boolean[] onPath,
+                         List<GraphPath<T>> paths) {
+    onPath[node] = true;
+    for (int i = 0; i < getOutboundCount(node); i++) {
+      int next = destinations[getOutboundLink(node, i)];
+      if (next == destination) {
+        GraphPath<T> graphPath = new GraphPath<T>();
+        for (Integer id : path) {
+          graphPath.addToPath(getValue(id));
+        }
+        graphPath.addToPath(getValue(destination));
+        paths.add(graphPath);
+      } else if (!onPath[next]) {
+        path.addLast(next);
+        findPaths(next, destination, path, onPath, paths);
+        path.removeLast();
+      }
+    }
+    onPath[node] = false;
+  }
+
+  @SuppressWarnings("unchecked")
+  private GraphNode<T, U> makeNode(int id) {
+    GraphNode<T, U> node = new GraphNode<T, U>(getValue(id));
+    for (int i = 0; i < getOutboundCount(id); i++) {
+      int link = getOutboundLink(id, i);
+      node.addOutboundLink(new GraphNode<T, U>(getValue(destinations[link])), (U) linkValues[link]);
+    }
+
+    for (int i = 0; i < getInboundCount(id); i++) {
+      int link = getInboundLink(id, i);
+      node.addInboundLink(new GraphNode<T, U>(getValue(origins[link])), (U) linkValues[link]);
+    }
+
+    return node;
+  }
+
+  /**
+   * @return The number of times the index was built, which is used by the tests.
+   */
+  int getIndexBuilds() {
+    return indexBuilds;
+  }
+
+  private boolean isIndexed() {
+    return indexedLinks >= 0;
+  }
+
+  private void index() {
+    growExtra();
+    if (isIndexed() && extraLinks <= Math.max(indexedLinks, 16)) {
+      return;
+    }
+
+    outOffsets = new int[nodeCount + 1];
+    outSizes = new int[nodeCount];
+    inOffsets = new int[nodeCount + 1];
+    inSizes = new int[nodeCount];
+    for (int link = 0; link < linkCount; link++) {
+      if (!removed[link]) {
+        outSizes[origins[link]]++;
+        inSizes[destinations[link]]++;
+      }
+    }
+
+    for (int node = 0; node < nodeCount; node++) {
+      outOffsets[node + 1] = outOffsets[node] + outSizes[node];
+      inOffsets[node + 1] = inOffsets[node] + inSizes[node];
+    }
+
+    // Fill in link id order so that the links of each node stay in the order they were added
+    outLinks = new int[outOffsets[nodeCount]];
+    inLinks = new int[inOffsets[nodeCount]];
+    int[] outNext = Arrays.copyOf(outOffsets, nodeCount);
+    int[] inNext = Arrays.copyOf(inOffsets, nodeCount);
+    for (int link = 0; link < linkCount; link++) {
+      if (!removed[link]) {
+        outLinks[outNext[origins[link]]++] = link;
+        inLinks[inNext[destinations[link]]++] = link;
+      }
+    }
+
+    Arrays.fill(outExtra, null);
+    Arrays.fill(outExtraSizes, 0);
+    Arrays.fill(inExtra, null);
+    Arrays.fill(inExtraSizes, 0);
+    extraLinks = 0;
+    indexedNodes = nodeCount;
+    indexedLinks = linkCount;
+    indexBuilds++;
+  }
+
+  /**
+   * Makes sure the overflow arrays have an entry for every node, including the nodes added since the index was built.
+   */
+  private void growExtra() {
+    if (outExtraSizes.length < nodeCount) {
+      int size = Math.max(nodeCount, outExtraSizes.length * 2);
+      outExtra = Arrays.copyOf(outExtra, size);
+      outExtraSizes = Arrays.copyOf(outExtraSizes, size);
+      inExtra = Arrays.copyOf(inExtra, size);
+      inExtraSizes = Arrays.copyOf(inExtraSizes, size);
+    }
+  }
+
+  private int[] append(int[] links, int[] sizes, int node, int link) {
+    if (links == null) {
+      links = new int[2];
+    } else if (sizes[node] == links.length) {
+      links = Arrays.copyOf(links, links.length * 2);
+    }
+
+    links[sizes[node]++] = link;
+    return links;
+  }
+
+  private void remove(int[] offsets, int[] sizes, int[] links, int node, int link) {
+    int start = offsets[node];
+    int end = start + sizes[node];
+    for (int i = start; i < end; i++) {
+      if (links[i] == link) {
+        System.arraycopy(links, i + 1, links, i, end - i - 1);
+        sizes[node]--;
+        return;
+      }
+    }
+  }
+
+  private void removeExtra(int[] links, int[] sizes, int node, int link) {
+    int end = sizes[node];
+    for (int i = 0; i < end; i++) {
+      if (links[i] == link) {
+        System.arraycopy(links, i + 1, links, i, end - i - 1);
+        sizes[node]--;
+        return;
+      }
+    }
+  }
+}
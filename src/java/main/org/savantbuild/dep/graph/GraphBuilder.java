@@ -15,10 +15,18 @@
  */
 package org.savantbuild.dep.graph;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
 
 import org.savantbuild.BuildException;
 import org.savantbuild.dep.ResolutionContext;
@@ -39,6 +47,14 @@ import org.savantbuild.run.output.Output;
  * in a {@link Dependencies} object.
  * </p>
  *
+ * <p>
+ * If more than one thread is given, the artifact meta data files are first fetched concurrently
+ * using a work queue on the pool of the {@link ResolutionContext}, where the dependencies of an
+ * artifact are fetched as soon as its meta data is. The graph is then populated depth first from
+ * the fetched meta data exactly as it is when a single thread is used, so the resulting graph is
+ * the same either way.
+ * </p>
+ *
  * @author Brian Pontarelli
  */
 public class GraphBuilder {
@@ -46,6 +62,8 @@ public class GraphBuilder {
   private Dependencies dependencies;
   private WorkflowHandler workflowHandler;
   private boolean transitive = true;
+  private int threads = 1;
+  private final Set<Dependencies> versionsResolved = Collections.newSetFromMap(new IdentityHashMap<Dependencies, Boolean>());
 
   /**
    * Constructs a new graph builder.
@@ -59,6 +77,23 @@ public class GraphBuilder {
    * @throws BuildException If the graph population encountered any errors.
    */
   public GraphBuilder(Output output, Dependencies dependencies, WorkflowHandler workflowHandler, boolean transitive) {
+    this(output, dependencies, workflowHandler, transitive, 1);
+  }
+
+  /**
+   * Constructs a new graph builder that fetches the artifact meta data using multiple threads.
+   *
+   * @param output          The output.
+   * @param dependencies    The dependencies that will be used to build the dependency graph. This will be used to
+   *                        resolve all transitive dependencies.
+   * @param workflowHandler The workflowHandler used to fetch and publish the dependencies of artifacts during
+   *                        transitive graph building.
+   * @param transitive      Determines if when building the graph, this class should include transitive dependencies.
+   * @param threads         The maximum number of threads used to fetch the artifact meta data.
+   * @throws BuildException If the graph population encountered any errors.
+   */
+  public GraphBuilder(Output output, Dependencies dependencies, WorkflowHandler workflowHandler, boolean transitive,
+                      int threads) {
     if (dependencies == null || workflowHandler == null) {
       throw new BuildException("A Dependencies and WorkflowHandler are required for " +
         "constructing a GraphBuilder");
@@ -68,6 +103,7 @@ public class GraphBuilder {
     this.dependencies = dependencies;
     this.workflowHandler = workflowHandler;
     this.transitive = transitive;
+    this.threads = threads;
   }
 
   /**
@@ -81,11 +117,19 @@ public class GraphBuilder {
       "__PROJECT__VERSION__", "__ARTIFACT__TYPE__");
     ArtifactGraph graph = new ArtifactGraph(projectArtifact);
 
+    // A deadline needs the fetches on other threads so that this thread can stop waiting for them
+    if (threads > 1 || resolutionContext.hasDeadline()) {
+      fetchMetaData(resolutionContext);
+    }
+
     // There must be a project artifact so that the version of the project's direct dependencies
     // is stored in the graph
     populateGraph(graph, projectArtifact, dependencies, new HashSet<Artifact>(), resolutionContext);
     dependencies.setGraph(graph);
 
+    output.debug("Fetched [%s] artifact meta data files and reused them [%s] times", resolutionContext.getMetaDataMisses(),
+      resolutionContext.getMetaDataHits());
+
     return graph;
   }
 
@@ -102,8 +146,10 @@ public class GraphBuilder {
   protected void populateGraph(ArtifactGraph graph, Artifact originArtifact, Dependencies dependencies,
                                Set<Artifact> artifactsRecursed, ResolutionContext resolutionContext) {
 
-    output.println(Level.DEBUG, "Running integration build resolver");
-    ArtifactVersionTools.resolve(dependencies, workflowHandler);
+    if (!versionsResolved.contains(dependencies)) {
+      output.println(Level.DEBUG, "Running integration build resolver");
+      ArtifactVersionTools.resolve(dependencies, workflowHandler, resolutionContext);
+    }
 
     Map<String, ArtifactGroup> groups = dependencies.getArtifactGroups();
     for (String type : groups.keySet()) {
@@ -111,17 +157,18 @@ public class GraphBuilder {
       List<Artifact> artifacts = ag.getArtifacts();
       for (Artifact artifact : artifacts) {
 
-        GraphNode<ArtifactID, ArtifactLink> existing = graph.getGraphNode(artifact.getId());
+        // Use the canonical ids so that the graph doesn't hold a copy of each id for every version
+        ArtifactID id = artifact.getId().intern();
+        GraphNode<ArtifactID, ArtifactLink> existing = graph.getGraphNode(id);
         if (existing == null) {
-          existing = graph.addGraphNode(artifact.getId());
+          existing = graph.addGraphNode(id);
         }
 
         // Create a link using nodes so that we can be explicit
-        ArtifactMetaData amd = workflowHandler.getFetchWorkflowHandler().fetchMetaData(artifact, workflowHandler.getPublishWorkflowHandler(),
-          resolutionContext);
+        ArtifactMetaData amd = fetchMetaData(artifact, resolutionContext);
 
         String compatibility = (amd != null) ? amd.getCompatibility() : null;
-        GraphNode<ArtifactID, ArtifactLink> origin = graph.addGraphNode(originArtifact.getId());
+        GraphNode<ArtifactID, ArtifactLink> origin = graph.addGraphNode(originArtifact.getId().intern());
         ArtifactLink link = new ArtifactLink(originArtifact.getVersion(), artifact.getVersion(), artifact.getIntegrationVersion(), type, compatibility);
         graph.addLink(origin, existing, link);
 
@@ -140,4 +187,121 @@ public class GraphBuilder {
       }
     }
   }
+
+  /**
+   * Fetches the meta data for the given artifact, unless it was already fetched during this resolution. Artifacts
+   * without meta data are remembered as well, so every artifact is only fetched once regardless of how many times it
+   * appears in the graph.
+   *
+   * @param artifact          The artifact.
+   * @param resolutionContext The resolution context.
+   * @return The meta data or null if the artifact doesn't have any.
+   */
+  protected ArtifactMetaData fetchMetaData(Artifact artifact, ResolutionContext resolutionContext) {
+    if (resolutionContext.isMetaDataFetched(artifact)) {
+      return resolutionContext.getMetaData(artifact);
+    }
+
+    ArtifactMetaData amd = workflowHandler.getFetchWorkflowHandler().fetchMetaData(artifact,
+      workflowHandler.getPublishWorkflowHandler(), resolutionContext);
+    resolutionContext.addMetaData(artifact, amd);
+    return amd;
+  }
+
+  /**
+   * Fetches the meta data of the whole graph using the pool of the resolution. This is a work queue rather than a
+   * level of the graph at a time. As soon as the meta data of an artifact is fetched, a task resolves the versions of
+   * its dependencies, and then their meta data is fetched. A slow fetch only holds up its own dependencies. The
+   * results are handled on this thread, which decides what to fetch next, so every artifact is only fetched once.
+   * The versions are resolved on the pool as well. That is safe because the processes keep their listings in the
+   * synchronized {@link org.savantbuild.dep.version.VersionIndex} and each Dependencies object is only resolved by a
+   * single task.
+   *
+   * @param resolutionContext The resolution context.
+   */
+  protected void fetchMetaData(final ResolutionContext resolutionContext) {
+    output.debug("Fetching artifact meta data using [%s] threads", threads);
+
+    CompletionService<Fetched> completion = new ExecutorCompletionService<Fetched>(resolutionContext.executor(threads));
+    List<Future<Fetched>> futures = new ArrayList<Future<Fetched>>();
+    Set<Artifact> submitted = new HashSet<Artifact>();
+    try {
+      futures.add(completion.submit(resolveTask(dependencies, resolutionContext)));
+      for (int finished = 0; finished < futures.size(); finished++) {
+        Fetched fetched = get(resolutionContext.take(completion), resolutionContext);
+        if (fetched.artifact == null) {
+          // Resolving the versions first since they are part of the artifact identity
+          versionsResolved.add(fetched.dependencies);
+          for (ArtifactGroup group : fetched.dependencies.getArtifactGroups().values()) {
+            for (Artifact artifact : group.getArtifacts()) {
+              if (!resolutionContext.isMetaDataFetched(artifact) && submitted.add(artifact)) {
+                futures.add(completion.submit(fetchTask(artifact, resolutionContext)));
+              }
+            }
+          }
+        } else {
+          resolutionContext.addMetaData(fetched.artifact, fetched.amd);
+          if (fetched.amd != null && fetched.amd.getDependencies() != null && transitive) {
+            futures.add(completion.submit(resolveTask(fetched.amd.getDependencies(), resolutionContext)));
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      throw new BuildException("Interrupted while fetching artifact meta data", e);
+    } finally {
+      // Only does something if this failed, since the other tasks are done
+      for (Future<Fetched> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  private Callable<Fetched> resolveTask(final Dependencies deps, final ResolutionContext resolutionContext) {
+    return new Callable<Fetched>() {
+      public Fetched call() {
+        ArtifactVersionTools.resolve(deps, workflowHandler, resolutionContext);
+        return new Fetched(deps, null, null);
+      }
+    };
+  }
+
+  private Callable<Fetched> fetchTask(final Artifact artifact, final ResolutionContext resolutionContext) {
+    return new Callable<Fetched>() {
+      public Fetched call() {
+        ArtifactMetaData amd = workflowHandler.getFetchWorkflowHandler().fetchMetaData(artifact,
+          workflowHandler.getPublishWorkflowHandler(), resolutionContext);
+        return new Fetched(null, artifact, amd);
+      }
+    };
+  }
+
+  private <T> T get(Future<T> future, ResolutionContext resolutionContext) {
+    try {
+      return resolutionContext.await(future);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof BuildException) {
+        throw (BuildException) e.getCause();
+      }
+
+      throw new BuildException(e.getCause());
+    } catch (InterruptedException e) {
+      throw new BuildException("Interrupted while fetching artifact meta data", e);
+    }
+  }
+
+  /**
+   * The result of a task of the work queue, which is either the dependencies whose versions were resolved or the
+   * meta data of an artifact.
+   */
+  private static class Fetched {
+    private final Dependencies dependencies;
+    private final Artifact artifact;
+    private final ArtifactMetaData amd;
+
+    private Fetched(Dependencies dependencies, Artifact artifact, ArtifactMetaData amd) {
+      this.dependencies = dependencies;
+      this.artifact = artifact;
+      this.amd = amd;
+    }
+  }
 }
@@ -16,20 +16,32 @@
 package org.savantbuild.dep.graph;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * <p>
  * This class is a single node in the artifact graph.
  * </p>
  *
+ * <p>
+ * The links are kept in insertion order and are also indexed by the value of
+ * the node at the other end of the link. This makes finding and removing the
+ * links between two nodes independent of how many links the node has, which
+ * matters for artifacts that many other artifacts depend on.
+ * </p>
+ *
  * @author Brian Pontarelli
  */
 public class GraphNode<T, U> {
   private T t;
-  private final List<GraphLink<T, U>> outbound = new ArrayList<GraphLink<T, U>>();
-  private final List<GraphLink<T, U>> inbound = new ArrayList<GraphLink<T, U>>();
+  private final Links<T, U> outbound = new Links<T, U>();
+  private final Links<T, U> inbound = new Links<T, U>();
 
   public GraphNode(T t) {
     this.t = t;
@@ -45,12 +57,12 @@ public class GraphNode<T, U> {
 
   void addOutboundLink(GraphNode<T, U> destination, U linkValue) {
     GraphLink<T, U> link = new GraphLink<T, U>(this, destination, linkValue);
-    outbound.add(link);
+    outbound.add(destination.getValue(), link);
   }
 
   void addInboundLink(GraphNode<T, U> origin, U linkValue) {
     GraphLink<T, U> link = new GraphLink<T, U>(origin, this, linkValue);
-    inbound.add(link);
+    inbound.add(origin.getValue(), link);
   }
 
   /**
@@ -60,16 +72,7 @@ public class GraphNode<T, U> {
    * @param linkValue The link value to remove. @return  True if the link was removed, false if it doesn't exist.
    */
   public boolean removeInboundLink(GraphNode<T, U> origin, U linkValue) {
-    boolean removed = false;
-    for (Iterator<GraphLink<T, U>> i = inbound.iterator(); i.hasNext();) {
-      GraphLink<T, U> graphLink = i.next();
-      if (graphLink.origin.getValue().equals(origin.getValue()) && graphLink.value.equals(linkValue)) {
-        i.remove();
-        removed = true;
-      }
-    }
-
-    return removed;
+    return inbound.remove(origin.getValue(), linkValue);
   }
 
   /**
@@ -79,28 +82,19 @@ public class GraphNode<T, U> {
    * @param linkValue   The link value to remove. @return  True if the link was removed, false if it doesn't exist.
    */
   public boolean removeOutboundLink(GraphNode<T, U> destination, U linkValue) {
-    boolean removed = false;
-    for (Iterator<GraphLink<T, U>> i = outbound.iterator(); i.hasNext();) {
-      GraphLink<T, U> graphLink = i.next();
-      if (graphLink.destination.getValue().equals(destination.getValue()) && graphLink.value.equals(linkValue)) {
-        i.remove();
-        removed = true;
-      }
-    }
-
-    return removed;
+    return outbound.remove(destination.getValue(), linkValue);
   }
 
   public List<GraphLink<T, U>> getOutboundLinksList() {
-    return new ArrayList<GraphLink<T, U>>(outbound);
+    return new ArrayList<GraphLink<T, U>>(outbound.all);
   }
 
   public List<GraphLink<T, U>> getInboundLinksList() {
-    return new ArrayList<GraphLink<T, U>>(inbound);
+    return new ArrayList<GraphLink<T, U>>(inbound.all);
   }
 
   public GraphLink<T, U> getInboundLink(GraphNode<T, U> origin) {
-    for (GraphLink<T, U> link : inbound) {
+    for (GraphLink<T, U> link : inbound.get(origin.getValue())) {
       if (link.origin.equals(origin)) {
         return link;
       }
@@ -110,7 +104,7 @@ public class GraphNode<T, U> {
   }
 
   public GraphLink<T, U> getOutboundLink(GraphNode<T, U> destination) {
-    for (GraphLink<T, U> link : outbound) {
+    for (GraphLink<T, U> link : outbound.get(destination.getValue())) {
       if (link.destination.equals(destination)) {
         return link;
       }
@@ -124,7 +118,72 @@ public class GraphNode<T, U> {
   }
 
   void removeLink(GraphLink<T, U> link) {
-    outbound.remove(link);
-    inbound.remove(link);
+    outbound.remove(link.destination.getValue(), link);
+    inbound.remove(link.origin.getValue(), link);
+  }
+
+  /**
+   * The links in one direction. All of the links are in a single ordered set and the links to each of the other
+   * nodes are in a smaller ordered set keyed by the value of the other node.
+   */
+  private static class Links<T, U> {
+    private final Set<GraphLink<T, U>> all = new LinkedHashSet<GraphLink<T, U>>();
+    private final Map<T, Set<GraphLink<T, U>>> byNode = new HashMap<T, Set<GraphLink<T, U>>>();
+
+    void add(T other, GraphLink<T, U> link) {
+      Set<GraphLink<T, U>> links = byNode.get(other);
+      if (links == null) {
+        links = new LinkedHashSet<GraphLink<T, U>>(2);
+        byNode.put(other, links);
+      }
+
+      links.add(link);
+      all.add(link);
+    }
+
+    Set<GraphLink<T, U>> get(T other) {
+      Set<GraphLink<T, U>> links = byNode.get(other);
+      if (links == null) {
+        return Collections.emptySet();
+      }
+
+      return links;
+    }
+
+    boolean remove(T other, GraphLink<T, U> link) {
+      Set<GraphLink<T, U>> links = byNode.get(other);
+      if (links == null || !links.remove(link)) {
+        return false;
+      }
+
+      if (links.isEmpty()) {
+        byNode.remove(other);
+      }
+
+      return all.remove(link);
+    }
+
+    boolean remove(T other, U linkValue) {
+      Set<GraphLink<T, U>> links = byNode.get(other);
+      if (links == null) {
+        return false;
+      }
+
+      boolean removed = false;
+      for (Iterator<GraphLink<T, U>> i = links.iterator(); i.hasNext();) {
+        GraphLink<T, U> link = i.next();
+        if (link.value.equals(linkValue)) {
+          i.remove();
+          all.remove(link);
+          removed = true;
+        }
+      }
+
+      if (links.isEmpty()) {
+        byNode.remove(other);
+      }
+
+      return removed;
+    }
   }
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.graph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * <p>
+ * This class finds the shortest paths between nodes in a graph. Unlike
+ * {@link Graph#getPaths(Object, Object)}, which returns every path, this
+ * returns at most a given number of paths and the amount of work it does is
+ * bounded, so it can be used on very wide graphs.
+ * </p>
+ *
+ * <p>
+ * The first time a destination is used, a breadth first search over the
+ * inbound links finds the distance from every node that can reach the
+ * destination. This is memoized, so all the origins share it. The paths are
+ * then built from the origin in the order of their total length, only
+ * following links to nodes that can reach the destination. Since the
+ * distances are exact, each path is found without building any partial paths
+ * that are longer than it. Paths share their common prefixes until they are
+ * returned.
+ * </p>
+ *
+ * <p>
+ * The finder memoizes the structure of the graph, so a new finder must be
+ * created if the links of the graph are changed. It is not thread safe.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class GraphPathFinder<T, U> {
+  private final Graph<T, U> graph;
+  private final int maxSteps;
+  private final Map<T, Map<T, Integer>> distances = new HashMap<T, Map<T, Integer>>();
+  private final Map<T, Set<T>> successors = new HashMap<T, Set<T>>();
+
+  public GraphPathFinder(Graph<T, U> graph) {
+    this(graph, 10000);
+  }
+
+  /**
+   * @param graph    The graph.
+   * @param maxSteps The maximum number of partial paths that are looked at for a single query. This bounds the work
+   *                 done on graphs with a huge number of equally short paths.
+   */
+  public GraphPathFinder(Graph<T, U> graph, int maxSteps) {
+    this.graph = graph;
+    this.maxSteps = maxSteps;
+  }
+
+  /**
+   * Finds the shortest paths from the origin value to the destination value, shortest first. Paths never visit the
+   * same node twice.
+   *
+   * @param origin      The origin value.
+   * @param destination The destination value.
+   * @param max         The maximum number of paths to return.
+   * @return The paths or null if either of the nodes don't exist.
+   */
+  public List<GraphPath<T>> getShortestPaths(T origin, T destination, int max) {
+    if (!graph.contains(origin) || !graph.contains(destination)) {
+      return null;
+    }
+
+    List<GraphPath<T>> paths = new ArrayList<GraphPath<T>>();
+    Map<T, Integer> distance = getDistances(destination);
+    Integer start = distance.get(origin);
+    if (start == null || origin.equals(destination)) {
+      return paths;
+    }
+
+    // The distances are exact, so the partial paths come off the queue in the order of their total length
+    int sequence = 0;
+    PriorityQueue<Step<T>> queue = new PriorityQueue<Step<T>>();
+    queue.add(new Step<T>(null, origin, start, sequence++));
+    for (int steps = 0; !queue.isEmpty() && paths.size() < max && steps < maxSteps; steps++) {
+      Step<T> step = queue.poll();
+      if (step.value.equals(destination)) {
+        paths.add(step.toPath());
+        continue;
+      }
+
+      for (T next : getSuccessors(step.value)) {
+        Integer remaining = distance.get(next);
+        if (remaining != null && !step.contains(next)) {
+          queue.add(new Step<T>(step, next, step.length + 1 + remaining, sequence++));
+        }
+      }
+    }
+
+    return paths;
+  }
+
+  /**
+   * Determines the distance from every node that can reach the destination to the destination.
+   *
+   * @param destination The destination value.
+   * @return The distances keyed by node value. Nodes that can't reach the destination aren't in the Map.
+   */
+  public Map<T, Integer> getDistances(T destination) {
+    Map<T, Integer> distance = distances.get(destination);
+    if (distance != null) {
+      return distance;
+    }
+
+    distance = new HashMap<T, Integer>();
+    distance.put(destination, 0);
+
+    LinkedList<T> queue = new LinkedList<T>();
+    queue.add(destination);
+    while (!queue.isEmpty()) {
+      T value = queue.removeFirst();
+      List<GraphLink<T, U>> links = graph.getInboundLinks(value);
+      if (links == null) {
+        continue;
+      }
+
+      int next = distance.get(value) + 1;
+      for (GraphLink<T, U> link : links) {
+        T origin = link.origin.getValue();
+        if (!distance.containsKey(origin)) {
+          distance.put(origin, next);
+          queue.add(origin);
+        }
+      }
+    }
+
+    distances.put(destination, distance);
+    return distance;
+  }
+
+  private Set<T> getSuccessors(T value) {
+    Set<T> set = successors.get(value);
+    if (set == null) {
+      // Multiple links between the same nodes are the same path
+      set = new LinkedHashSet<T>();
+      List<GraphLink<T, U>> links = graph.getOutboundLinks(value);
+      if (links != null) {
+        for (GraphLink<T, U> link : links) {
+          set.add(link.destination.getValue());
+        }
+      }
+
+      successors.put(value, set);
+    }
+
+    return set;
+  }
+
+  /**
+   * A partial path. The steps point back to the previous step so that the paths share their prefixes.
+   */
+  private static class Step<T> implements Comparable<Step<T>> {
+    private final Step<T> previous;
+    private final T value;
+    private final int length;
+    private final int estimate;
+    private final int sequence;
+
+    Step(Step<T> previous, T value, int estimate, int sequence) {
+      this.previous = previous;
+      this.value = value;
+      this.length = previous == null ? 0 : previous.length + 1;
+      this.estimate = estimate;
+      this.sequence = sequence;
+    }
+
+    boolean contains(T t) {
+      for (Step<T> step = this; step != null; step = step.previous) {
+        if (step.value.equals(t)) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    GraphPath<T> toPath() {
+      GraphPath<T> path = new GraphPath<T>();
+      for (Step<T> step = this; step != null; step = step.previous) {
+        path.addToPathHead(step.value);
+      }
+
+      return path;
+    }
+
+    public int compareTo(Step<T> other) {
+      if (estimate != other.estimate) {
+        return estimate < other.estimate ? -1 : 1;
+      }
+
+      // Finish the longer partial paths first since the distances are exact. Otherwise every partial path of the
+      // same length would be built before the first path is finished
+      if (length != other.length) {
+        return length > other.length ? -1 : 1;
+      }
+
+      // Break the remaining ties in the order the steps were created so the results are deterministic
+      return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+    }
+  }
+}
@@ -20,13 +20,12 @@ import java.util.Map;
 import java.util.Set;
 
 import org.savantbuild.BuildException;
+import org.savantbuild.dep.ResolutionContext;
 import org.savantbuild.dep.workflow.FetchWorkflowHandler;
 import org.savantbuild.dep.workflow.WorkflowHandler;
 import org.savantbuild.domain.Artifact;
 import org.savantbuild.domain.ArtifactGroup;
 import org.savantbuild.domain.Dependencies;
-import org.savantbuild.domain.Version;
-import org.savantbuild.run.output.Level;
 import org.savantbuild.run.output.Output;
 import org.savantbuild.util.ErrorList;
 
@@ -57,6 +56,19 @@ public class ArtifactVersionTools {
    * @param workflowHandler The workflowHandler used to resolve the integration build versions.
    */
   public static void resolve(Dependencies dependencies, WorkflowHandler workflowHandler) {
+    resolve(dependencies, workflowHandler, new ResolutionContext());
+  }
+
+  /**
+   * Resolve all of the integration build versions for each artifact in the dependencies. This is not transitive.
+   * Listing the versions counts against the deadline of the resolution.
+   *
+   * @param dependencies      The dependencies to update.
+   * @param workflowHandler   The workflowHandler used to resolve the integration build versions.
+   * @param resolutionContext The resolution context.
+   */
+  public static void resolve(Dependencies dependencies, WorkflowHandler workflowHandler,
+                             ResolutionContext resolutionContext) {
     FetchWorkflowHandler fw = workflowHandler.getFetchWorkflowHandler();
 
     Map<String, ArtifactGroup> artifactGroups = dependencies.getArtifactGroups();
@@ -65,7 +77,7 @@ public class ArtifactVersionTools {
       Set<Artifact> artifacts = new HashSet<Artifact>(group.getArtifacts());
       for (Artifact artifact : artifacts) {
         if (artifact.isLatestBuild()) {
-          String version = fw.determineVersion(artifact);
+          String version = fw.determineVersion(artifact, resolutionContext);
           if (version == null) {
             errors.addError("Artifact [" + artifact + "] is set to the latest version, but no versions exists");
             continue;
@@ -75,7 +87,7 @@ public class ArtifactVersionTools {
         }
 
         if (artifact.isIntegrationBuild()) {
-          String version = fw.determineVersion(artifact);
+          String version = fw.determineVersion(artifact, resolutionContext);
           if (version == null) {
             errors.addError("Artifact [" + artifact + "] is set to use an integration or latest build, but no builds exists");
             continue;
@@ -108,68 +120,31 @@ public class ArtifactVersionTools {
   }
 
   /**
-   * Using the list of names, this determines the best integration version.
+   * Using the list of names, this determines the best integration version. Processes that are asked for versions
+   * many times should keep a {@link VersionIndex} instead.
    *
    * @param artifact The artifact whose version is an integration version.
    * @param names    The list of artifact names.
    * @return The best version or null if there aren't any integration builds in the list of names.
    */
   public static String bestIntegration(Artifact artifact, Set<String> names) {
-    String baseVersion = baseVersion(artifact);
-    String ib = artifact.getId().getName() + "-" + baseVersion + "-IB";
-    Long best = null;
-    for (String name : names) {
-      if (name.startsWith(ib)) {
-        int index = name.indexOf(".", ib.length());
-        String fileVersion = index >= ib.length() ? name.substring(ib.length(), index) : name.substring(ib.length());
-        try {
-          Long num = Long.valueOf(fileVersion);
-          if (best == null || num > best) {
-            best = num;
-          }
-        } catch (NumberFormatException e) {
-          output.println(Level.DEBUG, "Invalid integration build version for artifact with name [" +
-            name + "]. The part after IB is not a number. Skipping that file.");
-        }
-      }
-    }
-
-    if (best == null) {
-      return null;
-    }
-
-    return baseVersion + "-IB" + best;
+    VersionIndex index = new VersionIndex();
+    index.setIntegrations(baseVersion(artifact), names);
+    return index.bestIntegration(artifact);
   }
 
   /**
    * Determines the latest version from the list of names given. This list is normally the list of
-   * directories under the project directory.
+   * directories under the project directory. Processes that are asked for versions many times should keep a
+   * {@link VersionIndex} instead.
    *
    * @param artifact The artifact.
    * @param names    The list of version directory names.
    * @return The best version.
    */
   public static String latest(Artifact artifact, Set<String> names) {
-    String artifactName = artifact.getName();
-    Version best = null;
-    String bestStr = null;
-    for (String name : names) {
-      // This is the old layout where the files are all in the same directory
-      if (name.startsWith(artifactName)) {
-        name = name.substring(artifactName.length() + 1, name.length() - artifact.getType().length() - 1);
-      }
-
-      try {
-        Version ver = new Version(name);
-        if (best == null || best.compareTo(ver) < 0) {
-          best = ver;
-          bestStr = name;
-        }
-      } catch (Exception e) {
-        // Ignoring bad version
-      }
-    }
-
-    return bestStr;
+    VersionIndex index = new VersionIndex();
+    index.setVersions(names);
+    return index.latest(artifact);
   }
 }
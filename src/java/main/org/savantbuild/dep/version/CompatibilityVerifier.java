@@ -16,6 +16,8 @@
 package org.savantbuild.dep.version;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 
@@ -24,6 +26,7 @@ import org.savantbuild.dep.graph.ArtifactLink;
 import org.savantbuild.dep.graph.GraphLink;
 import org.savantbuild.dep.graph.GraphNode;
 import org.savantbuild.dep.graph.GraphPath;
+import org.savantbuild.dep.graph.GraphPathFinder;
 import org.savantbuild.domain.Artifact;
 import org.savantbuild.domain.ArtifactID;
 import org.savantbuild.domain.Dependencies;
@@ -49,6 +52,8 @@ import org.savantbuild.util.ErrorList;
  * @author Brian Pontarelli
  */
 public class CompatibilityVerifier {
+  private static final int MAX_PATHS = 10;
+
   private final Output output;
 
   public CompatibilityVerifier(Output output) {
@@ -125,21 +130,21 @@ public class CompatibilityVerifier {
    */
   protected void verifyCompatibility(final Dependencies deps, final ArtifactGraph graph,
                                      final Set<String> groupTypes, final ErrorList errors) {
-    output.println(Level.DEBUG, "Verifying compatibility of artifacts in groups with type " + groupTypes);
+    output.debug("Verifying compatibility of artifacts in groups with type %s", groupTypes);
 
     Set<GraphNode<ArtifactID, ArtifactLink>> graphNodes = graph.getAllGraphNodes();
     for (GraphNode<ArtifactID, ArtifactLink> graphNode : graphNodes) {
       String compatType = determineCompatType(graphNode);
       VersionComparator versionComparator = VersionComparatorRegistry.lookup(compatType);
 
-      output.println(Level.DEBUG, "Using compatibility checker of type [" + compatType + "] with checker class [" +
-        versionComparator.getClass() + "]");
+      output.debug("Using compatibility checker of type [%s] with checker class [%s]", compatType,
+        versionComparator.getClass());
 
       List<GraphLink<ArtifactID, ArtifactLink>> inboundLinks = graphNode.getInboundLinksList();
 
       // Only process them if there might be multiple versions
       if (inboundLinks.size() <= 1) {
-        output.println(Level.DEBUG, "Skipping artifact [" + graphNode.getValue() + "] because there is only a single inbound link");
+        output.debug("Skipping artifact [%s] because there is only a single inbound link", graphNode.getValue());
         continue;
       }
 
@@ -154,10 +159,10 @@ public class CompatibilityVerifier {
           continue;
         }
 
-        output.println(Level.DEBUG, "Checking [" + graphNode.getValue() + "] for compatibility");
+        output.debug("Checking [%s] for compatibility", graphNode.getValue());
 
         String version = inboundLink.value.getDependencyVersion();
-        output.println(Level.DEBUG, "Checking version [" + version + "] of artifact [" + graphNode.getValue() + "]");
+        output.debug("Checking version [%s] of artifact [%s]", version, graphNode.getValue());
 
         if (bestVersionSoFar == null) {
           bestVersionSoFar = version;
@@ -170,8 +175,8 @@ public class CompatibilityVerifier {
         }
 
         twoVersions = true;
-        output.println(Level.DEBUG, "Comparing versions [" + bestVersionSoFar + "] and [" + version + "] of artifact [" +
-          graphNode.getValue() + "]");
+        output.debug("Comparing versions [%s] and [%s] of artifact [%s]", bestVersionSoFar, version,
+          graphNode.getValue());
 
         String result = versionComparator.determineBestVersion(bestVersionSoFar, version);
         if (result == null) {
@@ -188,7 +193,7 @@ public class CompatibilityVerifier {
 
       // Update all the links to the best version
       if (twoVersions && !errorFound) {
-        output.println(Level.DEBUG, "Artifact [" + graphNode.getValue() + "] had multiple versions and no errors");
+        output.debug("Artifact [%s] had multiple versions and no errors", graphNode.getValue());
 
         inboundLinks = graphNode.getInboundLinksList();
         for (GraphLink<ArtifactID, ArtifactLink> inboundLink : inboundLinks) {
@@ -199,22 +204,21 @@ public class CompatibilityVerifier {
           ArtifactLink newLink = new ArtifactLink(dependentVersion, bestLinkSoFar.value.getDependencyVersion(),
             bestLinkSoFar.value.getDependencyIntegrationVersion(), type, compatType);
           graph.removeLink(inboundLink.origin, inboundLink.destination, link);
-          output.println(Level.DEBUG, "Breaking bad link from [" + inboundLink.origin.getValue() + "] to [" +
-            inboundLink.destination.getValue() + "] version [" + link.getDependencyVersion() + "]");
+          output.debug("Breaking bad link from [%s] to [%s] version [%s]", inboundLink.origin.getValue(),
+            inboundLink.destination.getValue(), link.getDependencyVersion());
 
           graph.addLink(inboundLink.origin, inboundLink.destination, newLink);
-          output.println(Level.DEBUG, "Add better link from [" + inboundLink.origin.getValue() + "] to [" +
-            inboundLink.destination.getValue() + "] version [" + bestVersionSoFar + "]");
+          output.debug("Add better link from [%s] to [%s] version [%s]", inboundLink.origin.getValue(),
+            inboundLink.destination.getValue(), bestVersionSoFar);
         }
 
         output.println(Level.DEBUG, "Removing outbound links for other versions");
         List<GraphLink<ArtifactID, ArtifactLink>> outboundLinks = graphNode.getOutboundLinksList();
         for (GraphLink<ArtifactID, ArtifactLink> outboundLink : outboundLinks) {
           if (!outboundLink.value.getDependentVersion().equals(bestVersionSoFar)) {
-            output.println(Level.DEBUG, "Removing link from [" + outboundLink.origin.getValue() + "] to [" +
-              outboundLink.destination.getValue() + "] because it was for version [" +
-              outboundLink.value.getDependentVersion() + "] which is older than the " +
-              "best version found of [" + bestVersionSoFar + "]");
+            output.debug("Removing link from [%s] to [%s] because it was for version [%s] which is older than the " +
+              "best version found of [%s]", outboundLink.origin.getValue(), outboundLink.destination.getValue(),
+              outboundLink.value.getDependentVersion(), bestVersionSoFar);
 
             graph.removeLink(outboundLink.origin, outboundLink.destination, outboundLink.value);
           }
@@ -236,10 +240,10 @@ public class CompatibilityVerifier {
     List<GraphLink<ArtifactID, ArtifactLink>> inboundLinks = node.getInboundLinksList();
     for (GraphLink<ArtifactID, ArtifactLink> inboundLink : inboundLinks) {
       String compatType = inboundLink.value.getCompatibility();
-      output.println(Level.DEBUG, "Determining compatType for artifact [" + node.getValue() + "]");
+      output.debug("Determining compatType for artifact [%s]", node.getValue());
 
       if (compatType != null) {
-        output.println(Level.DEBUG, "Found compatType [" + compatType + "]");
+        output.debug("Found compatType [%s]", compatType);
         return compatType;
       }
     }
@@ -250,8 +254,9 @@ public class CompatibilityVerifier {
   protected String makeCompatibilityString(Dependencies dependencies, ArtifactGraph graph,
                                            GraphLink<ArtifactID, ArtifactLink> first, GraphLink<ArtifactID, ArtifactLink> second) {
     Set<Artifact> rootArtifacts = dependencies.getAllArtifacts();
-    List<GraphPath<ArtifactID>> artifactPaths1 = makeAllPaths(rootArtifacts, graph, first.destination.getValue());
-    List<GraphPath<ArtifactID>> artifactPaths2 = makeAllPaths(rootArtifacts, graph, second.destination.getValue());
+    GraphPathFinder<ArtifactID, ArtifactLink> finder = new GraphPathFinder<ArtifactID, ArtifactLink>(graph);
+    List<GraphPath<ArtifactID>> artifactPaths1 = makeAllPaths(rootArtifacts, finder, first.destination.getValue());
+    List<GraphPath<ArtifactID>> artifactPaths2 = makeAllPaths(rootArtifacts, finder, second.destination.getValue());
 
     StringBuffer buf = new StringBuffer();
     buf.append("Artifact [").append(artifactString(first)).append("] not compatible with [").
@@ -262,16 +267,31 @@ public class CompatibilityVerifier {
     return buf.toString();
   }
 
-  private List<GraphPath<ArtifactID>> makeAllPaths(Set<Artifact> rootArtifacts, ArtifactGraph graph,
-                                                   ArtifactID id) {
+  /**
+   * Finds the shortest paths from the root artifacts to the artifact. At most one more path than is shown is
+   * returned so that the message can say that some paths were left out.
+   */
+  private List<GraphPath<ArtifactID>> makeAllPaths(Set<Artifact> rootArtifacts,
+                                                   GraphPathFinder<ArtifactID, ArtifactLink> finder, ArtifactID id) {
     List<GraphPath<ArtifactID>> artifactPaths = new ArrayList<GraphPath<ArtifactID>>();
     for (Artifact rootArtifact : rootArtifacts) {
-      List<GraphPath<ArtifactID>> paths = graph.getPaths(rootArtifact.getId(), id);
+      List<GraphPath<ArtifactID>> paths = finder.getShortestPaths(rootArtifact.getId(), id, MAX_PATHS + 1);
       if (paths != null) {
         artifactPaths.addAll(paths);
       }
 
-      output.println(Level.DEBUG, "Calculating path from [" + rootArtifact + "] to [" + id + "]");
+      output.debug("Calculating path from [%s] to [%s]", rootArtifact, id);
+    }
+
+    // Keep the shortest paths from all of the roots (the sort is stable)
+    Collections.sort(artifactPaths, new Comparator<GraphPath<ArtifactID>>() {
+      public int compare(GraphPath<ArtifactID> first, GraphPath<ArtifactID> second) {
+        return first.getPath().size() - second.getPath().size();
+      }
+    });
+
+    if (artifactPaths.size() > MAX_PATHS + 1) {
+      artifactPaths = artifactPaths.subList(0, MAX_PATHS + 1);
     }
 
     return artifactPaths;
@@ -283,7 +303,7 @@ public class CompatibilityVerifier {
     if (paths.size() == 0) {
       buf.append("\t\tInside this project.\n");
     } else {
-      for (GraphPath<ArtifactID> path : paths) {
+      for (GraphPath<ArtifactID> path : paths.subList(0, Math.min(paths.size(), MAX_PATHS))) {
         buf.append("\t\t");
 
         List<ArtifactID> artifactPath = path.getPath();
@@ -297,6 +317,10 @@ public class CompatibilityVerifier {
 
         buf.append("\n");
       }
+
+      if (paths.size() > MAX_PATHS) {
+        buf.append("\t\t(Only the ").append(MAX_PATHS).append(" shortest paths are shown)\n");
+      }
     }
   }
 
@@ -41,8 +41,8 @@ public class MinorVersionComparator implements VersionComparator {
       return previousVersion; // perfect match
     } else if (currentVersion != null) {
       // Try using the smart versions
-      Version currentVer = new Version(currentVersion);
-      Version previousVer = new Version(previousVersion);
+      Version currentVer = Version.parse(currentVersion);
+      Version previousVer = Version.parse(previousVersion);
 
       // Smart versions are cool, compare using minor
       if (currentVer.getMajor() != previousVer.getMajor()) {
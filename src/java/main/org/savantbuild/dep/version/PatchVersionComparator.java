@@ -39,8 +39,8 @@ public class PatchVersionComparator implements VersionComparator {
     if (previousVersion.equals(currentVersion)) {
       return previousVersion; // perfect match
     } else if (currentVersion != null) {
-      Version currentVer = new Version(currentVersion);
-      Version previousVer = new Version(previousVersion);
+      Version currentVer = Version.parse(currentVersion);
+      Version previousVer = Version.parse(previousVersion);
 
       if (currentVer.getMajor() != previousVer.getMajor()) {
         return null;
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.version;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.savantbuild.domain.Artifact;
+import org.savantbuild.domain.Version;
+
+/**
+ * <p>
+ * This class is an index of the versions of a single project in a single
+ * location, such as a cache directory or a remote repository. It answers the
+ * latest and integration version questions without scanning and parsing the
+ * names each time.
+ * </p>
+ *
+ * <p>
+ * The versions are kept in a sorted Map of parsed versions so the latest
+ * version is a single lookup. Since old layouts put the files of all the
+ * artifacts of a project in the same directory, the sorted Map is built
+ * once per artifact name and type the first time it is asked for. The
+ * integration builds are kept as the highest integration build number of
+ * each artifact for each base version.
+ * </p>
+ *
+ * <p>
+ * The listings are given to the index by the process that owns the location.
+ * There is a single instance of this class per location and project so that
+ * the index lives for the entire build. Processes that change the location
+ * must call {@link #invalidate(String, String, String)}. It is thread safe.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class VersionIndex {
+  private static final Map<String, VersionIndex> indexes = new HashMap<String, VersionIndex>();
+
+  private Set<String> names;
+  private final Map<String, TreeMap<Version, String>> versions = new HashMap<String, TreeMap<Version, String>>();
+  private final Map<String, Map<String, Long>> integrations = new HashMap<String, Map<String, Long>>();
+
+  /**
+   * Returns the index for the given project in the given location.
+   *
+   * @param location The location, such as the cache directory or the repository URL.
+   * @param group    The group of the project.
+   * @param project  The project.
+   * @return The index and never null.
+   */
+  public static synchronized VersionIndex forProject(String location, String group, String project) {
+    String key = key(location, group, project);
+    VersionIndex index = indexes.get(key);
+    if (index == null) {
+      index = new VersionIndex();
+      indexes.put(key, index);
+    }
+
+    return index;
+  }
+
+  /**
+   * Removes the index for the given project in the given location. The next call to
+   * {@link #forProject(String, String, String)} returns an empty index.
+   *
+   * @param location The location, such as the cache directory or the repository URL.
+   * @param group    The group of the project.
+   * @param project  The project.
+   */
+  public static synchronized void invalidate(String location, String group, String project) {
+    indexes.remove(key(location, group, project));
+  }
+
+  /**
+   * @return True if the names of the versions of the project have been given to this index.
+   */
+  public synchronized boolean hasVersions() {
+    return names != null;
+  }
+
+  /**
+   * Sets the names of the versions of the project. This is normally the list of directories under the project
+   * directory. Hidden names are ignored.
+   *
+   * @param names The names.
+   */
+  public synchronized void setVersions(Set<String> names) {
+    this.names = new HashSet<String>();
+    for (String name : names) {
+      if (!name.startsWith(".")) {
+        this.names.add(name);
+      }
+    }
+
+    this.versions.clear();
+  }
+
+  /**
+   * Determines the latest version of the artifact.
+   *
+   * @param artifact The artifact.
+   * @return The latest version or null if there aren't any versions or they haven't been given to this index.
+   */
+  public synchronized String latest(Artifact artifact) {
+    if (names == null) {
+      return null;
+    }
+
+    String key = artifact.getName() + ":" + artifact.getType();
+    TreeMap<Version, String> sorted = versions.get(key);
+    if (sorted == null) {
+      sorted = sort(artifact);
+      versions.put(key, sorted);
+    }
+
+    return sorted.isEmpty() ? null : sorted.get(sorted.lastKey());
+  }
+
+  /**
+   * @param baseVersion The base version, which is the integration version without the integration suffix.
+   * @return True if the names of the integration builds of the given base version have been given to this index.
+   */
+  public synchronized boolean hasIntegrations(String baseVersion) {
+    return integrations.containsKey(baseVersion);
+  }
+
+  /**
+   * Sets the names of the integration builds of the given base version. This is normally the list of files in the
+   * integration directory of the base version. Hidden names are ignored.
+   *
+   * @param baseVersion The base version, which is the integration version without the integration suffix.
+   * @param names       The names.
+   */
+  public synchronized void setIntegrations(String baseVersion, Set<String> names) {
+    String ib = "-" + baseVersion + "-IB";
+    Map<String, Long> best = new HashMap<String, Long>();
+    for (String name : names) {
+      int start = name.lastIndexOf(ib);
+      if (start <= 0 || name.startsWith(".")) {
+        continue;
+      }
+
+      int begin = start + ib.length();
+      int index = name.indexOf(".", begin);
+      String fileVersion = index >= begin ? name.substring(begin, index) : name.substring(begin);
+      try {
+        Long num = Long.valueOf(fileVersion);
+        String artifactName = name.substring(0, start);
+        Long current = best.get(artifactName);
+        if (current == null || num > current) {
+          best.put(artifactName, num);
+        }
+      } catch (NumberFormatException e) {
+        // Ignoring files whose part after IB is not a number
+      }
+    }
+
+    integrations.put(baseVersion, best);
+  }
+
+  /**
+   * Determines the best integration version of the artifact.
+   *
+   * @param artifact The artifact whose version is an integration version.
+   * @return The best version or null if there aren't any integration builds or they haven't been given to this index.
+   */
+  public synchronized String bestIntegration(Artifact artifact) {
+    String baseVersion = ArtifactVersionTools.baseVersion(artifact);
+    Map<String, Long> best = integrations.get(baseVersion);
+    Long num = best == null ? null : best.get(artifact.getName());
+    if (num == null) {
+      return null;
+    }
+
+    return baseVersion + "-IB" + num;
+  }
+
+  private TreeMap<Version, String> sort(Artifact artifact) {
+    String artifactName = artifact.getName();
+    TreeMap<Version, String> sorted = new TreeMap<Version, String>();
+    for (String name : names) {
+      try {
+        // This is the old layout where the files are all in the same directory
+        if (name.startsWith(artifactName)) {
+          name = name.substring(artifactName.length() + 1, name.length() - artifact.getType().length() - 1);
+        }
+
+        Version ver = Version.parse(name);
+        if (!sorted.containsKey(ver)) {
+          sorted.put(ver, name);
+        }
+      } catch (Exception e) {
+        // Ignoring bad version
+      }
+    }
+
+    return sorted;
+  }
+
+  private static String key(String location, String group, String project) {
+    return location + "|" + group + "|" + project;
+  }
+}
@@ -66,28 +66,35 @@ public class FetchWorkflowHandler {
    *                               item being fetched. For example, if the artifact MD5 file is being fetched this would
    *                               look like this: common-collections-2.1.jar.md5.
    * @param publishWorkflowHandler The PublishWorkflowHandler that is used to store the item if it can be found.
-   * @param context                The resolution context used to store missing items.
+   * @param context                The resolution context used to store missing items and track the deadline.
    * @return A file that contains the item contents or null if the item was not found.
    */
   public File fetchItem(Artifact artifact, String item, PublishWorkflowHandler publishWorkflowHandler, ResolutionContext context) {
-    output.println(Level.DEBUG, "Running [" + processes.size() + "] to fetch [" + item + "]");
+    output.debug("Running [%s] to fetch [%s]", processes.size(), item);
 
     boolean temporaryError = false;
-    for (ProcessHandler process : processes) {
-      output.println(Level.DEBUG, "Executing fetch process [" + process.getClass().getName() + "] to resolve artifact");
-
-      try {
-        return process.fetch(artifact, item, publishWorkflowHandler);
-      } catch (TemporaryIOException e) {
-        temporaryError = true;
-      } catch (PermanentIOException e) {
-        throw new BuildException(e);
-      } catch (DoesNotExistException e) {
-        // Ignore
-      } catch (NegativeCacheException e) {
-        output.println(Level.DEBUG, "Item [" + item + "] for artifact [" + artifact + "] was negatively cached");
-        return null;
+    String request = "[" + item + "] for artifact [" + artifact + "]";
+    context.startRequest(request);
+    try {
+      for (ProcessHandler process : processes) {
+        output.debug("Executing fetch process [%s] to resolve artifact", process.getClass().getName());
+        context.checkDeadline();
+
+        try {
+          return process.fetch(artifact, item, publishWorkflowHandler);
+        } catch (TemporaryIOException e) {
+          temporaryError = true;
+        } catch (PermanentIOException e) {
+          throw new BuildException(e);
+        } catch (DoesNotExistException e) {
+          // Ignore
+        } catch (NegativeCacheException e) {
+          output.debug("Item [%s] for artifact [%s] was negatively cached", item, artifact);
+          return null;
+        }
       }
+    } finally {
+      context.finishRequest(request);
     }
 
     if (!temporaryError) {
@@ -105,31 +112,46 @@ public class FetchWorkflowHandler {
    * @param artifact               The artifact to fetch the MetaData for.
    * @param publishWorkflowHandler The PublishWorkflowHandler that is used to store the MetaData if it can
    *                               be found.
-   * @param context                The resolution context used to store missing items.
+   * @param context                The resolution context used to store missing items and track the deadline.
    * @return The ArtifactMetaData of the artifact or null if the artifact doesn't have any.
    */
   public ArtifactMetaData fetchMetaData(Artifact artifact, PublishWorkflowHandler publishWorkflowHandler, ResolutionContext context) {
-    output.println(Level.DEBUG, "Running [" + processes.size() + "] to fetch MetaData for artifact [" + artifact + "]");
+    output.debug("Running [%s] to fetch MetaData for artifact [%s]", processes.size(), artifact);
 
     boolean temporaryError = false;
-    for (ProcessHandler process : processes) {
-      output.println(Level.DEBUG, "Executing fetch process [" + process.getClass().getName() + "]" +
-        " to resolve artifact MetaData");
-
-      try {
-        return process.fetchMetaData(artifact, publishWorkflowHandler);
-      } catch (TemporaryIOException e) {
-        output.println(Level.DEBUG, "Encountered temporary IO exception while fetching AMD for [" + artifact + "]", e);
-        temporaryError = true;
-      } catch (PermanentIOException e) {
-        output.println(Level.DEBUG, "Encountered permanant IO exception while fetching AMD for [" + artifact + "]", e);
-        throw new BuildException(e);
-      } catch (DoesNotExistException e) {
-        // This does nothing.
-        output.println(Level.DEBUG, "Encountered DoesNotExistException while fetching AMD for [" + artifact + "]", e);
-      } catch (NegativeCacheException e) {
-        return null;
+    String request = "the MetaData for artifact [" + artifact + "]";
+    context.startRequest(request);
+    try {
+      for (ProcessHandler process : processes) {
+        output.debug("Executing fetch process [%s] to resolve artifact MetaData", process.getClass().getName());
+        context.checkDeadline();
+
+        try {
+          return process.fetchMetaData(artifact, publishWorkflowHandler);
+        } catch (TemporaryIOException e) {
+          if (output.isEnabled(Level.DEBUG)) {
+            output.println(Level.DEBUG, "Encountered temporary IO exception while fetching AMD for [" + artifact + "]",
+              e);
+          }
+          temporaryError = true;
+        } catch (PermanentIOException e) {
+          if (output.isEnabled(Level.DEBUG)) {
+            output.println(Level.DEBUG, "Encountered permanant IO exception while fetching AMD for [" + artifact + "]",
+              e);
+          }
+          throw new BuildException(e);
+        } catch (DoesNotExistException e) {
+          // This does nothing.
+          if (output.isEnabled(Level.DEBUG)) {
+            output.println(Level.DEBUG, "Encountered DoesNotExistException while fetching AMD for [" + artifact + "]",
+              e);
+          }
+        } catch (NegativeCacheException e) {
+          return null;
+        }
       }
+    } finally {
+      context.finishRequest(request);
     }
 
     if (!temporaryError) {
@@ -148,17 +170,37 @@ public class FetchWorkflowHandler {
    * @return The version if one exists, otherwise null.
    */
   public String determineVersion(Artifact artifact) {
+    return determineVersion(artifact, new ResolutionContext());
+  }
+
+  /**
+   * Determines the version available for the given artifact like {@link #determineVersion(Artifact)} does, but stops
+   * asking the processes once the deadline of the resolution passes.
+   *
+   * @param artifact The artifact to get the version for.
+   * @param context  The resolution context used to track the deadline.
+   * @return The version if one exists, otherwise null.
+   */
+  public String determineVersion(Artifact artifact, ResolutionContext context) {
     Version best = null;
     String versionStr = null;
-    for (ProcessHandler process : processes) {
-      String currentVersionStr = process.determineVersion(artifact);
-      if (currentVersionStr != null) {
-        Version currentVersion = new Version(currentVersionStr);
-        if (best == null || currentVersion.compareTo(best) > 0) {
-          best = currentVersion;
-          versionStr = currentVersionStr;
+    String request = "the version of artifact [" + artifact + "]";
+    context.startRequest(request);
+    try {
+      for (ProcessHandler process : processes) {
+        context.checkDeadline();
+
+        String currentVersionStr = process.determineVersion(artifact);
+        if (currentVersionStr != null) {
+          Version currentVersion = Version.parse(currentVersionStr);
+          if (best == null || currentVersion.compareTo(best) > 0) {
+            best = currentVersion;
+            versionStr = currentVersionStr;
+          }
         }
       }
+    } finally {
+      context.finishRequest(request);
     }
 
     return versionStr;
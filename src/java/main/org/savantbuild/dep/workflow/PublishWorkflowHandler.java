@@ -16,9 +16,10 @@
 package org.savantbuild.dep.workflow;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.savantbuild.BuildException;
 import org.savantbuild.dep.workflow.process.ProcessHandler;
@@ -72,63 +73,62 @@ public class PublishWorkflowHandler {
    */
   public File publish(Artifact artifact, String item, File file) {
     File result = null;
+    File source = file;
     for (ProcessHandler process : processes) {
-      File temp = process.publish(artifact, item, file);
+      File temp = process.publish(artifact, item, source);
       if (result == null) {
         result = temp;
       }
+
+      // A staging file is moved by the process that created it, so the rest publish the moved file
+      if (temp != null && !source.exists()) {
+        source = temp;
+      }
     }
 
     return result;
   }
 
   /**
-   * Publishes a negative file for the artifact item. This file is empty, but signals Savant not to
-   * attempt to fetch that specific item again, since it doesn't exist.
+   * Creates a staging file for the item using the first process in this workflow, which is normally the local cache.
+   * An item can be downloaded straight into the staging file and then given to {@link #publish(Artifact, String,
+   * File)}, which moves it into place without copying it. The caller must pass the staging file to
+   * {@link #discardStagingFile(File)} once it is done with it.
    *
-   * @param artifact The artifact information used to publish.
-   * @param item     The item that the negative is being published for.
+   * @param artifact The artifact that the item is associated with.
+   * @param item     The name of the item.
+   * @return The staging file or null if the first process doesn't support staging.
    */
-  public void publishNegative(Artifact artifact, String item) {
-    File itemFile;
-    try {
-      itemFile = File.createTempFile("item", "item");
-      itemFile.deleteOnExit();
-    } catch (IOException e) {
-      // This is okay, because negatives are only for performance and if we can't create one, we'll just
-      // head out and try and fetch it again next time.
-      return;
-    }
+  public File stagingFile(Artifact artifact, String item) {
+    return processes.isEmpty() ? null : processes.get(0).stagingFile(artifact, item);
+  }
 
-    for (ProcessHandler process : processes) {
-      try {
-        process.publish(artifact, item + ".neg", itemFile);
-      } catch (BuildException e) {
-        // Continue since this is okay.
-      }
+  /**
+   * Deletes a staging file from {@link #stagingFile(Artifact, String)} if it wasn't published.
+   *
+   * @param file The staging file.
+   */
+  public void discardStagingFile(File file) {
+    if (!processes.isEmpty()) {
+      processes.get(0).discardStagingFile(file);
     }
   }
 
   /**
-   * Publishes a negative file for the artifact MetaData. This file is empty, but signals Savant not to
-   * attempt to fetch that specific AMD file again, since it doesn't exist.
+   * Publishes negative records for the missing items. These signal Savant not to attempt to fetch the items again,
+   * since they don't exist. Each process is called once with all of the items so that it can store them in bulk.
    *
-   * @param artifact The artifact information used to publish.
+   * @param negatives The names of the missing items keyed by artifact. The meta data file of an artifact is named
+   *                  using {@link Artifact#getArtifactMetaDataFile()}.
    */
-  public void publishNegativeMetaData(Artifact artifact) {
-    File amdFile;
-    try {
-      amdFile = File.createTempFile("amd", "amd");
-      amdFile.deleteOnExit();
-    } catch (IOException e) {
-      // This is okay, because negatives are only for performance and if we can't create one, we'll just
-      // head out and try and fetch it again next time.
+  public void publishNegatives(Map<Artifact, Set<String>> negatives) {
+    if (negatives.isEmpty()) {
       return;
     }
 
     for (ProcessHandler process : processes) {
       try {
-        process.publish(artifact, artifact.getArtifactNegativeMetaDataFile(), amdFile);
+        process.publishNegatives(negatives);
       } catch (BuildException e) {
         // Continue since this is okay.
       }
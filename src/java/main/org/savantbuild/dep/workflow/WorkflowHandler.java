@@ -15,28 +15,64 @@
  */
 package org.savantbuild.dep.workflow;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import org.savantbuild.dep.workflow.process.CacheProcess;
+import org.savantbuild.dep.workflow.process.CircuitBreakerProcessHandler;
+import org.savantbuild.dep.workflow.process.HedgedProcessHandler;
 import org.savantbuild.dep.workflow.process.ProcessHandler;
 import org.savantbuild.dep.workflow.process.ProcessHandlerFactory;
 import org.savantbuild.domain.Process;
 import org.savantbuild.domain.Workflow;
 import org.savantbuild.run.output.Output;
+import org.savantbuild.util.StringTools;
 
 /**
  * <p>
  * This class models a grouping of a fetch and publish workflow.
  * </p>
  *
+ * <p>
+ * If the workflow has a <strong>hedgeDelay</strong> attribute, the cache
+ * processes are checked first and then the other fetch processes are raced
+ * using a {@link HedgedProcessHandler} with that delay in milliseconds.
+ * </p>
+ *
+ * <p>
+ * The fetch processes other than the caches are wrapped in a
+ * {@link CircuitBreakerProcessHandler}, so that a remote that keeps failing
+ * is skipped instead of being tried for every artifact.
+ * </p>
+ *
  * @author Brian Pontarelli
  */
 public class WorkflowHandler {
   public static WorkflowHandler build(Workflow workflow, Output output) {
     List<Process> processes = workflow.getFetchProcesses();
     FetchWorkflowHandler fetch = new FetchWorkflowHandler(output);
+    int hedgeDelay = StringTools.toInt(workflow.getAttributes().get("hedgeDelay"), -1);
+    List<ProcessHandler> remotes = new ArrayList<ProcessHandler>();
     for (Process process : processes) {
       ProcessHandler fetchProcess = ProcessHandlerFactory.buildProcess(output, process);
-      fetch.getProcesses().add(fetchProcess);
+      if (fetchProcess instanceof CacheProcess) {
+        fetch.getProcesses().add(fetchProcess);
+        continue;
+      }
+
+      fetchProcess = new CircuitBreakerProcessHandler(output, fetchProcess, process.getAttributes());
+      if (hedgeDelay >= 0) {
+        remotes.add(fetchProcess);
+      } else {
+        fetch.getProcesses().add(fetchProcess);
+      }
+    }
+
+    // The caches are still checked first and then the remote processes are raced
+    if (remotes.size() == 1) {
+      fetch.getProcesses().add(remotes.get(0));
+    } else if (remotes.size() > 1) {
+      fetch.getProcesses().add(new HedgedProcessHandler(output, remotes, hedgeDelay));
     }
 
     processes = workflow.getPublishProcesses();
@@ -46,11 +82,14 @@ public class WorkflowHandler {
       publish.getProcesses().add(publishProcess);
     }
 
-    return new WorkflowHandler(fetch, publish);
+    WorkflowHandler handler = new WorkflowHandler(fetch, publish);
+    handler.workflow = workflow;
+    return handler;
   }
 
   private final FetchWorkflowHandler fetchWorkflowHandler;
   private final PublishWorkflowHandler publishWorkflowHandler;
+  private Workflow workflow;
 
   public WorkflowHandler(FetchWorkflowHandler fetchWorkflowHandler, PublishWorkflowHandler publishWorkflowHandler) {
     this.fetchWorkflowHandler = fetchWorkflowHandler;
@@ -64,4 +103,22 @@ public class WorkflowHandler {
   public PublishWorkflowHandler getPublishWorkflowHandler() {
     return publishWorkflowHandler;
   }
+
+  /**
+   * @return The workflow this handler was built from or null if it was constructed directly.
+   */
+  public Workflow getWorkflow() {
+    return workflow;
+  }
+
+  /**
+   * Shuts down the threads that the fetch processes use to race remote processes.
+   */
+  public void shutdown() {
+    for (ProcessHandler process : fetchWorkflowHandler.getProcesses()) {
+      if (process instanceof HedgedProcessHandler) {
+        ((HedgedProcessHandler) process).shutdown();
+      }
+    }
+  }
 }
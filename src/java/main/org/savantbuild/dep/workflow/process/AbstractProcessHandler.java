@@ -16,7 +16,11 @@
 package org.savantbuild.dep.workflow.process;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
 
+import org.savantbuild.BuildException;
 import org.savantbuild.dep.NegativeCacheException;
 import org.savantbuild.dep.workflow.PublishWorkflowHandler;
 import org.savantbuild.dep.xml.ArtifactTools;
@@ -62,4 +66,55 @@ public abstract class AbstractProcessHandler implements ProcessHandler {
       }
     }
   }
+
+  /**
+   * Returns null, since most processes can't stage items.
+   *
+   * @param artifact Not used.
+   * @param item     Not used.
+   * @return Always null.
+   */
+  @Override
+  public File stagingFile(Artifact artifact, String item) {
+    return null;
+  }
+
+  /**
+   * Deletes the file.
+   *
+   * @param file The staging file.
+   */
+  @Override
+  public void discardStagingFile(File file) {
+    file.delete();
+  }
+
+  /**
+   * Publishes an empty <strong>.neg</strong> file for each item. This is the standard method and can be overridden
+   * by processes that store negative records differently.
+   *
+   * @param negatives The names of the missing items keyed by artifact.
+   */
+  @Override
+  public void publishNegatives(Map<Artifact, Set<String>> negatives) {
+    File negFile;
+    try {
+      negFile = File.createTempFile("item", "neg");
+      negFile.deleteOnExit();
+    } catch (IOException e) {
+      // This is okay, because negatives are only for performance and if we can't create one, we'll just
+      // head out and try and fetch it again next time.
+      return;
+    }
+
+    for (Artifact artifact : negatives.keySet()) {
+      for (String item : negatives.get(artifact)) {
+        try {
+          publish(artifact, item + ".neg", negFile);
+        } catch (BuildException e) {
+          // Continue since this is okay.
+        }
+      }
+    }
+  }
 }
@@ -0,0 +1,455 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.workflow.process;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.savantbuild.domain.Artifact;
+import org.savantbuild.domain.ArtifactGroup;
+import org.savantbuild.domain.ArtifactID;
+import org.savantbuild.domain.ArtifactMetaData;
+import org.savantbuild.domain.Dependencies;
+import org.savantbuild.io.FileTools;
+import org.savantbuild.util.StringTools;
+
+/**
+ * <p>
+ * This class is a binary index of the AMD files in a cache directory. It
+ * allows the {@link CacheProcess} to load the meta data of an artifact
+ * without parsing the XML.
+ * </p>
+ *
+ * <p>
+ * The index is a single file that records are appended to. Each record
+ * contains the path of the AMD file, the MD5 of the AMD file and the meta
+ * data. The file is memory mapped when it is first used and the positions of
+ * the records are kept in memory. A record is only used if the MD5 given
+ * when it is looked up matches the MD5 in the record, so the XML is always
+ * the source of truth. If a path is in the index more than once, the last
+ * record wins.
+ * </p>
+ *
+ * <p>
+ * Builds that share the cache share the file, so it is read and appended to
+ * while holding its {@link CacheLocks} lock. The file is never truncated,
+ * since other builds might have it mapped. A partial record at the end of
+ * the file is skipped. If the file is corrupt, has a partial record at the
+ * end, or has more old records than current ones, it is rebuilt by writing
+ * the current records to a temporary file and renaming it over the index.
+ * The header holds a generation number that changes every time the file is
+ * rebuilt, so that a build can tell if its view of the file is out of date.
+ * </p>
+ *
+ * <p>
+ * There is a single instance of this class per cache directory so that all
+ * of the cache processes in a build share it. It is thread safe.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class ArtifactMetaDataIndex {
+  private static final int MAGIC = 0x53414D44;
+  private static final int VERSION = 2;
+  private static final int HEADER = 16;
+  private static final Random random = new Random();
+  private static final Map<File, ArtifactMetaDataIndex> indexes = new HashMap<File, ArtifactMetaDataIndex>();
+
+  private final File file;
+  private final CacheLocks locks;
+  private final Map<String, Integer> positions = new HashMap<String, Integer>();
+  private final Map<String, ByteBuffer> recent = new HashMap<String, ByteBuffer>();
+  private ByteBuffer mapped;
+  private long generation;
+  private long end;
+  private int records;
+  private boolean loaded;
+
+  ArtifactMetaDataIndex(File file) {
+    this.file = file;
+    this.locks = CacheLocks.forDirectory(file.getParentFile());
+  }
+
+  /**
+   * Returns the index for the given cache directory.
+   *
+   * @param dir The cache directory.
+   * @return The index and never null.
+   */
+  public static synchronized ArtifactMetaDataIndex forDirectory(File dir) {
+    File file = new File(dir, ".amd-index").getAbsoluteFile();
+    ArtifactMetaDataIndex index = indexes.get(file);
+    if (index == null) {
+      index = new ArtifactMetaDataIndex(file);
+      indexes.put(file, index);
+    }
+
+    return index;
+  }
+
+  /**
+   * Looks up the meta data for the AMD file at the given path.
+   *
+   * @param path The path of the AMD file inside the cache directory.
+   * @param md5  The MD5 of the AMD file.
+   * @return A new ArtifactMetaData object or null if the path isn't in the index or the MD5 doesn't match.
+   */
+  public synchronized ArtifactMetaData get(String path, String md5) {
+    if (!loaded) {
+      loaded = true;
+      locks.lock(file.getName());
+      try {
+        scan();
+      } finally {
+        locks.unlock(file.getName());
+      }
+    }
+
+    ByteBuffer buffer = recent.get(path);
+    if (buffer != null) {
+      buffer = buffer.duplicate();
+    } else if (positions.containsKey(path)) {
+      buffer = mapped.duplicate();
+      buffer.position(positions.get(path));
+    } else {
+      return null;
+    }
+
+    try {
+      readString(buffer);
+      if (!md5.equals(readString(buffer))) {
+        return null;
+      }
+
+      return readMetaData(buffer);
+    } catch (RuntimeException e) {
+      // A corrupt record is the same as a missing record since the XML is the source of truth
+      return null;
+    } catch (InternalError e) {
+      // This is thrown if the mapped file was truncated by something other than Savant
+      return null;
+    }
+  }
+
+  /**
+   * Adds the meta data for the AMD file at the given path to the index.
+   *
+   * @param path The path of the AMD file inside the cache directory.
+   * @param md5  The MD5 of the AMD file.
+   * @param amd  The meta data.
+   * @throws IOException If the index could not be written.
+   */
+  public synchronized void put(String path, String md5, ArtifactMetaData amd) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(baos);
+    writeString(dos, path);
+    writeString(dos, md5);
+    writeMetaData(dos, amd);
+    dos.flush();
+    byte[] record = baos.toByteArray();
+
+    locks.lock(file.getName());
+    try {
+      // Catch up with the records other builds wrote since the file was read
+      long current = readGeneration();
+      if (!loaded || current != generation) {
+        loaded = true;
+        scan();
+      } else if (file.length() > end) {
+        scanRecent();
+      }
+
+      recent.put(path, ByteBuffer.wrap(record));
+      if (generation == 0 || file.length() != end || records + 1 > 2 * size() + 16) {
+        rebuild();
+        return;
+      }
+
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        // Write the record in one call so that a partial record can only be at the end of the file
+        ByteBuffer buf = ByteBuffer.allocate(4 + record.length);
+        buf.putInt(record.length).put(record);
+        raf.seek(end);
+        raf.write(buf.array());
+        end += buf.capacity();
+        records++;
+      } finally {
+        raf.close();
+      }
+    } finally {
+      locks.unlock(file.getName());
+    }
+  }
+
+  /**
+   * Maps the file and finds the records in it. The caller must hold the lock.
+   */
+  private void scan() {
+    positions.clear();
+    recent.clear();
+    mapped = null;
+    generation = 0;
+    end = 0;
+    records = 0;
+    if (!file.isFile() || file.length() < HEADER) {
+      return;
+    }
+
+    try {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+        FileChannel channel = raf.getChannel();
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      } finally {
+        raf.close();
+      }
+
+      if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+        mapped = null;
+        return;
+      }
+
+      generation = mapped.getLong();
+      end = HEADER;
+      while (mapped.remaining() >= 4) {
+        int length = mapped.getInt();
+        int position = mapped.position();
+        if (length < 0 || length > mapped.remaining()) {
+          // A partial record from a write that failed, which is skipped until the file is rebuilt
+          break;
+        }
+
+        positions.put(readString(mapped), position);
+        mapped.position(position + length);
+        end = mapped.position();
+        records++;
+      }
+    } catch (Exception e) {
+      // The index is only an optimization, so it is rebuilt if it is corrupt
+      positions.clear();
+      mapped = null;
+      generation = 0;
+    } catch (InternalError e) {
+      positions.clear();
+      mapped = null;
+      generation = 0;
+    }
+  }
+
+  /**
+   * Reads the records that other builds appended after the file was mapped. The caller must hold the lock.
+   */
+  private void scanRecent() throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      byte[] bytes = new byte[(int) (raf.length() - end)];
+      raf.seek(end);
+      raf.readFully(bytes);
+
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      while (buffer.remaining() >= 4) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+          break;
+        }
+
+        ByteBuffer record = ByteBuffer.wrap(bytes, buffer.position(), length).slice();
+        recent.put(readString(record.duplicate()), record);
+        buffer.position(buffer.position() + length);
+        end += 4 + length;
+        records++;
+      }
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Writes the current records to a new file and renames it over the index, so that builds that have the old file
+   * mapped can keep reading it. The caller must hold the lock.
+   */
+  private void rebuild() throws IOException {
+    File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        long newGeneration;
+        synchronized (random) {
+          do {
+            newGeneration = random.nextLong();
+          } while (newGeneration == 0 || newGeneration == generation);
+        }
+        out.writeLong(newGeneration);
+
+        for (String path : positions.keySet()) {
+          if (!recent.containsKey(path)) {
+            int position = positions.get(path);
+            ByteBuffer buffer = mapped.duplicate();
+            int length = buffer.getInt(position - 4);
+            byte[] bytes = new byte[length];
+            buffer.position(position);
+            buffer.get(bytes);
+            out.writeInt(length);
+            out.write(bytes);
+          }
+        }
+
+        for (ByteBuffer record : recent.values()) {
+          ByteBuffer buffer = record.duplicate();
+          byte[] bytes = new byte[buffer.remaining()];
+          buffer.get(bytes);
+          out.writeInt(bytes.length);
+          out.write(bytes);
+        }
+      } finally {
+        out.close();
+      }
+
+      FileTools.rename(temp, file);
+    } catch (InternalError e) {
+      throw new IOException("Unable to read the AMD index [" + file.getAbsolutePath() + "]");
+    } finally {
+      temp.delete();
+    }
+
+    scan();
+  }
+
+  private long readGeneration() throws IOException {
+    if (!file.isFile() || file.length() < HEADER) {
+      return 0;
+    }
+
+    DataInputStream dis = new DataInputStream(new FileInputStream(file));
+    try {
+      if (dis.readInt() != MAGIC || dis.readInt() != VERSION) {
+        return 0;
+      }
+
+      return dis.readLong();
+    } finally {
+      dis.close();
+    }
+  }
+
+  private int size() {
+    int size = positions.size();
+    for (String path : recent.keySet()) {
+      if (!positions.containsKey(path)) {
+        size++;
+      }
+    }
+
+    return size;
+  }
+
+  private void writeMetaData(DataOutputStream dos, ArtifactMetaData amd) throws IOException {
+    writeString(dos, amd.getCompatibility());
+
+    Dependencies dependencies = amd.getDependencies();
+    dos.writeBoolean(dependencies != null);
+    if (dependencies == null) {
+      return;
+    }
+
+    Map<String, ArtifactGroup> groups = dependencies.getArtifactGroups();
+    dos.writeInt(groups.size());
+    for (String type : groups.keySet()) {
+      writeString(dos, type);
+
+      List<Artifact> artifacts = groups.get(type).getArtifacts();
+      dos.writeInt(artifacts.size());
+      for (Artifact artifact : artifacts) {
+        writeString(dos, artifact.getGroup());
+        writeString(dos, artifact.getProject());
+        writeString(dos, artifact.getName());
+        writeString(dos, artifact.getVersion());
+        writeString(dos, artifact.getIntegrationVersion());
+        writeString(dos, artifact.getType());
+      }
+    }
+  }
+
+  private ArtifactMetaData readMetaData(ByteBuffer buffer) {
+    String compatibility = readString(buffer);
+    if (buffer.get() == 0) {
+      return new ArtifactMetaData(null, compatibility);
+    }
+
+    Dependencies dependencies = new Dependencies();
+    int groups = buffer.getInt();
+    for (int i = 0; i < groups; i++) {
+      String type = readString(buffer);
+      ArtifactGroup group = new ArtifactGroup(type);
+      dependencies.getArtifactGroups().put(type, group);
+
+      int artifacts = buffer.getInt();
+      for (int j = 0; j < artifacts; j++) {
+        String artifactGroup = readString(buffer);
+        String project = readString(buffer);
+        String name = readString(buffer);
+        String version = readString(buffer);
+        String integrationVersion = readString(buffer);
+        ArtifactID id = ArtifactID.intern(artifactGroup, project, name, readString(buffer));
+        group.getArtifacts().add(new Artifact(id, StringTools.intern(version), integrationVersion));
+      }
+    }
+
+    return new ArtifactMetaData(dependencies, compatibility);
+  }
+
+  private void writeString(DataOutputStream dos, String str) throws IOException {
+    if (str == null) {
+      dos.writeInt(-1);
+      return;
+    }
+
+    byte[] bytes = str.getBytes("UTF-8");
+    dos.writeInt(bytes.length);
+    dos.write(bytes);
+  }
+
+  private String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    try {
+      return new String(bytes, "UTF-8");
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
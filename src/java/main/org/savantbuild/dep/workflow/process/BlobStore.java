@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.workflow.process;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.savantbuild.io.FileTools;
+import org.savantbuild.io.IOTools;
+import org.savantbuild.io.MD5;
+import org.savantbuild.io.MD5Exception;
+import org.savantbuild.util.StringTools;
+
+/**
+ * <p>
+ * This class is a content addressed store of files. Each file is stored
+ * once under its MD5 sum, so files with the same contents that are published
+ * under different versions share a single copy. The {@link CacheProcess}
+ * exposes its normal layout as links to the files in the store.
+ * </p>
+ *
+ * <p>
+ * The files are stored in sub-directories named using the first two
+ * characters of the MD5 sum so that no single directory gets too large. A
+ * file is written to a temporary file, verified against its MD5 sum and then
+ * renamed into place, so the store never contains partial or corrupt files.
+ * The files in the store must never be changed, since they are shared.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class BlobStore {
+  private final File dir;
+
+  /**
+   * @param dir The directory of the store.
+   */
+  public BlobStore(File dir) {
+    this.dir = dir;
+  }
+
+  /**
+   * Returns the file in the store for the given MD5 sum.
+   *
+   * @param md5 The MD5 sum.
+   * @return The file or null if there isn't one.
+   */
+  public File get(String md5) {
+    File blob = file(md5);
+    return blob.isFile() ? blob : null;
+  }
+
+  /**
+   * Adds the contents of the given file to the store, unless the store already has them.
+   *
+   * @param source The file.
+   * @param md5    The MD5 sum of the file.
+   * @return The file in the store or null if the file doesn't match the MD5 sum.
+   * @throws IOException If the file couldn't be added.
+   */
+  public File put(File source, String md5) throws IOException {
+    if (md5 == null || md5.length() != 32) {
+      return null;
+    }
+
+    File blob = get(md5);
+    if (blob != null) {
+      return blob;
+    }
+
+    blob = file(md5);
+    File parent = blob.getParentFile();
+    if (!parent.mkdirs() && !parent.isDirectory()) {
+      throw new IOException("Unable to create the blob directory [" + parent.getAbsolutePath() + "]");
+    }
+
+    File temp = File.createTempFile(blob.getName(), ".tmp", parent);
+    try {
+      FileInputStream fis = new FileInputStream(source);
+      try {
+        IOTools.write(fis, new FileOutputStream(temp), new MD5(md5, StringTools.fromHex(md5), null));
+      } catch (MD5Exception e) {
+        return null;
+      } finally {
+        fis.close();
+      }
+
+      // Another build might have added the same contents, which is fine since they are the same
+      if (!temp.renameTo(blob) && !blob.isFile()) {
+        throw new IOException("Unable to add the blob [" + blob.getAbsolutePath() + "]");
+      }
+
+      return blob;
+    } finally {
+      temp.delete();
+    }
+  }
+
+  /**
+   * Creates a link from the given file to the file in the store. If the link can't be created, the contents of the
+   * file in the store are copied. The link is created using a temporary name and then renamed, so an existing file is
+   * replaced atomically.
+   *
+   * @param blob The file in the store.
+   * @param file The file to create.
+   * @param sync True to force copied contents to the disk before the rename.
+   * @throws IOException If the link couldn't be created and the copy failed.
+   */
+  public void link(File blob, File file, boolean sync) throws IOException {
+    File temp = File.createTempFile("." + file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+    try {
+      if (temp.delete() && FileTools.link(blob, temp)) {
+        FileTools.rename(temp, file);
+      } else {
+        FileTools.copyAtomically(blob, file, sync);
+      }
+    } finally {
+      temp.delete();
+    }
+  }
+
+  private File file(String md5) {
+    String sum = md5.toLowerCase();
+    return new File(new File(dir, sum.substring(0, 2)), sum);
+  }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.workflow.process;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.savantbuild.domain.Process;
+import org.savantbuild.domain.PublishWorkflow;
+import org.savantbuild.domain.Workflow;
+import org.savantbuild.domain.Workflows;
+import org.savantbuild.io.FileTools;
+import org.savantbuild.run.output.Output;
+import org.savantbuild.util.StringTools;
+
+/**
+ * <p>
+ * This class keeps a cache directory under a size budget by evicting the
+ * least recently used artifact versions. A version is the directory that
+ * holds the files of a single version of a project. The {@link CacheProcess}
+ * sets the modification time of a version directory the first time it is
+ * fetched in a build, and publishing into a version directory changes it as
+ * well, so the modification time is the last time the version was used.
+ * </p>
+ *
+ * <p>
+ * When the total size of the versions and blobs is over the budget, the
+ * versions are evicted oldest first until the cache fits. Each version is evicted while
+ * holding its {@link CacheLocks} by renaming the directory out of the way and
+ * then pruning it, the same way integration builds are deleted. A version
+ * that was used after the cache was scanned is skipped. The cleaner also
+ * removes the <strong>.neg</strong> files older versions of Savant wrote, any
+ * directories left behind by a prune that didn't finish and any temporary
+ * files that are more than a day old, which builds that crashed left behind.
+ * </p>
+ *
+ * <p>
+ * If the blob store is on, the files of the versions are hard links to the
+ * blobs. Those files are counted as part of the blob store instead of their
+ * versions, since evicting a version only removes a link. Once a blob has no
+ * other links, the cleaner deletes it, which is what frees the space. Java
+ * can't count links, so the cleaner runs <strong>find</strong> once for each
+ * sweep of the blobs. If that doesn't work, such as on Windows, the blob store
+ * only has copies, so all of the blobs are deleted. That is safe since a
+ * publish that can't link to a blob copies the file instead. The other hidden
+ * directories of the cache, such as the lock files, aren't counted or evicted.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class CacheCleaner {
+  private static final long STALE = 24L * 60 * 60 * 1000;
+
+  private final Output output;
+  private final String dir;
+  private final long maxSize;
+
+  /**
+   * @param output  The output for the results.
+   * @param dir     The cache directory.
+   * @param maxSize The number of bytes the versions in the cache can use.
+   */
+  public CacheCleaner(Output output, String dir, long maxSize) {
+    this.output = output;
+    this.dir = dir;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Creates cleaners for all the cache processes in the given workflows that have a <strong>maxSize</strong>
+   * attribute. Each cache directory gets a single cleaner.
+   *
+   * @param output     The output for the results.
+   * @param workflows  The workflows.
+   * @param afterBuild True to only include the caches whose <strong>cleanAfterBuild</strong> attribute is true.
+   * @return The cleaners, which might be empty.
+   */
+  public static List<CacheCleaner> forWorkflows(Output output, Workflows workflows, boolean afterBuild) {
+    List<Process> processes = new ArrayList<Process>();
+    for (Workflow workflow : workflows.getWorkflows().values()) {
+      processes.addAll(workflow.getFetchProcesses());
+      processes.addAll(workflow.getPublishProcesses());
+    }
+
+    for (PublishWorkflow workflow : workflows.getIntegrationWorkflows().values()) {
+      processes.addAll(workflow.getProcesses());
+    }
+
+    for (PublishWorkflow workflow : workflows.getReleaseWorkflows().values()) {
+      processes.addAll(workflow.getProcesses());
+    }
+
+    Map<String, CacheCleaner> cleaners = new LinkedHashMap<String, CacheCleaner>();
+    for (Process process : processes) {
+      Map<String, String> attributes = process.getAttributes();
+      if (!"cache".equals(attributes.get("type")) || StringTools.isTrimmedEmpty(attributes.get("maxSize")) ||
+        (afterBuild && !StringTools.toBoolean(attributes.get("cleanAfterBuild"), false))) {
+        continue;
+      }
+
+      String dir = CacheProcess.directory(attributes);
+      if (!cleaners.containsKey(dir)) {
+        cleaners.put(dir, new CacheCleaner(output, dir, StringTools.toSize(attributes.get("maxSize"), 0)));
+      }
+    }
+
+    return new ArrayList<CacheCleaner>(cleaners.values());
+  }
+
+  /**
+   * Deletes the blobs that aren't used and then evicts the least recently used versions until the cache is under the
+   * budget.
+   *
+   * @return The number of bytes that were freed.
+   */
+  public long clean() {
+    File root = new File(dir);
+    File blobDir = new File(root, ".blobs");
+    Set<String> shared = sharedFiles(root);
+    List<CachedVersion> versions = new ArrayList<CachedVersion>();
+    long total = scan(root, null, versions, shared) + size(blobDir);
+    long freed = sweep(blobDir, shared);
+    if (total - freed <= maxSize) {
+      output.debug("The cache [%s] uses [%s] of [%s] bytes", dir, total - freed, maxSize);
+      return freed;
+    }
+
+    Collections.sort(versions, new Comparator<CachedVersion>() {
+      @Override
+      public int compare(CachedVersion one, CachedVersion two) {
+        return one.time < two.time ? -1 : (one.time == two.time ? 0 : 1);
+      }
+    });
+
+    CacheLocks locks = CacheLocks.forDirectory(root);
+    long linked = 0;
+    int count = 0;
+    for (CachedVersion version : versions) {
+      if (total - freed <= maxSize) {
+        break;
+      }
+
+      File deleted = new File(version.dir.getParentFile(), "." + version.dir.getName() + "." +
+        System.currentTimeMillis() + ".deleted");
+      locks.lock(version.path);
+      try {
+        // Skip versions that were used since the scan
+        if (version.dir.lastModified() != version.time || !version.dir.renameTo(deleted)) {
+          continue;
+        }
+      } finally {
+        locks.unlock(version.path);
+      }
+
+      FileTools.prune(deleted);
+      output.debug("Evicted [%s] from the cache", version.path);
+      freed += version.size;
+      linked += version.linked;
+      count++;
+
+      // The space of the linked files is only freed once their blobs are deleted
+      if (linked > 0 && total - freed - linked <= maxSize) {
+        freed += sweep(blobDir, sharedFiles(blobDir));
+        linked = 0;
+      }
+    }
+
+    if (linked > 0) {
+      freed += sweep(blobDir, sharedFiles(blobDir));
+    }
+
+    output.info("Evicted [" + count + "] versions and freed [" + freed + "] bytes from the cache [" + dir + "]");
+    return freed;
+  }
+
+  /**
+   * Finds the version directories under the given directory and adds up the sizes of their files that aren't linked to
+   * the blob store.
+   *
+   * @param dir      The directory.
+   * @param path     The path of the directory inside the cache or null for the cache directory.
+   * @param versions The list to add the versions to.
+   * @param shared   The absolute paths of the files that are linked to the blob store.
+   * @return The total size of the versions.
+   */
+  private long scan(File dir, String path, List<CachedVersion> versions, Set<String> shared) {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return 0;
+    }
+
+    long time = dir.lastModified();
+    long stale = System.currentTimeMillis() - STALE;
+    long size = 0;
+    long linked = 0;
+    long total = 0;
+    boolean changed = false;
+    for (File file : files) {
+      String name = file.getName();
+      if (name.startsWith(".")) {
+        if (name.endsWith(".deleted") && file.isDirectory()) {
+          FileTools.prune(file);
+        } else if (name.endsWith(".tmp") && file.isFile() && file.lastModified() < stale) {
+          // Staging and temporary files left behind by builds that crashed
+          changed |= file.delete();
+        }
+
+        continue;
+      }
+
+      if (file.isDirectory()) {
+        total += scan(file, path == null ? name : path + "/" + name, versions, shared);
+      } else if (name.endsWith(".neg") && path != null) {
+        changed |= file.delete();
+      } else if (path != null && shared.contains(file.getAbsolutePath())) {
+        linked += file.length();
+      } else if (path != null) {
+        size += file.length();
+      }
+    }
+
+    // Deleting files changes the modification time, which is the last time the version was used
+    if (changed) {
+      dir.setLastModified(time);
+    }
+
+    if (size > 0 || linked > 0) {
+      versions.add(new CachedVersion(dir, path, size, linked, time));
+    }
+
+    return total + size;
+  }
+
+  /**
+   * Deletes the blobs that don't have any other links and the temporary files of the blob store that builds that
+   * crashed left behind.
+   *
+   * @param blobDir The directory of the blob store.
+   * @param shared  The absolute paths of the blobs that have other links.
+   * @return The number of bytes that were freed.
+   */
+  private long sweep(File blobDir, Set<String> shared) {
+    File[] dirs = blobDir.listFiles();
+    if (dirs == null) {
+      return 0;
+    }
+
+    long stale = System.currentTimeMillis() - STALE;
+    long freed = 0;
+    int count = 0;
+    for (File sub : dirs) {
+      File[] blobs = sub.listFiles();
+      if (blobs == null) {
+        continue;
+      }
+
+      for (File blob : blobs) {
+        if (blob.getName().endsWith(".tmp")) {
+          if (blob.lastModified() < stale) {
+            blob.delete();
+          }
+        } else if (!shared.contains(blob.getAbsolutePath())) {
+          long length = blob.length();
+          if (blob.delete()) {
+            freed += length;
+            count++;
+          }
+        }
+      }
+
+      // This only deletes the directory if it is empty now
+      sub.delete();
+    }
+
+    output.debug("Deleted [%s] unused blobs from the cache [%s]", count, dir);
+    return freed;
+  }
+
+  private long size(File blobDir) {
+    long size = 0;
+    File[] dirs = blobDir.listFiles();
+    if (dirs != null) {
+      for (File sub : dirs) {
+        File[] blobs = sub.listFiles();
+        if (blobs != null) {
+          for (File blob : blobs) {
+            size += blob.length();
+          }
+        }
+      }
+    }
+
+    return size;
+  }
+
+  private Set<String> sharedFiles(File dir) {
+    // If the links can't be counted, nothing is linked
+    Set<String> shared = FileTools.sharedFiles(dir);
+    return shared != null ? shared : Collections.<String>emptySet();
+  }
+
+  private static class CachedVersion {
+    private final File dir;
+    private final String path;
+    private final long size;
+    private final long linked;
+    private final long time;
+
+    private CachedVersion(File dir, String path, long size, long linked, long time) {
+      this.dir = dir;
+      this.path = path;
+      this.size = size;
+      this.linked = linked;
+      this.time = time;
+    }
+  }
+}
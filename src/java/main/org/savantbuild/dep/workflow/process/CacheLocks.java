@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.workflow.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.savantbuild.BuildException;
+
+/**
+ * <p>
+ * This class provides the locks that keep builds that share a cache
+ * directory from changing the same part of the cache at the same time. The
+ * locks are exclusive and are held while files are published, deleted or
+ * pruned. Reading the cache never takes a lock, since files are always
+ * published by renaming complete files into place.
+ * </p>
+ *
+ * <p>
+ * The locks are striped. Each path in the cache is hashed to one of a fixed
+ * number of lock files in the <strong>.locks</strong> directory of the cache,
+ * so unrelated paths rarely wait for each other and the number of lock files
+ * never grows. The lock files are locked using {@link FileLock}s, which work
+ * across processes. Since a JVM can only hold one lock on a file, each stripe
+ * also has a {@link ReentrantLock} for the threads of this JVM. The locks are
+ * reentrant for a single thread.
+ * </p>
+ *
+ * <p>
+ * There is a single instance of this class per cache directory. It is thread
+ * safe.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class CacheLocks {
+  private static final int STRIPES = 64;
+  private static final Map<File, CacheLocks> instances = new HashMap<File, CacheLocks>();
+
+  private final File dir;
+  private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+  private final RandomAccessFile[] files = new RandomAccessFile[STRIPES];
+  private final FileLock[] fileLocks = new FileLock[STRIPES];
+
+  CacheLocks(File dir) {
+    this.dir = dir;
+    for (int i = 0; i < STRIPES; i++) {
+      locks[i] = new ReentrantLock();
+    }
+  }
+
+  /**
+   * Returns the locks for the given cache directory.
+   *
+   * @param dir The cache directory.
+   * @return The locks and never null.
+   */
+  public static synchronized CacheLocks forDirectory(File dir) {
+    File key = dir.getAbsoluteFile();
+    CacheLocks instance = instances.get(key);
+    if (instance == null) {
+      instance = new CacheLocks(new File(key, ".locks"));
+      instances.put(key, instance);
+    }
+
+    return instance;
+  }
+
+  /**
+   * Locks the given path. This waits until no other thread or process holds the lock. The caller must call
+   * {@link #unlock(String)} with the same path in a finally block.
+   *
+   * @param path The path inside the cache directory, such as the directory of an artifact version.
+   * @throws BuildException If the lock file couldn't be locked.
+   */
+  public void lock(String path) throws BuildException {
+    int stripe = stripe(path);
+    ReentrantLock lock = locks[stripe];
+    lock.lock();
+    if (lock.getHoldCount() > 1) {
+      return;
+    }
+
+    try {
+      if (!dir.mkdirs() && !dir.isDirectory()) {
+        throw new IOException("Unable to create the lock directory [" + dir.getAbsolutePath() + "]");
+      }
+
+      files[stripe] = new RandomAccessFile(new File(dir, Integer.toString(stripe)), "rw");
+      fileLocks[stripe] = files[stripe].getChannel().lock();
+    } catch (IOException e) {
+      close(stripe);
+      lock.unlock();
+      throw new BuildException("Unable to lock the cache for [" + path + "]", e);
+    }
+  }
+
+  /**
+   * Unlocks the given path.
+   *
+   * @param path The path that was locked.
+   */
+  public void unlock(String path) {
+    int stripe = stripe(path);
+    ReentrantLock lock = locks[stripe];
+    if (lock.getHoldCount() == 1) {
+      close(stripe);
+    }
+
+    lock.unlock();
+  }
+
+  private void close(int stripe) {
+    try {
+      if (fileLocks[stripe] != null) {
+        fileLocks[stripe].release();
+      }
+
+      if (files[stripe] != null) {
+        files[stripe].close();
+      }
+    } catch (IOException e) {
+      // Closing the file releases the lock, so there isn't anything else to do
+    } finally {
+      fileLocks[stripe] = null;
+      files[stripe] = null;
+    }
+  }
+
+  private int stripe(String path) {
+    return (path.hashCode() & 0x7FFFFFFF) % STRIPES;
+  }
+}
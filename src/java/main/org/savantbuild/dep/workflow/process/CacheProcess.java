@@ -24,10 +24,18 @@ import java.util.Set;
 import org.savantbuild.BuildException;
 import org.savantbuild.dep.NegativeCacheException;
 import org.savantbuild.dep.version.ArtifactVersionTools;
+import org.savantbuild.dep.version.VersionIndex;
 import org.savantbuild.dep.workflow.PublishWorkflowHandler;
+import org.savantbuild.dep.xml.ArtifactTools;
 import org.savantbuild.domain.Artifact;
+import org.savantbuild.domain.ArtifactMetaData;
 import org.savantbuild.io.DoesNotExistException;
 import org.savantbuild.io.FileTools;
+import org.savantbuild.io.IOTools;
+import org.savantbuild.io.MD5;
+import org.savantbuild.io.PermanentIOException;
+import org.savantbuild.io.TemporaryIOException;
+import org.savantbuild.run.output.Level;
 import org.savantbuild.run.output.Output;
 import org.savantbuild.util.StringTools;
 
@@ -37,18 +45,116 @@ import org.savantbuild.util.StringTools;
  * publish artifacts.
  * </p>
  *
+ * <p>
+ * When an AMD file is published into the cache, its meta data is also added
+ * to the {@link ArtifactMetaDataIndex} of the cache directory so that later
+ * builds don't need to parse the XML. The index is only used if the MD5 in
+ * the AMD file's MD5 file matches the index. This can be turned off by setting
+ * the <strong>index</strong> attribute to false.
+ * </p>
+ *
+ * <p>
+ * Items that don't exist anywhere are recorded in the {@link NegativeCache}
+ * of the cache directory. The records expire after the number of seconds in
+ * the <strong>negativeTTL</strong> attribute, which defaults to a week. If
+ * the attribute is 0, the records never expire.
+ * </p>
+ *
+ * <p>
+ * If the <strong>blobs</strong> attribute is true, the contents of the
+ * published files are stored once in the {@link BlobStore} in the
+ * <strong>.blobs</strong> directory of the cache and the normal layout is
+ * made of links to them. This saves space when the same files are published
+ * under many versions, such as integration builds. Since the files are
+ * shared, they must never be changed in place. The attribute defaults to
+ * false.
+ * </p>
+ *
+ * <p>
+ * Files are published by copying them to a temporary file in the same
+ * directory and renaming it, so other builds never see a partial file. If
+ * the <strong>sync</strong> attribute is true, the contents are also forced
+ * to the disk before the rename. This is slower, but the cache can't
+ * contain truncated files after a crash. It defaults to false. Items that
+ * are downloaded by other processes are written directly to a staging file
+ * next to their cache location, so they are renamed into place instead of
+ * being copied. The staging files are hidden, and the ones left behind by
+ * builds that crashed are deleted by the {@link CacheCleaner}.
+ * </p>
+ *
+ * <p>
+ * The cache directory can be shared by builds running at the same time.
+ * Publishing, deleting and pruning take the {@link CacheLocks} of the
+ * version directory so that builds don't change the same version at the same
+ * time. Fetching never takes a lock, since files are only ever replaced by a
+ * rename and integration builds are pruned by first renaming their directory
+ * out of the way.
+ * </p>
+ *
+ * <p>
+ * The first time a version is fetched in a build, the modification time of
+ * its directory is set to the current time. If the <strong>maxSize</strong>
+ * attribute is set (such as 10g), <code>sb --clean-cache</code> uses the
+ * {@link CacheCleaner} to evict the least recently used versions until the
+ * cache fits. If the <strong>cleanAfterBuild</strong> attribute is also true,
+ * the cache is cleaned in the background after each build.
+ * </p>
+ *
  * @author Brian Pontarelli
  */
 public class CacheProcess extends AbstractProcessHandler {
   private final Output output;
-  private String dir;
+  private final String dir;
+  private final boolean index;
+  private final NegativeCache negatives;
+  private final BlobStore blobs;
+  private final boolean sync;
+  private final CacheLocks locks;
+  private final Set<String> accessed = new HashSet<String>();
+  private final Set<String> staged = new HashSet<String>();
 
   public CacheProcess(Output output, Map<String, String> attributes) {
     this.output = output;
-    this.dir = attributes.get("dir");
-    if (dir == null) {
-      dir = System.getProperty("user.home") + "/.savant/cache";
+    this.dir = directory(attributes);
+
+    this.index = StringTools.toBoolean(attributes.get("index"), true);
+    this.locks = CacheLocks.forDirectory(new File(dir));
+    this.negatives = new NegativeCache(dir, StringTools.toInt(attributes.get("negativeTTL"), 7 * 24 * 60 * 60));
+    this.sync = StringTools.toBoolean(attributes.get("sync"), false);
+    this.blobs = StringTools.toBoolean(attributes.get("blobs"), false) ? new BlobStore(new File(dir, ".blobs")) : null;
+  }
+
+  /**
+   * Loads the MetaData from the index of the cache directory if the AMD file is in the index and hasn't changed.
+   * Otherwise, this parses the AMD file.
+   *
+   * @param artifact               The artifact whose MetaData to fetch.
+   * @param publishWorkflowHandler The publish workflow called to store the MetaData.
+   * @return The MetaData or null if there are none.
+   */
+  @Override
+  public ArtifactMetaData fetchMetaData(Artifact artifact, PublishWorkflowHandler publishWorkflowHandler)
+    throws TemporaryIOException, PermanentIOException, DoesNotExistException, NegativeCacheException {
+    if (index) {
+      String item = artifact.getArtifactMetaDataFile();
+      String path = StringTools.join("/", dir, artifact.getGroup().replace('.', '/'), artifact.getProject(), artifact.getVersion(), item);
+      try {
+        MD5 md5 = IOTools.parseMD5(new File(path + ".md5"));
+        if (md5 != null && md5.sum != null && new File(path).isFile()) {
+          ArtifactMetaData amd = ArtifactMetaDataIndex.forDirectory(new File(dir)).get(indexPath(artifact, item),
+            md5.sum.toLowerCase());
+          if (amd != null) {
+            return amd;
+          }
+        }
+      } catch (RuntimeException e) {
+        if (output.isEnabled(Level.DEBUG)) {
+          output.println(Level.DEBUG, "Unable to use the AMD index for [" + artifact + "]", e);
+        }
+      }
     }
+
+    return super.fetchMetaData(artifact, publishWorkflowHandler);
   }
 
   /**
@@ -69,19 +175,20 @@ public class CacheProcess extends AbstractProcessHandler {
     String path = StringTools.join("/", dir, artifact.getGroup().replace('.', '/'), artifact.getProject(), artifact.getVersion(), item);
     File file = new File(path);
     if (!file.isFile()) {
-      file = new File(path + ".neg");
-      if (file.isFile()) {
+      if (negatives.contains(artifact, item)) {
         throw new NegativeCacheException();
       } else {
         throw new DoesNotExistException();
       }
     }
 
+    recordAccess(file.getParentFile());
     return file;
   }
 
   /**
-   * Finds the latest or integration build of the artifact inside the cache.
+   * Finds the latest or integration build of the artifact inside the cache. The directory listings are kept in the
+   * {@link VersionIndex} of the project, so each directory is only listed once per build.
    *
    * @param artifact The artifact to get the version for.
    * @return The version or null if it couldn't be found.
@@ -90,13 +197,22 @@ public class CacheProcess extends AbstractProcessHandler {
   public String determineVersion(Artifact artifact) {
     String version = artifact.getVersion();
     if (version.equals(ArtifactVersionTools.LATEST)) {
-      File dir = new File(StringTools.join("/", this.dir, artifact.getGroup().replace('.', '/'), artifact.getProject()));
-      Set<String> names = listFiles(dir);
-      version = ArtifactVersionTools.latest(artifact, names);
+      VersionIndex versionIndex = VersionIndex.forProject(dir, artifact.getGroup(), artifact.getProject());
+      if (!versionIndex.hasVersions()) {
+        File dir = new File(StringTools.join("/", this.dir, artifact.getGroup().replace('.', '/'), artifact.getProject()));
+        versionIndex.setVersions(listFiles(dir));
+      }
+
+      version = versionIndex.latest(artifact);
     } else if (version.endsWith(ArtifactVersionTools.INTEGRATION)) {
-      File dir = new File(StringTools.join("/", this.dir, artifact.getGroup().replace('.', '/'), artifact.getProject(), artifact.getVersion()));
-      Set<String> names = listFiles(dir);
-      version = ArtifactVersionTools.bestIntegration(artifact, names);
+      VersionIndex versionIndex = VersionIndex.forProject(dir, artifact.getGroup(), artifact.getProject());
+      String baseVersion = ArtifactVersionTools.baseVersion(artifact);
+      if (!versionIndex.hasIntegrations(baseVersion)) {
+        File dir = new File(StringTools.join("/", this.dir, artifact.getGroup().replace('.', '/'), artifact.getProject(), artifact.getVersion()));
+        versionIndex.setIntegrations(baseVersion, listFiles(dir));
+      }
+
+      version = versionIndex.bestIntegration(artifact);
     }
 
     return version;
@@ -119,34 +235,113 @@ public class CacheProcess extends AbstractProcessHandler {
       throw new BuildException("Cache location is for an artifact to be stored is a directory [" + cacheFile.getAbsolutePath() + "]");
     }
 
-    if (cacheFile.isFile() && !cacheFile.delete()) {
-      throw new BuildException("Unable to clean out old file to replace [" + cacheFile.getAbsolutePath() + "]");
-    } else if (!cacheFile.exists()) {
-      File dir = cacheFile.getParentFile();
-      if (!dir.exists() && !dir.mkdirs()) {
+    boolean isStaged;
+    synchronized (staged) {
+      isStaged = staged.remove(file.getAbsolutePath());
+    }
+
+    String versionPath = versionPath(artifact);
+    locks.lock(versionPath);
+    try {
+      File parent = cacheFile.getParentFile();
+      if (!parent.mkdirs() && !parent.isDirectory()) {
         throw new BuildException("Unable to create cache directory [" + cacheFile.getParent() + "]");
       }
+
+      // The old file is replaced by a rename, so other builds never see a missing or partial file
+      if (!linkBlob(item, file, cacheFile)) {
+        try {
+          if (isStaged) {
+            if (sync) {
+              FileTools.sync(file);
+            }
+
+            FileTools.rename(file, cacheFile);
+          } else {
+            FileTools.copyAtomically(file, cacheFile, sync);
+          }
+        } catch (IOException e) {
+          throw new BuildException("Unable to create cache file [" + cacheFile.getAbsolutePath() + "]", e);
+        }
+      }
+    } finally {
+      locks.unlock(versionPath);
+      if (isStaged) {
+        file.delete();
+      }
     }
 
-    try {
-      if (!cacheFile.createNewFile()) {
-        throw new BuildException("Unable to create cache file [" + cacheFile.getAbsolutePath() + "]");
+    VersionIndex.invalidate(dir, artifact.getGroup(), artifact.getProject());
+
+    if (!item.endsWith("md5")) {
+      output.info("Cached at [" + dir + "/" + path + "]");
+    }
+
+    if (index && item.equals(artifact.getArtifactMetaDataFile())) {
+      try {
+        ArtifactMetaData amd = ArtifactTools.parseArtifactMetaData(cacheFile);
+        ArtifactMetaDataIndex.forDirectory(new File(dir)).put(indexPath(artifact, item),
+          FileTools.md5(cacheFile).sum.toLowerCase(), amd);
+      } catch (Exception e) {
+        if (output.isEnabled(Level.DEBUG)) {
+          output.println(Level.DEBUG, "Unable to add the AMD file [" + cacheFile + "] to the index", e);
+        }
       }
-    } catch (IOException ioe) {
-      throw new BuildException(ioe);
     }
 
+    return cacheFile;
+  }
+
+  /**
+   * Creates a hidden temporary file in the directory the item is published to. Since the file is on the same file
+   * system as the cache, publishing it is a rename.
+   *
+   * @param artifact The artifact that the item is associated with.
+   * @param item     The name of the item.
+   * @return The staging file.
+   * @throws BuildException If the file couldn't be created.
+   */
+  @Override
+  public File stagingFile(Artifact artifact, String item) throws BuildException {
+    File parent = new File(StringTools.join("/", dir, versionPath(artifact)));
     try {
-      FileTools.copy(file, cacheFile);
+      if (!parent.mkdirs() && !parent.isDirectory()) {
+        throw new IOException("Unable to create cache directory [" + parent.getAbsolutePath() + "]");
+      }
+
+      File file = File.createTempFile("." + item, ".tmp", parent);
+      synchronized (staged) {
+        staged.add(file.getAbsolutePath());
+      }
+
+      return file;
     } catch (IOException e) {
-      throw new BuildException(e);
+      throw new BuildException("Unable to create a staging file for [" + item + "] in the cache", e);
     }
+  }
 
-    if (!item.endsWith("md5")) {
-      output.info("Cached at [" + dir + "/" + path + "]");
+  /**
+   * Deletes the staging file if it wasn't published and forgets it.
+   *
+   * @param file The staging file.
+   */
+  @Override
+  public void discardStagingFile(File file) {
+    synchronized (staged) {
+      staged.remove(file.getAbsolutePath());
     }
 
-    return cacheFile;
+    file.delete();
+  }
+
+  /**
+   * Adds the negative records to the {@link NegativeCache} of the cache directory.
+   *
+   * @param negatives The items keyed by artifact.
+   */
+  @Override
+  public void publishNegatives(Map<Artifact, Set<String>> negatives) {
+    this.negatives.add(negatives);
   }
 
   /**
@@ -162,8 +357,19 @@ public class CacheProcess extends AbstractProcessHandler {
     String path = StringTools.join("/", dir, artifact.getGroup().replace('.', '/'), artifact.getProject(), artifact.getVersion(), item);
     File file = new File(path);
     boolean deleted = false;
-    if (file.isFile()) {
-      deleted = file.delete();
+    if (item.endsWith(".neg")) {
+      deleted = negatives.remove(artifact, item.substring(0, item.length() - 4));
+    }
+
+    String versionPath = versionPath(artifact);
+    locks.lock(versionPath);
+    try {
+      if (file.isFile()) {
+        deleted |= file.delete();
+        VersionIndex.invalidate(dir, artifact.getGroup(), artifact.getProject());
+      }
+    } finally {
+      locks.unlock(versionPath);
     }
 
     return deleted;
@@ -176,13 +382,98 @@ public class CacheProcess extends AbstractProcessHandler {
    */
   @Override
   public void deleteIntegrationBuilds(Artifact artifact) {
-    String path = StringTools.join("/", dir, artifact.getGroup().replace('.', '/'), artifact.getProject(), artifact.getVersion() + "-{integration}");
-    File dir = new File(path);
-    if (!dir.isDirectory()) {
-      return;
+    String integrationPath = StringTools.join("/", artifact.getGroup().replace('.', '/'), artifact.getProject(), artifact.getVersion() + "-{integration}");
+    File dir = new File(this.dir, integrationPath);
+    File deleted = new File(dir.getParentFile(), "." + dir.getName() + "." + System.currentTimeMillis() + ".deleted");
+    locks.lock(integrationPath);
+    try {
+      if (!dir.isDirectory()) {
+        return;
+      }
+
+      // Rename the directory out of the way so that other builds never see a partially pruned directory
+      if (!dir.renameTo(deleted)) {
+        FileTools.prune(dir);
+        deleted = null;
+      }
+
+      VersionIndex.invalidate(this.dir, artifact.getGroup(), artifact.getProject());
+    } finally {
+      locks.unlock(integrationPath);
     }
 
-    FileTools.prune(dir);
+    if (deleted != null) {
+      FileTools.prune(deleted);
+    }
+  }
+
+  /**
+   * Adds the file to the blob store and links the cache file to it, if the blob store is on. MD5 files are always
+   * copied since they are smaller than the links.
+   *
+   * @param item      The item.
+   * @param file      The file being published.
+   * @param cacheFile The cache file, which is replaced if it exists.
+   * @return True if the cache file was created, false if it still needs to be copied.
+   */
+  private boolean linkBlob(String item, File file, File cacheFile) {
+    if (blobs == null || item.endsWith("md5")) {
+      return false;
+    }
+
+    try {
+      File blob = blobs.put(file, FileTools.md5(file).sum.toLowerCase());
+      if (blob == null) {
+        return false;
+      }
+
+      blobs.link(blob, cacheFile, sync);
+      return true;
+    } catch (IOException e) {
+      if (output.isEnabled(Level.DEBUG)) {
+        output.println(Level.DEBUG, "Unable to link the cache file [" + cacheFile + "] to the blob store", e);
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Returns the cache directory for the given attributes of a cache process.
+   *
+   * @param attributes The attributes.
+   * @return The dir attribute or the default cache directory.
+   */
+  static String directory(Map<String, String> attributes) {
+    String dir = attributes.get("dir");
+    if (dir == null) {
+      dir = System.getProperty("user.home") + "/.savant/cache";
+    }
+
+    return dir;
+  }
+
+  /**
+   * Sets the modification time of the version directory the first time it is used in a build, which is what the
+   * {@link CacheCleaner} uses to find the least recently used versions.
+   *
+   * @param versionDir The version directory.
+   */
+  private void recordAccess(File versionDir) {
+    synchronized (accessed) {
+      if (!accessed.add(versionDir.getPath())) {
+        return;
+      }
+    }
+
+    versionDir.setLastModified(System.currentTimeMillis());
+  }
+
+  private String versionPath(Artifact artifact) {
+    return StringTools.join("/", artifact.getGroup().replace('.', '/'), artifact.getProject(), artifact.getVersion());
+  }
+
+  private String indexPath(Artifact artifact, String item) {
+    return StringTools.join("/", artifact.getGroup().replace('.', '/'), artifact.getProject(), artifact.getVersion(), item);
   }
 
   private Set<String> listFiles(File dir) {
@@ -193,8 +484,11 @@ public class CacheProcess extends AbstractProcessHandler {
     }
 
     for (File file : files) {
+      // Skips the staging files, negative records and directories being deleted
       String fileName = file.getName();
-      names.add(fileName);
+      if (!fileName.startsWith(".")) {
+        names.add(fileName);
+      }
     }
 
     return names;
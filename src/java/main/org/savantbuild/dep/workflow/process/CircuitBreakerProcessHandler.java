@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.workflow.process;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.Set;
+
+import org.savantbuild.dep.NegativeCacheException;
+import org.savantbuild.dep.workflow.PublishWorkflowHandler;
+import org.savantbuild.domain.Artifact;
+import org.savantbuild.domain.ArtifactMetaData;
+import org.savantbuild.io.DoesNotExistException;
+import org.savantbuild.io.PermanentIOException;
+import org.savantbuild.io.TemporaryIOException;
+import org.savantbuild.run.output.Output;
+import org.savantbuild.util.StringTools;
+
+/**
+ * <p>
+ * This class is a process handler that wraps a remote process with a circuit
+ * breaker. If the process throws a TemporaryIOException the number of times
+ * in the <strong>maxFailures</strong> attribute of the process (defaults to
+ * 3) in a row, it is skipped for the rest of the build. A skipped process
+ * throws a TemporaryIOException right away, so the item isn't negatively
+ * cached and the next process is tried. A process that is cancelled, such
+ * as the loser of a {@link HedgedProcessHandler} race, isn't counted as a
+ * failure.
+ * </p>
+ *
+ * <p>
+ * If the process has a <strong>retryAfter</strong> attribute, the process is
+ * probed again once that many seconds have passed. The open circuit is also
+ * recorded in the <strong>healthDir</strong> directory (defaults to
+ * <code>~/.savant/cache/.health</code>) so that later builds skip the process
+ * until then as well. See {@link ProcessHealth}.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class CircuitBreakerProcessHandler extends AbstractProcessHandler {
+  private final Output output;
+  private final ProcessHandler process;
+  private final ProcessHealth health;
+  private final int maxFailures;
+  private final long retryAfter;
+
+  /**
+   * @param output     The output.
+   * @param process    The process to wrap.
+   * @param attributes The attributes of the process.
+   */
+  public CircuitBreakerProcessHandler(Output output, ProcessHandler process, Map<String, String> attributes) {
+    this.output = output;
+    this.process = process;
+    this.maxFailures = StringTools.toInt(attributes.get("maxFailures"), 3);
+    this.retryAfter = StringTools.toInt(attributes.get("retryAfter"), 0) * 1000L;
+
+    File healthDir = null;
+    if (retryAfter > 0) {
+      String dir = attributes.get("healthDir");
+      if (dir == null) {
+        dir = System.getProperty("user.home") + "/.savant/cache/.health";
+      }
+
+      healthDir = new File(dir);
+    }
+
+    this.health = ProcessHealth.forProcess(process.toString(), healthDir);
+  }
+
+  /**
+   * @return The process that is wrapped.
+   */
+  public ProcessHandler getProcess() {
+    return process;
+  }
+
+  /**
+   * @return The health of the process.
+   */
+  public ProcessHealth getHealth() {
+    return health;
+  }
+
+  @Override
+  public File fetch(Artifact artifact, String item, PublishWorkflowHandler publishWorkflowHandler)
+    throws TemporaryIOException, PermanentIOException, DoesNotExistException, NegativeCacheException {
+    allow();
+    try {
+      File file = process.fetch(artifact, item, publishWorkflowHandler);
+      health.success();
+      return file;
+    } catch (TemporaryIOException e) {
+      failure(e);
+      throw e;
+    } catch (DoesNotExistException e) {
+      // The process answered, so it is healthy
+      health.success();
+      throw e;
+    } catch (RuntimeException e) {
+      health.release();
+      throw e;
+    }
+  }
+
+  @Override
+  public ArtifactMetaData fetchMetaData(Artifact artifact, PublishWorkflowHandler publishWorkflowHandler)
+    throws TemporaryIOException, PermanentIOException, DoesNotExistException, NegativeCacheException {
+    allow();
+    try {
+      ArtifactMetaData amd = process.fetchMetaData(artifact, publishWorkflowHandler);
+      health.success();
+      return amd;
+    } catch (TemporaryIOException e) {
+      failure(e);
+      throw e;
+    } catch (DoesNotExistException e) {
+      health.success();
+      throw e;
+    } catch (RuntimeException e) {
+      health.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Skips the process if the circuit is open.
+   *
+   * @param artifact The artifact to get the version for.
+   * @return The version of the process or null if the circuit is open.
+   */
+  @Override
+  public String determineVersion(Artifact artifact) {
+    if (health.isOpen()) {
+      output.debug("Skipping [%s] to determine the version of [%s] because it is failing", process, artifact);
+      return null;
+    }
+
+    return process.determineVersion(artifact);
+  }
+
+  @Override
+  public File publish(Artifact artifact, String item, File file) {
+    return process.publish(artifact, item, file);
+  }
+
+  @Override
+  public void publishNegatives(Map<Artifact, Set<String>> negatives) {
+    process.publishNegatives(negatives);
+  }
+
+  @Override
+  public boolean delete(Artifact artifact, String item) {
+    return process.delete(artifact, item);
+  }
+
+  @Override
+  public void deleteIntegrationBuilds(Artifact artifact) {
+    process.deleteIntegrationBuilds(artifact);
+  }
+
+  @Override
+  public File stagingFile(Artifact artifact, String item) {
+    return process.stagingFile(artifact, item);
+  }
+
+  @Override
+  public void discardStagingFile(File file) {
+    process.discardStagingFile(file);
+  }
+
+  @Override
+  public String toString() {
+    return process.toString();
+  }
+
+  /**
+   * @return The current time. The tests replace this so that they don't have to wait for the retry time.
+   */
+  long now() {
+    return System.currentTimeMillis();
+  }
+
+  private void allow() throws TemporaryIOException {
+    if (maxFailures > 0 && !health.allow(retryAfter, now())) {
+      throw new TemporaryIOException("Skipping [" + process + "] because it failed [" + maxFailures +
+        "] times in a row");
+    }
+  }
+
+  private void failure(TemporaryIOException e) {
+    // A process that was cancelled, such as the loser of a hedged fetch, didn't fail
+    Throwable cause = e.getCause();
+    if (Thread.currentThread().isInterrupted() ||
+      (cause instanceof InterruptedIOException && !(cause instanceof SocketTimeoutException))) {
+      health.release();
+      return;
+    }
+
+    if (maxFailures > 0 && health.failure(maxFailures, now())) {
+      output.info("Skipping [" + process + "] for the rest of the build because it failed [" + maxFailures +
+        "] times in a row. The last failure was [" + e.getMessage() + "]");
+    }
+  }
+}
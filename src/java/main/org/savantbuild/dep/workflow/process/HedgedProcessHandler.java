@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.workflow.process;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.savantbuild.BuildException;
+import org.savantbuild.dep.NegativeCacheException;
+import org.savantbuild.dep.workflow.PublishWorkflowHandler;
+import org.savantbuild.domain.Artifact;
+import org.savantbuild.domain.ArtifactMetaData;
+import org.savantbuild.domain.Version;
+import org.savantbuild.io.DoesNotExistException;
+import org.savantbuild.io.PermanentIOException;
+import org.savantbuild.io.TemporaryIOException;
+import org.savantbuild.run.output.Output;
+
+/**
+ * <p>
+ * This class is a process handler that races a number of remote processes,
+ * such as a primary repository and its mirrors, and keeps the first result.
+ * The first process is started right away. If it hasn't finished after the
+ * delay, the next process is started, and so on. If the delay is 0, all of
+ * the processes are started right away. A process that fails starts the next
+ * one without waiting for the delay.
+ * </p>
+ *
+ * <p>
+ * The processes publish what they fetch before they return, so each process
+ * is given its own publish workflow and only the first of them that publishes
+ * is let through. Since processes only publish items once they are
+ * downloaded and verified, that is the first verified result. The other
+ * processes are then cancelled by interrupting them, which stops their
+ * downloads, and they can never publish. If more than one process was
+ * started, the process that won is written to the output. Otherwise it is
+ * only written to the debug output.
+ * </p>
+ *
+ * <p>
+ * The processes run on a pool of daemon threads that is shared by all of the
+ * fetches of this handler. Idle threads exit after a minute and the pool is
+ * shut down by {@link #shutdown()} once the resolution is done.
+ * </p>
+ *
+ * <p>
+ * If all of the processes fail, the failure is the same as if they had been
+ * tried in order. A PermanentIOException wins over a TemporaryIOException,
+ * which wins over a DoesNotExistException. This process can only fetch, so
+ * it must not be used in a publish workflow.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class HedgedProcessHandler extends AbstractProcessHandler {
+  private final Output output;
+  private final List<ProcessHandler> processes;
+  private final long delay;
+  private ExecutorService executor;
+
+  /**
+   * @param output    The output.
+   * @param processes The processes to race, in the order they are started.
+   * @param delay     The number of milliseconds to wait before starting the next process or 0 to start them all.
+   */
+  public HedgedProcessHandler(Output output, List<ProcessHandler> processes, long delay) {
+    this.output = output;
+    this.processes = new ArrayList<ProcessHandler>(processes);
+    this.delay = delay;
+  }
+
+  /**
+   * @return The processes that are raced.
+   */
+  public List<ProcessHandler> getProcesses() {
+    return processes;
+  }
+
+  /**
+   * Races the processes to fetch the item.
+   *
+   * @param artifact               The artifact that the item is associated with.
+   * @param item                   The name of the item being fetched.
+   * @param publishWorkflowHandler The publish workflow called to store the item.
+   * @return The file of the first process that fetched the item.
+   */
+  @Override
+  public File fetch(final Artifact artifact, final String item, PublishWorkflowHandler publishWorkflowHandler)
+    throws TemporaryIOException, PermanentIOException, DoesNotExistException {
+    return race("[" + item + "] for artifact [" + artifact + "]", publishWorkflowHandler, new Fetch<File>() {
+      public File fetch(ProcessHandler process, PublishWorkflowHandler publish) throws Exception {
+        return process.fetch(artifact, item, publish);
+      }
+    });
+  }
+
+  /**
+   * Races the processes to fetch the MetaData.
+   *
+   * @param artifact               The artifact whose MetaData to fetch.
+   * @param publishWorkflowHandler The publish workflow called to store the MetaData.
+   * @return The MetaData of the first process that fetched it.
+   */
+  @Override
+  public ArtifactMetaData fetchMetaData(final Artifact artifact, PublishWorkflowHandler publishWorkflowHandler)
+    throws TemporaryIOException, PermanentIOException, DoesNotExistException {
+    return race("the MetaData for artifact [" + artifact + "]", publishWorkflowHandler, new Fetch<ArtifactMetaData>() {
+      public ArtifactMetaData fetch(ProcessHandler process, PublishWorkflowHandler publish) throws Exception {
+        return process.fetchMetaData(artifact, publish);
+      }
+    });
+  }
+
+  /**
+   * Asks each process for the version and returns the best one.
+   *
+   * @param artifact The artifact to get the version for.
+   * @return The version or null if none of the processes have it.
+   */
+  @Override
+  public String determineVersion(Artifact artifact) {
+    Version best = null;
+    String versionStr = null;
+    for (ProcessHandler process : processes) {
+      String currentVersionStr = process.determineVersion(artifact);
+      if (currentVersionStr != null) {
+        Version currentVersion = Version.parse(currentVersionStr);
+        if (best == null || currentVersion.compareTo(best) > 0) {
+          best = currentVersion;
+          versionStr = currentVersionStr;
+        }
+      }
+    }
+
+    return versionStr;
+  }
+
+  /**
+   * Always fails, since this process can only fetch.
+   */
+  @Override
+  public File publish(Artifact artifact, String item, File file) throws BuildException {
+    throw new BuildException("The hedged process can only be used to fetch");
+  }
+
+  /**
+   * Does nothing, since this process can only fetch.
+   *
+   * @return Always false.
+   */
+  @Override
+  public boolean delete(Artifact artifact, String item) throws BuildException {
+    return false;
+  }
+
+  /**
+   * Does nothing, since this process can only fetch.
+   */
+  @Override
+  public void deleteIntegrationBuilds(Artifact artifact) {
+  }
+
+  /**
+   * Shuts down the threads that run the processes. The handler creates new threads if it is used again.
+   */
+  public synchronized void shutdown() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "hedged " + processes;
+  }
+
+  private synchronized ExecutorService executor() {
+    if (executor == null) {
+      executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        new ThreadFactory() {
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "savant-hedged-fetch");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    }
+
+    return executor;
+  }
+
+  private <T> T race(String what, PublishWorkflowHandler publishWorkflowHandler, final Fetch<T> fetch)
+    throws TemporaryIOException, PermanentIOException, DoesNotExistException {
+    Race race = new Race(publishWorkflowHandler);
+    CompletionService<T> completion = new ExecutorCompletionService<T>(executor());
+    Map<Future<T>, ProcessHandler> futures = new HashMap<Future<T>, ProcessHandler>();
+    PermanentIOException permanent = null;
+    TemporaryIOException temporary = null;
+    try {
+      int started = 0;
+      do {
+        futures.put(completion.submit(callable(processes.get(started), race, fetch)), processes.get(started));
+        started++;
+      } while (delay <= 0 && started < processes.size());
+
+      for (int finished = 0; finished < processes.size(); ) {
+        Future<T> future;
+        if (started < processes.size()) {
+          future = completion.poll(delay, TimeUnit.MILLISECONDS);
+          if (future == null) {
+            output.debug("Starting [%s] to fetch %s since the other processes are slow", processes.get(started), what);
+            futures.put(completion.submit(callable(processes.get(started), race, fetch)), processes.get(started));
+            started++;
+            continue;
+          }
+        } else {
+          future = completion.take();
+        }
+
+        finished++;
+        ProcessHandler process = futures.get(future);
+        try {
+          T result = future.get();
+          if (started > 1) {
+            output.info("Fetched " + what + " from [" + process + "]");
+          } else {
+            output.debug("Fetched %s from [%s]", what, process);
+          }
+          return result;
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          output.debug("Process [%s] failed to fetch %s because [%s]", process, what, cause);
+          if (cause instanceof PermanentIOException) {
+            permanent = (PermanentIOException) cause;
+          } else if (cause instanceof TemporaryIOException) {
+            temporary = (TemporaryIOException) cause;
+          } else if (cause instanceof RuntimeException && !(cause instanceof DoesNotExistException) &&
+            !(cause instanceof LostException)) {
+            throw (RuntimeException) cause;
+          }
+        }
+
+        // Start the next process right away since this one is done
+        if (started < processes.size()) {
+          futures.put(completion.submit(callable(processes.get(started), race, fetch)), processes.get(started));
+          started++;
+        }
+      }
+    } catch (InterruptedException e) {
+      throw new BuildException("Interrupted while fetching " + what, e);
+    } finally {
+      for (Future<T> future : futures.keySet()) {
+        future.cancel(true);
+      }
+    }
+
+    if (permanent != null) {
+      throw permanent;
+    } else if (temporary != null) {
+      throw temporary;
+    }
+
+    throw new DoesNotExistException("None of the processes have " + what);
+  }
+
+  private <T> Callable<T> callable(final ProcessHandler process, Race race, final Fetch<T> fetch) {
+    final Gate publish = new Gate(race);
+    return new Callable<T>() {
+      public T call() throws Exception {
+        try {
+          return fetch.fetch(process, publish);
+        } catch (NegativeCacheException e) {
+          throw new DoesNotExistException(e);
+        }
+      }
+    };
+  }
+
+  private interface Fetch<T> {
+    T fetch(ProcessHandler process, PublishWorkflowHandler publish) throws Exception;
+  }
+
+  /**
+   * The state of a single race, which is the publish workflow and the gate of the process that published first.
+   */
+  private static class Race {
+    private final PublishWorkflowHandler delegate;
+    private Gate winner;
+
+    private Race(PublishWorkflowHandler delegate) {
+      this.delegate = delegate;
+    }
+  }
+
+  /**
+   * A publish workflow for a single process in a race, which only lets the process through if its gate is the
+   * first one that was used to publish. The threads are pooled, so the gate identifies the process rather than the
+   * thread.
+   */
+  private static class Gate extends PublishWorkflowHandler {
+    private final Race race;
+
+    private Gate(Race race) {
+      this.race = race;
+      getProcesses().addAll(race.delegate.getProcesses());
+    }
+
+    @Override
+    public File publish(Artifact artifact, String item, File file) {
+      synchronized (race) {
+        if (race.winner == null) {
+          race.winner = this;
+        } else if (race.winner != this) {
+          throw new LostException();
+        }
+      }
+
+      return race.delegate.publish(artifact, item, file);
+    }
+
+    @Override
+    public File stagingFile(Artifact artifact, String item) {
+      return race.delegate.stagingFile(artifact, item);
+    }
+
+    @Override
+    public void discardStagingFile(File file) {
+      race.delegate.discardStagingFile(file);
+    }
+  }
+
+  /**
+   * Thrown to a process that tries to publish after another process won.
+   */
+  private static class LostException extends RuntimeException {
+  }
+}
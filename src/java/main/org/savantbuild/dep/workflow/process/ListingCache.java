@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.workflow.process;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.savantbuild.BuildException;
+import org.savantbuild.util.StringTools;
+
+/**
+ * <p>
+ * This class stores the names parsed from remote directory listings on disk
+ * so that they can be shared by builds. Each listing is stored with the ETag
+ * and Last-Modified validators the server sent, so that once a listing is
+ * older than the TTL it can be revalidated with a conditional GET instead of
+ * being downloaded again.
+ * </p>
+ *
+ * <p>
+ * Each listing is a file in the directory whose name is the MD5 of the URI.
+ * The modification time of the file is the time the listing was last
+ * downloaded or revalidated. The files are written to a temporary file and
+ * renamed, so concurrent builds never read a partial listing.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class ListingCache {
+  private static final int VERSION = 1;
+
+  private final File dir;
+  private final long ttl;
+
+  /**
+   * @param dir The directory the listings are stored in.
+   * @param ttl The number of seconds a listing is used without revalidating it.
+   */
+  public ListingCache(File dir, int ttl) {
+    this.dir = dir;
+    this.ttl = ttl * 1000L;
+  }
+
+  /**
+   * Loads the stored listing for the given URI.
+   *
+   * @param uri The URI of the listing.
+   * @return The listing or null if it isn't stored or can't be read.
+   */
+  public Listing get(URI uri) {
+    File file = file(uri);
+    if (!file.isFile()) {
+      return null;
+    }
+
+    try {
+      DataInputStream dis = new DataInputStream(new FileInputStream(file));
+      try {
+        if (dis.readInt() != VERSION) {
+          return null;
+        }
+
+        String etag = readString(dis);
+        String lastModified = readString(dis);
+        int size = dis.readInt();
+        Set<String> names = new HashSet<String>(size);
+        for (int i = 0; i < size; i++) {
+          names.add(dis.readUTF());
+        }
+
+        return new Listing(names, etag, lastModified, file.lastModified());
+      } finally {
+        dis.close();
+      }
+    } catch (IOException e) {
+      // The cache is only an optimization, so a corrupt listing is the same as a missing one
+      return null;
+    }
+  }
+
+  /**
+   * Determines if the listing can be used without revalidating it.
+   *
+   * @param listing The listing.
+   * @return True if the listing is younger than the TTL.
+   */
+  public boolean isFresh(Listing listing) {
+    return System.currentTimeMillis() - listing.time < ttl;
+  }
+
+  /**
+   * Stores the listing for the given URI.
+   *
+   * @param uri          The URI of the listing.
+   * @param names        The names in the listing.
+   * @param etag         (Optional) The ETag the server sent.
+   * @param lastModified (Optional) The Last-Modified the server sent.
+   * @throws IOException If the listing couldn't be written.
+   */
+  public void put(URI uri, Set<String> names, String etag, String lastModified) throws IOException {
+    if (!dir.mkdirs() && !dir.isDirectory()) {
+      throw new IOException("Unable to create the listing cache directory [" + dir.getAbsolutePath() + "]");
+    }
+
+    File file = file(uri);
+    File temp = File.createTempFile(file.getName(), ".tmp", dir);
+    try {
+      DataOutputStream dos = new DataOutputStream(new FileOutputStream(temp));
+      try {
+        dos.writeInt(VERSION);
+        writeString(dos, etag);
+        writeString(dos, lastModified);
+        dos.writeInt(names.size());
+        for (String name : names) {
+          dos.writeUTF(name);
+        }
+      } finally {
+        dos.close();
+      }
+
+      if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+        throw new IOException("Unable to store the listing [" + file.getAbsolutePath() + "]");
+      }
+    } finally {
+      temp.delete();
+    }
+  }
+
+  /**
+   * Marks the stored listing for the given URI as revalidated, which restarts its TTL.
+   *
+   * @param uri The URI of the listing.
+   */
+  public void touch(URI uri) {
+    file(uri).setLastModified(System.currentTimeMillis());
+  }
+
+  private File file(URI uri) {
+    try {
+      byte[] md5 = MessageDigest.getInstance("MD5").digest(uri.toString().getBytes("UTF-8"));
+      return new File(dir, StringTools.toHex(md5));
+    } catch (Exception e) {
+      throw new BuildException(e);
+    }
+  }
+
+  private void writeString(DataOutputStream dos, String str) throws IOException {
+    dos.writeBoolean(str != null);
+    if (str != null) {
+      dos.writeUTF(str);
+    }
+  }
+
+  private String readString(DataInputStream dis) throws IOException {
+    return dis.readBoolean() ? dis.readUTF() : null;
+  }
+
+  /**
+   * A stored listing.
+   */
+  public static class Listing {
+    public final Set<String> names;
+    public final String etag;
+    public final String lastModified;
+    public final long time;
+
+    public Listing(Set<String> names, String etag, String lastModified, long time) {
+      this.names = Collections.unmodifiableSet(names);
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.time = time;
+    }
+  }
+}
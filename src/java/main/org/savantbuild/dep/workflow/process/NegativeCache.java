@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.workflow.process;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.savantbuild.domain.Artifact;
+import org.savantbuild.util.StringTools;
+
+/**
+ * <p>
+ * This class holds the negative records of a cache directory. A negative
+ * record means that an item of an artifact doesn't exist anywhere, so Savant
+ * doesn't try to fetch it again.
+ * </p>
+ *
+ * <p>
+ * The records of a project are stored together in the <strong>.negatives</strong>
+ * file of the project directory. Each line of the file is the time the record
+ * expires in milliseconds (0 means never) followed by the version and the
+ * name of the item. The file of a project is read the first time the project
+ * is checked and then the records are kept in memory, so checking an item
+ * doesn't touch the file system.
+ * </p>
+ *
+ * <p>
+ * New records are added in bulk, which rewrites the file of each project
+ * once. The file is merged with the records other builds might have written
+ * and expired records are dropped. It is written to a temporary file and
+ * renamed so that other builds never read a partial file. The merge is done
+ * while holding the {@link CacheLocks} of the project, so records written by
+ * builds at the same time aren't lost. Negative records
+ * are only an optimization, so any errors reading or writing them are
+ * ignored.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class NegativeCache {
+  private final String dir;
+  private final long ttl;
+  private final CacheLocks locks;
+  private final Map<String, Map<String, Long>> projects = new HashMap<String, Map<String, Long>>();
+
+  /**
+   * @param dir The cache directory.
+   * @param ttl The number of seconds new records last. If this is 0 or less, new records never expire.
+   */
+  public NegativeCache(String dir, int ttl) {
+    this.dir = dir;
+    this.ttl = ttl * 1000L;
+    this.locks = CacheLocks.forDirectory(new File(dir));
+  }
+
+  /**
+   * Determines if there is a negative record for the given item that hasn't expired.
+   *
+   * @param artifact The artifact.
+   * @param item     The item.
+   * @return True if there is a record.
+   */
+  public synchronized boolean contains(Artifact artifact, String item) {
+    Map<String, Long> records = projects.get(projectPath(artifact));
+    if (records == null) {
+      records = read(file(artifact));
+      projects.put(projectPath(artifact), records);
+    }
+
+    Long expires = records.get(recordPath(artifact, item));
+    return expires != null && !expired(expires, System.currentTimeMillis());
+  }
+
+  /**
+   * Adds negative records for all the given items. This rewrites the file of each project once.
+   *
+   * @param negatives The items keyed by artifact.
+   */
+  public synchronized void add(Map<Artifact, Set<String>> negatives) {
+    long expires = ttl > 0 ? System.currentTimeMillis() + ttl : 0;
+    Map<String, Map<String, Long>> additions = new HashMap<String, Map<String, Long>>();
+    Map<String, File> files = new HashMap<String, File>();
+    for (Artifact artifact : negatives.keySet()) {
+      String projectPath = projectPath(artifact);
+      Map<String, Long> records = additions.get(projectPath);
+      if (records == null) {
+        records = new HashMap<String, Long>();
+        additions.put(projectPath, records);
+        files.put(projectPath, file(artifact));
+      }
+
+      for (String item : negatives.get(artifact)) {
+        records.put(recordPath(artifact, item), expires);
+      }
+    }
+
+    for (String projectPath : additions.keySet()) {
+      File file = files.get(projectPath);
+      locks.lock(projectPath);
+      try {
+        Map<String, Long> records = read(file);
+        records.putAll(additions.get(projectPath));
+        write(file, records);
+        projects.put(projectPath, records);
+      } finally {
+        locks.unlock(projectPath);
+      }
+    }
+  }
+
+  /**
+   * Removes the negative record for the given item.
+   *
+   * @param artifact The artifact.
+   * @param item     The item.
+   * @return True if there was a record.
+   */
+  public synchronized boolean remove(Artifact artifact, String item) {
+    File file = file(artifact);
+    String projectPath = projectPath(artifact);
+    locks.lock(projectPath);
+    try {
+      Map<String, Long> records = read(file);
+      boolean removed = records.remove(recordPath(artifact, item)) != null;
+      if (removed) {
+        write(file, records);
+      }
+
+      projects.put(projectPath, records);
+      return removed;
+    } finally {
+      locks.unlock(projectPath);
+    }
+  }
+
+  private Map<String, Long> read(File file) {
+    Map<String, Long> records = new HashMap<String, Long>();
+    if (!file.isFile()) {
+      return records;
+    }
+
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      try {
+        long now = System.currentTimeMillis();
+        String line;
+        while ((line = reader.readLine()) != null) {
+          int index = line.indexOf(' ');
+          if (index <= 0) {
+            continue;
+          }
+
+          try {
+            long expires = Long.parseLong(line.substring(0, index));
+            if (!expired(expires, now)) {
+              records.put(line.substring(index + 1), expires);
+            }
+          } catch (NumberFormatException e) {
+            // Skip the bad line
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      // Negatives are only for performance, so a file that can't be read is the same as no file
+    }
+
+    return records;
+  }
+
+  private void write(File file, Map<String, Long> records) {
+    try {
+      File parent = file.getParentFile();
+      if (!parent.mkdirs() && !parent.isDirectory()) {
+        return;
+      }
+
+      File temp = File.createTempFile(".negatives", ".tmp", parent);
+      try {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+        try {
+          for (Map.Entry<String, Long> entry : records.entrySet()) {
+            writer.write(entry.getValue() + " " + entry.getKey() + "\n");
+          }
+        } finally {
+          writer.close();
+        }
+
+        if (!temp.renameTo(file)) {
+          file.delete();
+          temp.renameTo(file);
+        }
+      } finally {
+        temp.delete();
+      }
+    } catch (IOException e) {
+      // This is okay, because negatives are only for performance and if we can't write them, we'll just
+      // head out and try and fetch the items again next time.
+    }
+  }
+
+  private boolean expired(long expires, long now) {
+    return expires > 0 && expires <= now;
+  }
+
+  private File file(Artifact artifact) {
+    return new File(StringTools.join("/", dir, projectPath(artifact), ".negatives"));
+  }
+
+  private String projectPath(Artifact artifact) {
+    return artifact.getGroup().replace('.', '/') + "/" + artifact.getProject();
+  }
+
+  private String recordPath(Artifact artifact, String item) {
+    return artifact.getVersion() + "/" + item;
+  }
+}
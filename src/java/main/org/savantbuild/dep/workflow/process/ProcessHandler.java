@@ -16,6 +16,8 @@
 package org.savantbuild.dep.workflow.process;
 
 import java.io.File;
+import java.util.Map;
+import java.util.Set;
 
 import org.savantbuild.BuildException;
 import org.savantbuild.dep.NegativeCacheException;
@@ -117,6 +119,36 @@ public interface ProcessHandler {
    */
   File publish(Artifact artifact, String item, File file) throws BuildException;
 
+  /**
+   * Creates a staging file next to the location the item is published to, so that an item being downloaded can be
+   * written there directly. Passing the staging file to {@link #publish(Artifact, String, File)} then renames it into
+   * place instead of copying it. Processes that can't do this return null.
+   *
+   * @param artifact The artifact that the item is associated with.
+   * @param item     The name of the item.
+   * @return The staging file or null.
+   * @throws BuildException If the staging file couldn't be created.
+   */
+  File stagingFile(Artifact artifact, String item) throws BuildException;
+
+  /**
+   * Deletes a staging file that was created by {@link #stagingFile(Artifact, String)} if it wasn't published. This
+   * must be called once the item is published or has failed, whichever happened.
+   *
+   * @param file The staging file.
+   */
+  void discardStagingFile(File file);
+
+  /**
+   * Publishes negative records for the given items. A negative record signals Savant not to attempt to fetch the item
+   * again, since it doesn't exist. This is called once at the end of a resolution with all of the items that were
+   * missing, so that processes can store the records in bulk. Negative records are only for performance, so this
+   * should not fail if the records can't be stored.
+   *
+   * @param negatives The names of the missing items keyed by artifact.
+   */
+  void publishNegatives(Map<Artifact, Set<String>> negatives);
+
   /**
    * <p/>
    * Attempts to delete the item. If the item was deleted successfully, then this method should return true.
@@ -21,31 +21,49 @@ import java.util.Map;
 import org.savantbuild.BuildException;
 import org.savantbuild.domain.Process;
 import org.savantbuild.run.output.Output;
+import org.savantbuild.util.StringTools;
 
 /**
  * <p>
  * This class is a simple factory that creates the process handlers.
  * </p>
  *
+ * <p>
+ * The url, svn and scp processes are given the timeouts in the
+ * <strong>connectTimeout</strong> and <strong>readTimeout</strong>
+ * attributes of the process, which are numbers of seconds. They default to
+ * 30 and 60 seconds and 0 turns the timeout off.
+ * </p>
+ *
  * @author Brian Pontarelli
  */
 public class ProcessHandlerFactory {
+  public static final int CONNECT_TIMEOUT = 30;
+  public static final int READ_TIMEOUT = 60;
+
   public static ProcessHandler buildProcess(Output output, Process process) {
-    String type = process.getAttributes().get("type");
-    if (type.equals("url")) {
-      return new URLProcessHandler(output, process.getAttributes());
-    } else if (type.equals("svn")) {
-      return new SVNProcessHandler(output, process.getAttributes());
-    } else if (type.equals("scp")) {
-      return new SCPProcessHandler(output, process.getAttributes());
-    } else if (type.equals("cache")) {
-      return new CacheProcess(output, process.getAttributes());
+    Map<String, String> attributes = process.getAttributes();
+    String type = attributes.get("type");
+    if (type.equals("url") || type.equals("svn") || type.equals("scp")) {
+      int connectTimeout = timeout(attributes, "connectTimeout", CONNECT_TIMEOUT);
+      int readTimeout = timeout(attributes, "readTimeout", READ_TIMEOUT);
+      if (type.equals("url")) {
+        return new URLProcessHandler(output, attributes, connectTimeout, readTimeout);
+      } else if (type.equals("svn")) {
+        return new SVNProcessHandler(output, attributes, connectTimeout, readTimeout);
+      }
+
+      return new SCPProcessHandler(output, attributes, connectTimeout, readTimeout);
+    }
+
+    if (type.equals("cache")) {
+      return new CacheProcess(output, attributes);
     }
 
     try {
       Class<?> klass = Class.forName(type);
       Constructor<?> constructor = klass.getConstructor(Map.class);
-      return (ProcessHandler) constructor.newInstance(output, process.getAttributes());
+      return (ProcessHandler) constructor.newInstance(output, attributes);
     } catch (ClassNotFoundException e) {
       throw new BuildException("Invalid workflow process type [" + type + "]. Savant provides the types url, " +
         "svn, scp, or cache out-of-the-box. You can also specify a fully-qualified class name that implements" +
@@ -57,4 +75,29 @@ public class ProcessHandlerFactory {
       throw new BuildException("Error while invoking the constructor for the workflow process type [" + type + "].", e);
     }
   }
+
+  /**
+   * Reads a timeout attribute of a process.
+   *
+   * @param attributes     The attributes of the process.
+   * @param name           The name of the attribute.
+   * @param defaultTimeout The number of seconds to use if the attribute isn't set.
+   * @return The timeout in milliseconds or 0 for no timeout.
+   * @throws BuildException If the attribute isn't a number of seconds.
+   */
+  public static int timeout(Map<String, String> attributes, String name, int defaultTimeout) throws BuildException {
+    int timeout;
+    try {
+      timeout = StringTools.toInt(attributes.get(name), defaultTimeout);
+    } catch (NumberFormatException e) {
+      timeout = -1;
+    }
+
+    if (timeout < 0) {
+      throw new BuildException("Invalid [" + name + "] attribute [" + attributes.get(name) + "] for the [" +
+        attributes.get("type") + "] workflow process. It must be a number of seconds or 0 for no timeout.");
+    }
+
+    return timeout * 1000;
+  }
 }
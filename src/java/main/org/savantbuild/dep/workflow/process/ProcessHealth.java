@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.workflow.process;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.savantbuild.BuildException;
+import org.savantbuild.util.StringTools;
+
+/**
+ * <p>
+ * This class tracks the health of a remote process, such as a repository
+ * URL, for the circuit breaker. Each temporary failure is counted and any
+ * success resets the count. Once the process has failed the maximum number
+ * of times in a row the circuit is open and the process is skipped.
+ * </p>
+ *
+ * <p>
+ * If there is no retry time, the circuit stays open for the rest of the
+ * build. Otherwise, once the retry time has passed the circuit is half-open
+ * and a single call is let through as a probe. If the probe works the
+ * circuit is closed, and if it fails the circuit is opened again. When there
+ * is a retry time, an open circuit is also recorded as a file in the health
+ * directory whose name is the MD5 of the process and whose modification time
+ * is the time the circuit was opened. That way later builds skip the process
+ * until the retry time has passed instead of failing on it again.
+ * </p>
+ *
+ * <p>
+ * There is a single instance of this class per process for the life of the
+ * build, so that all the workflows that use the process share it. It is
+ * thread safe.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class ProcessHealth {
+  private static final Map<String, ProcessHealth> instances = new HashMap<String, ProcessHealth>();
+
+  private final String key;
+  private final File record;
+  private int failures;
+  private long opened;
+  private boolean probing;
+
+  ProcessHealth(String key, File record) {
+    this.key = key;
+    this.record = record;
+    if (record != null && record.isFile()) {
+      this.opened = record.lastModified();
+    }
+  }
+
+  /**
+   * Returns the health of the given process.
+   *
+   * @param key       The key of the process, which is usually its location.
+   * @param healthDir (Optional) The directory the open circuits are recorded in.
+   * @return The health and never null.
+   */
+  public static synchronized ProcessHealth forProcess(String key, File healthDir) {
+    ProcessHealth instance = instances.get(key);
+    if (instance == null) {
+      instance = new ProcessHealth(key, healthDir != null ? record(key, healthDir) : null);
+      instances.put(key, instance);
+    }
+
+    return instance;
+  }
+
+  /**
+   * Determines if the process can be called. If the circuit is half-open, this lets the first caller through as the
+   * probe and the caller must then call {@link #success()} or {@link #failure(int, long)}.
+   *
+   * @param retryAfter The number of milliseconds before an open circuit is probed or 0 to never probe.
+   * @param now        The current time.
+   * @return True if the process can be called, false if it should be skipped.
+   */
+  public synchronized boolean allow(long retryAfter, long now) {
+    if (opened == 0) {
+      return true;
+    }
+
+    if (retryAfter <= 0 || probing || now - opened < retryAfter) {
+      return false;
+    }
+
+    probing = true;
+    return true;
+  }
+
+  /**
+   * Closes the circuit.
+   */
+  public synchronized void success() {
+    failures = 0;
+    probing = false;
+    if (opened != 0) {
+      opened = 0;
+      if (record != null) {
+        record.delete();
+      }
+    }
+  }
+
+  /**
+   * Ends a probe that failed for a reason other than the health of the process, such as a bad MD5, so that the next
+   * call probes again.
+   */
+  public synchronized void release() {
+    probing = false;
+  }
+
+  /**
+   * Counts a temporary failure and opens the circuit if the process has failed too many times in a row or the failure
+   * was the probe.
+   *
+   * @param maxFailures The number of failures in a row that open the circuit.
+   * @param now         The current time, which is the time the circuit is opened.
+   * @return True if the circuit was opened.
+   */
+  public synchronized boolean failure(int maxFailures, long now) {
+    failures++;
+    if (!probing && (opened != 0 || failures < maxFailures)) {
+      return false;
+    }
+
+    probing = false;
+    opened = now;
+    if (record != null) {
+      File dir = record.getParentFile();
+      try {
+        if (dir.mkdirs() || dir.isDirectory()) {
+          record.createNewFile();
+          record.setLastModified(opened);
+        }
+      } catch (Exception e) {
+        // The record is only an optimization for later builds
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * @return True if the circuit is open or half-open.
+   */
+  public synchronized boolean isOpen() {
+    return opened != 0;
+  }
+
+  @Override
+  public String toString() {
+    return key;
+  }
+
+  private static File record(String key, File healthDir) {
+    try {
+      byte[] md5 = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+      return new File(healthDir, StringTools.toHex(md5));
+    } catch (Exception e) {
+      throw new BuildException(e);
+    }
+  }
+}
@@ -43,7 +43,19 @@ public class SCPProcessHandler extends AbstractProcessHandler {
   private final String location;
 
   public SCPProcessHandler(Output output, Map<String, String> attributes) {
+    this(output, attributes, ProcessHandlerFactory.CONNECT_TIMEOUT * 1000, ProcessHandlerFactory.READ_TIMEOUT * 1000);
+  }
+
+  /**
+   * @param output         The output.
+   * @param attributes     The attributes of the process.
+   * @param connectTimeout The number of milliseconds to wait for the SSH connection or 0 to wait forever.
+   * @param readTimeout    The number of milliseconds to wait for data or 0 to wait forever.
+   */
+  public SCPProcessHandler(Output output, Map<String, String> attributes, int connectTimeout, int readTimeout) {
     this.output = output;
+    options.connectTimeout = connectTimeout;
+    options.readTimeout = readTimeout;
     options.server = attributes.get("server");
     options.port = StringTools.toInt(attributes.get("port"), 25);
     options.cipher = attributes.get("cipher");
@@ -132,4 +144,9 @@ public class SCPProcessHandler extends AbstractProcessHandler {
       }
     });
   }
+
+  @Override
+  public String toString() {
+    return location;
+  }
 }
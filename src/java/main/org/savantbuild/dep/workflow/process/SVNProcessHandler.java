@@ -50,9 +50,23 @@ public class SVNProcessHandler extends AbstractProcessHandler {
   private final String repository;
   private final String username;
   private final String password;
+  private final int connectTimeout;
+  private final int readTimeout;
 
   public SVNProcessHandler(Output output, Map<String, String> attributes) {
+    this(output, attributes, ProcessHandlerFactory.CONNECT_TIMEOUT * 1000, ProcessHandlerFactory.READ_TIMEOUT * 1000);
+  }
+
+  /**
+   * @param output         The output.
+   * @param attributes     The attributes of the process.
+   * @param connectTimeout The number of milliseconds to wait for a connection or 0 to wait forever.
+   * @param readTimeout    The number of milliseconds to wait for data or 0 to wait forever.
+   */
+  public SVNProcessHandler(Output output, Map<String, String> attributes, int connectTimeout, int readTimeout) {
     this.output = output;
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
     this.repository = attributes.get("repository");
     this.username = attributes.get("username");
     this.password = attributes.get("password");
@@ -125,7 +139,7 @@ public class SVNProcessHandler extends AbstractProcessHandler {
    */
   @Override
   public File publish(Artifact artifact, String item, File file) throws BuildException {
-    SubVersion svn = new SubVersion(repository, username, password);
+    SubVersion svn = new SubVersion(repository, username, password, connectTimeout, readTimeout);
     try {
       if (!svn.isExists()) {
         throw new BuildException("Repository URL [" + repository + "] doesn't exist on the SubVersion server");
@@ -164,7 +178,7 @@ public class SVNProcessHandler extends AbstractProcessHandler {
       public File call() throws Exception {
         File file = File.createTempFile("savant-svn-process", "export");
         file.deleteOnExit();
-        SubVersion svn = new SubVersion(repository, username, password);
+        SubVersion svn = new SubVersion(repository, username, password, connectTimeout, readTimeout);
         try {
           if (!svn.isExists()) {
             throw new BuildException("Repository [" + repository + "] doesn't exist on the SubVersion server");
@@ -190,4 +204,9 @@ public class SVNProcessHandler extends AbstractProcessHandler {
       }
     });
   }
+
+  @Override
+  public String toString() {
+    return repository;
+  }
 }
@@ -16,6 +16,7 @@
 package org.savantbuild.dep.workflow.process;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLDecoder;
@@ -27,6 +28,7 @@ import java.util.regex.Pattern;
 
 import org.savantbuild.BuildException;
 import org.savantbuild.dep.version.ArtifactVersionTools;
+import org.savantbuild.dep.version.VersionIndex;
 import org.savantbuild.dep.workflow.PublishWorkflowHandler;
 import org.savantbuild.domain.Artifact;
 import org.savantbuild.io.DoesNotExistException;
@@ -34,9 +36,13 @@ import org.savantbuild.io.IOTools;
 import org.savantbuild.io.MD5;
 import org.savantbuild.io.PermanentIOException;
 import org.savantbuild.io.TemporaryIOException;
+import org.savantbuild.net.Content;
 import org.savantbuild.net.NetTools;
+import org.savantbuild.net.Transport;
+import org.savantbuild.net.URLConnectionTransport;
 import org.savantbuild.run.output.Output;
 import org.savantbuild.util.ErrorList;
+import org.savantbuild.util.StringTools;
 
 import static java.util.Arrays.*;
 
@@ -61,6 +67,32 @@ import static java.util.Arrays.*;
  * properties file can be read for group/domain pairs. Or
  * a standard location can be setup in this class.
  * </p>
+ * <p/>
+ * <p>
+ * The index listings used to find the latest and integration versions are
+ * downloaded once per build. They are also stored in a {@link ListingCache}
+ * in the <strong>listingDir</strong> directory (defaults to
+ * <code>~/.savant/cache/.listings</code>) so that later builds can share
+ * them. A stored listing is used without contacting the server for the
+ * number of seconds in the <strong>listingTTL</strong> attribute (defaults
+ * to 0). After that it is revalidated with a conditional GET, so the listing
+ * is only downloaded again if it changed. The cache can be turned off by
+ * setting the <strong>listingCache</strong> attribute to false.
+ * </p>
+ *
+ * <p>
+ * If a download fails part way, the part that was downloaded is kept in the
+ * <strong>partialDir</strong> directory (defaults to
+ * <code>~/.savant/cache/.partials</code>) when the server accepts ranges, and
+ * the next build continues it using a Range request. This can be turned off
+ * by setting the <strong>resume</strong> attribute to false.
+ * </p>
+ *
+ * <p>
+ * When the process is built from a workflow, the downloads use the
+ * <strong>connectTimeout</strong> and <strong>readTimeout</strong>
+ * attributes. See {@link ProcessHandlerFactory}.
+ * </p>
  *
  * @author Brian Pontarelli
  */
@@ -71,13 +103,61 @@ public class URLProcessHandler extends AbstractProcessHandler {
   private final String url;
   private final String username;
   private final String password;
+  private final ListingCache listingCache;
+  private final File partialDir;
+  private final Transport transport;
 
+  /**
+   * Constructs a process that downloads using the {@link NetTools} transport.
+   *
+   * @param output     The output.
+   * @param attributes The attributes of the process.
+   */
   public URLProcessHandler(Output output, Map<String, String> attributes) {
+    this(output, attributes, null);
+  }
+
+  /**
+   * Constructs a process that downloads with the given timeouts.
+   *
+   * @param output         The output.
+   * @param attributes     The attributes of the process.
+   * @param connectTimeout The number of milliseconds to wait for a connection or 0 to wait forever.
+   * @param readTimeout    The number of milliseconds to wait for data or 0 to wait forever.
+   */
+  public URLProcessHandler(Output output, Map<String, String> attributes, int connectTimeout, int readTimeout) {
+    this(output, attributes, new URLConnectionTransport(connectTimeout, readTimeout));
+  }
+
+  private URLProcessHandler(Output output, Map<String, String> attributes, Transport transport) {
     this.output = output;
+    this.transport = transport;
     this.url = attributes.get("url");
     this.username = attributes.get("username");
     this.password = attributes.get("password");
 
+    if (StringTools.toBoolean(attributes.get("listingCache"), true)) {
+      String listingDir = attributes.get("listingDir");
+      if (listingDir == null) {
+        listingDir = System.getProperty("user.home") + "/.savant/cache/.listings";
+      }
+
+      this.listingCache = new ListingCache(new File(listingDir), StringTools.toInt(attributes.get("listingTTL"), 0));
+    } else {
+      this.listingCache = null;
+    }
+
+    if (StringTools.toBoolean(attributes.get("resume"), true)) {
+      String partialDir = attributes.get("partialDir");
+      if (partialDir == null) {
+        partialDir = System.getProperty("user.home") + "/.savant/cache/.partials";
+      }
+
+      this.partialDir = new File(partialDir);
+    } else {
+      this.partialDir = null;
+    }
+
     ErrorList errors = new ErrorList();
     if (url == null) {
       errors.addError("The [url] attribute is required for the [url] workflow process");
@@ -107,24 +187,45 @@ public class URLProcessHandler extends AbstractProcessHandler {
   public File fetch(Artifact artifact, String item, PublishWorkflowHandler publishWorkflowHandler)
     throws TemporaryIOException, PermanentIOException, DoesNotExistException {
     URI md5URI = NetTools.build(url, artifact.getGroup().replace('.', '/'), artifact.getProject(), artifact.getVersion(), item + ".md5");
-    File md5File = NetTools.downloadToFile(md5URI, username, password, null);
+    File md5File = NetTools.downloadToFile(transport(), md5URI, username, password, null);
     MD5 md5 = IOTools.parseMD5(md5File);
 
     URI itemURI = NetTools.build(url, artifact.getGroup().replace('.', '/'), artifact.getProject(), artifact.getVersion(), item);
-    File itemFile = NetTools.downloadToFile(itemURI, username, password, md5);
-    if (itemFile == null) {
-      throw new DoesNotExistException("Artifact item doesn't exist [" + itemURI + "]");
+    File stagingFile = publishWorkflowHandler.stagingFile(artifact, item);
+    boolean staged = stagingFile != null;
+    if (stagingFile == null && partialDir == null) {
+      File itemFile = NetTools.downloadToFile(transport(), itemURI, username, password, md5);
+      output.info("Downloaded from " + itemURI);
+      publishWorkflowHandler.publish(artifact, item + ".md5", md5File);
+      return publishWorkflowHandler.publish(artifact, item, itemFile);
+    } else if (stagingFile == null) {
+      stagingFile = createTempFile();
     }
 
-    output.info("Downloaded from " + itemURI);
+    // The staging file is in the cache if the first publish process supports it, so publishing it is a rename
+    try {
+      if (partialDir != null) {
+        NetTools.downloadToFile(transport(), itemURI, username, password, md5, stagingFile, partialDir);
+      } else {
+        NetTools.downloadToFile(transport(), itemURI, username, password, md5, stagingFile);
+      }
 
-    publishWorkflowHandler.publish(artifact, item + ".md5", md5File);
-    return publishWorkflowHandler.publish(artifact, item, itemFile);
+      output.info("Downloaded from " + itemURI);
+      publishWorkflowHandler.publish(artifact, item + ".md5", md5File);
+      return publishWorkflowHandler.publish(artifact, item, stagingFile);
+    } finally {
+      if (staged) {
+        publishWorkflowHandler.discardStagingFile(stagingFile);
+      } else {
+        stagingFile.delete();
+      }
+    }
   }
 
   /**
    * This makes a large assumption! This assumes that the artifacts are fetched from an Apache or other HTTP server
-   * that provides index listings.
+   * that provides index listings. The listings are kept in the {@link VersionIndex} of the project, so each listing is
+   * only downloaded once per build.
    *
    * @param artifact The artifact.
    * @return The version, if it exists.
@@ -134,25 +235,36 @@ public class URLProcessHandler extends AbstractProcessHandler {
     // Handle the latest version case
     String version = artifact.getVersion();
     if (version.equals(ArtifactVersionTools.LATEST)) {
-      // Get all the versions
-      URI uri = NetTools.build(url, artifact.getGroup().replace('.', '/'), artifact.getProject());
-      Set<String> names = parseNames(uri);
-      if (names == null || names.isEmpty()) {
-        return null;
+      VersionIndex versionIndex = VersionIndex.forProject(url, artifact.getGroup(), artifact.getProject());
+      if (!versionIndex.hasVersions()) {
+        // Get all the versions
+        URI uri = NetTools.build(url, artifact.getGroup().replace('.', '/'), artifact.getProject());
+        Set<String> names = listNames(uri);
+        if (names == null) {
+          return null;
+        }
+
+        versionIndex.setVersions(names);
       }
 
-      version = ArtifactVersionTools.latest(artifact, names);
+      version = versionIndex.latest(artifact);
 
       // Handle the integration version case
     } else if (version.endsWith(ArtifactVersionTools.INTEGRATION)) {
-      // Get all the integration files
-      URI uri = NetTools.build(url, artifact.getGroup().replace('.', '/'), artifact.getProject(), artifact.getVersion());
-      Set<String> names = parseNames(uri);
-      if (names == null || names.isEmpty()) {
-        return null;
+      VersionIndex versionIndex = VersionIndex.forProject(url, artifact.getGroup(), artifact.getProject());
+      String baseVersion = ArtifactVersionTools.baseVersion(artifact);
+      if (!versionIndex.hasIntegrations(baseVersion)) {
+        // Get all the integration files
+        URI uri = NetTools.build(url, artifact.getGroup().replace('.', '/'), artifact.getProject(), artifact.getVersion());
+        Set<String> names = listNames(uri);
+        if (names == null) {
+          return null;
+        }
+
+        versionIndex.setIntegrations(baseVersion, names);
       }
 
-      version = ArtifactVersionTools.bestIntegration(artifact, names);
+      version = versionIndex.bestIntegration(artifact);
     }
 
     return version;
@@ -182,31 +294,86 @@ public class URLProcessHandler extends AbstractProcessHandler {
     throw new BuildException("The [url] process doesn't allow publishing yet.");
   }
 
-  private Set<String> parseNames(URI uri) {
+  @Override
+  public String toString() {
+    return url;
+  }
+
+  private Transport transport() {
+    return transport != null ? transport : NetTools.getTransport();
+  }
+
+  private File createTempFile() throws PermanentIOException {
+    try {
+      File file = File.createTempFile("savant-net-tools", "download");
+      file.deleteOnExit();
+      return file;
+    } catch (IOException e) {
+      throw new PermanentIOException(e);
+    }
+  }
+
+  /**
+   * Returns the names in the listing at the given URI. The listing cache is used if it is on. If the server can't be
+   * reached, a stored listing is used even if it is older than the TTL.
+   *
+   * @param uri The URI of the listing.
+   * @return The names or null if the listing couldn't be downloaded.
+   */
+  private Set<String> listNames(URI uri) {
+    ListingCache.Listing listing = listingCache != null ? listingCache.get(uri) : null;
+    if (listing != null && listingCache.isFresh(listing)) {
+      return listing.names;
+    }
+
     try {
-      String result = NetTools.downloadToString(uri, username, password);
-      Set<String> names = new HashSet<String>();
-      if (result.contains("<html")) {
-        Matcher matcher = HTML.matcher(result);
-        while (matcher.find()) {
-          try {
-            names.add(URLDecoder.decode(matcher.group(1), "UTF-8"));
-          } catch (UnsupportedEncodingException e) {
-            throw new BuildException("Unable to decode version URLs inside the HTML returned from the remote " +
-              "Savant repository [" + uri.toString() + "]", e);
-          }
+      Content content = NetTools.downloadToString(transport(), uri, username, password,
+        listing != null ? listing.etag : null, listing != null ? listing.lastModified : null);
+      if (!content.isModified() && listing != null) {
+        output.debug("Listing [%s] not modified", uri);
+        listingCache.touch(uri);
+        return listing.names;
+      }
+
+      Set<String> names = parseNames(uri, content.body);
+      if (listingCache != null) {
+        try {
+          listingCache.put(uri, names, content.etag, content.lastModified);
+        } catch (IOException e) {
+          output.debug("Unable to store the listing for [%s]", uri);
         }
-      } else {
-        names.addAll(asList(result.split("\n")));
       }
 
       return names;
     } catch (DoesNotExistException e) {
       return null;
     } catch (TemporaryIOException e) {
-      return null;
+      return listing != null ? listing.names : null;
     } catch (PermanentIOException e) {
       throw new BuildException(e);
     }
   }
+
+  private Set<String> parseNames(URI uri, String result) {
+    Set<String> names = new HashSet<String>();
+    if (result == null) {
+      return names;
+    }
+
+    if (result.contains("<html")) {
+      Matcher matcher = HTML.matcher(result);
+      while (matcher.find()) {
+        try {
+          names.add(URLDecoder.decode(matcher.group(1), "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+          throw new BuildException("Unable to decode version URLs inside the HTML returned from the remote " +
+            "Savant repository [" + uri.toString() + "]", e);
+        }
+      }
+    } else {
+      names.addAll(asList(result.split("\n")));
+    }
+
+    return names;
+  }
 }
@@ -28,8 +28,10 @@ import javax.xml.parsers.SAXParserFactory;
 import org.savantbuild.BuildException;
 import org.savantbuild.domain.Artifact;
 import org.savantbuild.domain.ArtifactGroup;
+import org.savantbuild.domain.ArtifactID;
 import org.savantbuild.domain.ArtifactMetaData;
 import org.savantbuild.domain.Dependencies;
+import org.savantbuild.util.StringTools;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
@@ -136,8 +138,9 @@ public class ArtifactTools {
       } else if (qName.equals("artifact")) {
         Artifact artifact;
         try {
-          artifact = new Artifact(attributes.getValue("group"), attributes.getValue("project"),
-            attributes.getValue("name"), attributes.getValue("version"), attributes.getValue("type"));
+          ArtifactID id = ArtifactID.intern(attributes.getValue("group"), attributes.getValue("project"),
+            attributes.getValue("name"), attributes.getValue("type"));
+          artifact = new Artifact(id, StringTools.intern(attributes.getValue("version")), null);
         } catch (IllegalArgumentException e) {
           throw new BuildException(e);
         }
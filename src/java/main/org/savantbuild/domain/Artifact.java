@@ -67,7 +67,7 @@ public class Artifact {
   }
 
   public void setGroup(String group) {
-    id.setGroup(group);
+    changeableId().setGroup(group);
   }
 
   public String getProject() {
@@ -75,7 +75,7 @@ public class Artifact {
   }
 
   public void setProject(String project) {
-    id.setProject(project);
+    changeableId().setProject(project);
   }
 
   public String getName() {
@@ -83,7 +83,7 @@ public class Artifact {
   }
 
   public void setName(String name) {
-    id.setName(name);
+    changeableId().setName(name);
   }
 
   public String getVersion() {
@@ -99,7 +99,7 @@ public class Artifact {
   }
 
   public void setType(String type) {
-    id.setType(type);
+    changeableId().setType(type);
   }
 
   public String getCompatibility() {
@@ -221,6 +221,24 @@ public class Artifact {
     return id.getGroup() + ":" + id.getProject() + ":" + prefix() + "." + id.getType();
   }
 
+  /**
+   * Canonical ids are shared by many artifacts, so they are copied before they are changed.
+   *
+   * @return An id that can be changed.
+   */
+  private ArtifactID changeableId() {
+    if (id.isInterned()) {
+      ArtifactID copy = new ArtifactID();
+      copy.setGroup(id.getGroup());
+      copy.setProject(id.getProject());
+      copy.setName(id.getName());
+      copy.setType(id.getType());
+      id = copy;
+    }
+
+    return id;
+  }
+
   private String prefix() {
     if (isIntegrationBuild() && integrationVersion != null) {
       return id.getName() + "-" + integrationVersion;
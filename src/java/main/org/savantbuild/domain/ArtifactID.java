@@ -15,6 +15,9 @@
  */
 package org.savantbuild.domain;
 
+import org.savantbuild.util.Interner;
+import org.savantbuild.util.StringTools;
+
 /**
  * <p>
  * This class is contains the properties that define an artifacts
@@ -23,13 +26,24 @@ package org.savantbuild.domain;
  * artifact usually determine the artifacts variant (such as version).
  * </p>
  *
+ * <p>
+ * Large dependency graphs contain the same ids many times, so the graph and
+ * the AMD parsers use the {@link #intern(String, String, String, String)}
+ * method to share a single canonical instance for each id. Canonical ids
+ * can't be changed.
+ * </p>
+ *
  * @author Brian Pontarelli and James Humphrey
  */
 public class ArtifactID {
+  private static final Interner<ArtifactID> ids = new Interner<ArtifactID>();
+
   private String group;
   private String project;
   private String name;
   private String type;
+  private int hash;
+  private boolean interned;
 
   public ArtifactID() {
   }
@@ -54,12 +68,63 @@ public class ArtifactID {
     }
   }
 
+  /**
+   * Returns the canonical id for the given values. This has the same defaults as the constructor.
+   *
+   * @param group   the artifact group
+   * @param project the artifact project
+   * @param name    the artifact name
+   * @param type    the artifact type
+   * @return The canonical id.
+   * @throws IllegalArgumentException thrown if both name and project are empty string or null
+   */
+  public static ArtifactID intern(String group, String project, String name, String type)
+    throws IllegalArgumentException {
+    return new ArtifactID(group, project, name, type).intern();
+  }
+
+  /**
+   * Returns the canonical id that is equal to this id. The first time an id is interned, a copy is made that uses
+   * canonical Strings and that copy becomes the canonical id.
+   *
+   * @return The canonical id.
+   */
+  public ArtifactID intern() {
+    if (interned) {
+      return this;
+    }
+
+    synchronized (ids) {
+      ArtifactID canonical = ids.get(this);
+      if (canonical == null) {
+        canonical = new ArtifactID();
+        canonical.group = StringTools.intern(group);
+        canonical.project = StringTools.intern(project);
+        canonical.name = StringTools.intern(name);
+        canonical.type = StringTools.intern(type);
+        canonical.interned = true;
+        ids.intern(canonical);
+      }
+
+      return canonical;
+    }
+  }
+
+  /**
+   * @return True if this is a canonical id, which can't be changed.
+   */
+  public boolean isInterned() {
+    return interned;
+  }
+
   public String getGroup() {
     return group;
   }
 
   public void setGroup(String group) {
+    checkInterned();
     this.group = group;
+    this.hash = 0;
   }
 
   public String getProject() {
@@ -67,7 +132,9 @@ public class ArtifactID {
   }
 
   public void setProject(String project) {
+    checkInterned();
     this.project = project;
+    this.hash = 0;
   }
 
   public String getName() {
@@ -75,7 +142,9 @@ public class ArtifactID {
   }
 
   public void setName(String name) {
+    checkInterned();
     this.name = name;
+    this.hash = 0;
   }
 
   public String getType() {
@@ -83,7 +152,9 @@ public class ArtifactID {
   }
 
   public void setType(String type) {
+    checkInterned();
     this.type = type;
+    this.hash = 0;
   }
 
   public boolean equals(Object o) {
@@ -95,14 +166,24 @@ public class ArtifactID {
   }
 
   public int hashCode() {
-    int result;
-    result = group.hashCode();
-    result = 31 * result + project.hashCode();
-    result = 31 * result + name.hashCode();
-    result = 31 * result + type.hashCode();
+    int result = hash;
+    if (result == 0) {
+      result = group.hashCode();
+      result = 31 * result + project.hashCode();
+      result = 31 * result + name.hashCode();
+      result = 31 * result + type.hashCode();
+      hash = result;
+    }
+
     return result;
   }
 
+  private void checkInterned() {
+    if (interned) {
+      throw new IllegalStateException("The artifact id [" + this + "] is shared and can't be changed");
+    }
+  }
+
   public String toString() {
     return group + ":" + project + ":" + name + ":" + type;
   }
@@ -31,6 +31,8 @@ public class Context {
   private File buildFile = new File("build.savant");
   private File workflowFile = new File(System.getProperty("user.home") + "/.savant/workflows.savant");
   private File pluginCacheDirectory = new File(System.getProperty("user.home") + "/.savant/plugins");
+  private File lockDirectory;
+  private boolean refreshDependencies;
 
   public Project getProject() {
     return project;
@@ -79,4 +81,28 @@ public class Context {
   public void setPluginCacheDirectory(File pluginCacheDirectory) {
     this.pluginCacheDirectory = pluginCacheDirectory;
   }
+
+  /**
+   * @return The directory of the resolution lock files. This defaults to the .savant/locks directory next to the
+   *         build file, so it is the same no matter which directory the build is run from.
+   */
+  public File getLockDirectory() {
+    if (lockDirectory == null) {
+      return new File(buildFile.getAbsoluteFile().getParentFile(), ".savant/locks");
+    }
+
+    return lockDirectory;
+  }
+
+  public void setLockDirectory(File lockDirectory) {
+    this.lockDirectory = lockDirectory;
+  }
+
+  public boolean isRefreshDependencies() {
+    return refreshDependencies;
+  }
+
+  public void setRefreshDependencies(boolean refreshDependencies) {
+    this.refreshDependencies = refreshDependencies;
+  }
 }
@@ -17,7 +17,9 @@ package org.savantbuild.domain;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import org.savantbuild.util.Pair;
@@ -152,6 +154,13 @@ import org.savantbuild.util.Pair;
  * </p>
  * <p/>
  * <p>
+ * The additional information is broken into its prefixes, suffixes and ranks
+ * when the Version is constructed, so comparisons don't do any parsing and
+ * don't create any objects. Use {@link #parse(String)} to reuse the Versions
+ * for version Strings that are parsed many times.
+ * </p>
+ * <p/>
+ * <p>
  * NOTE: Negative values are not permitted using the integer constructor.
  * </p>
  *
@@ -183,6 +192,9 @@ public class Version implements Comparable<Version> {
    * rc = Release candidate
    * ib = Integration build
    * </pre>
+   * <p/>
+   * The ranks are looked up when a Version is constructed, so changes to this List only affect the Versions that are
+   * constructed afterwards.
    */
   public static final List<String> ADDITIONAL_RANKING = new ArrayList<String>(Arrays.asList("snapshot", "alpha", "beta", "m", "rc", "ib"));
 
@@ -191,11 +203,27 @@ public class Version implements Comparable<Version> {
    */
   public static final Pattern STRICT_FORMAT = Pattern.compile("[0-9]+(?:\\.[0-9]+)?(?:\\.[0-9]+)?(?:-(?:alpha|beta|milestone|rc|snapshot)[0-9]*)?(?:-ib[0-9]*)?");
 
+  private static final long NO_NUMBER = -1;
+  private static final int CACHE_SIZE = 10000;
+  private static final Map<String, Version> cache = new LinkedHashMap<String, Version>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Version> eldest) {
+      // Keep the cache from growing forever if something parses an endless stream of versions
+      return size() > CACHE_SIZE;
+    }
+  };
+
   private final int major;
   private final int minor;
   private final int patch;
   private final String additional;
 
+  // The additional information decoded for comparisons. These are null if there isn't any additional information
+  // or it couldn't be decoded
+  private final String[] words;
+  private final long[] numbers;
+  private final int[] ranks;
+
   /**
    * Constructs a version with the given major, minor and patch version numbers.
    *
@@ -212,6 +240,9 @@ public class Version implements Comparable<Version> {
     this.minor = minor;
     this.patch = patch;
     this.additional = null;
+    this.words = null;
+    this.numbers = null;
+    this.ranks = null;
   }
 
   /**
@@ -327,6 +358,60 @@ public class Version implements Comparable<Version> {
     this.minor = minor != null ? minor : 0;
     this.patch = patch != null ? patch : 0;
     this.additional = additional;
+
+    Pair<String[], long[]> decoded = null;
+    if (additional != null) {
+      try {
+        decoded = decodeAdditional(additional.toLowerCase().toCharArray());
+      } catch (NumberFormatException e) {
+        // Leave it null and compare lexically
+      }
+    }
+
+    if (decoded != null) {
+      this.words = decoded.first;
+      this.numbers = decoded.second;
+      this.ranks = new int[words.length];
+      for (int i = 0; i < words.length; i++) {
+        ranks[i] = ADDITIONAL_RANKING.indexOf(words[i]);
+      }
+    } else {
+      this.words = null;
+      this.numbers = null;
+      this.ranks = null;
+    }
+  }
+
+  /**
+   * Parses the given version String in relaxed mode. Versions are immutable, so this returns the same instance for
+   * the same String while it is one of the most recently used versions. Use this instead of the constructor when the
+   * same versions are parsed many times, such as when looking for the latest version of an artifact.
+   *
+   * @param version The version String to parse.
+   * @return The version.
+   * @throws IllegalArgumentException If the string starts or ends with a delimiter (. or -) or
+   *                                  contains two delimiters in a row.
+   */
+  public static Version parse(String version) {
+    synchronized (cache) {
+      Version result = cache.get(version);
+      if (result != null) {
+        return result;
+      }
+    }
+
+    // Parse outside the lock and keep the first instance if another thread parsed the same String meanwhile
+    Version result = new Version(version);
+    synchronized (cache) {
+      Version existing = cache.get(version);
+      if (existing != null) {
+        return existing;
+      }
+
+      cache.put(version, result);
+    }
+
+    return result;
   }
 
   /**
@@ -444,40 +529,38 @@ public class Version implements Comparable<Version> {
       return patch - other.patch;
     }
 
-    // Try to figure out the additional stuff by checking if there is a number at the end
+    // Try to figure out the additional stuff using the parts decoded by the constructor
     if (additional != null && other.additional != null) {
-      char[] ca = additional.toLowerCase().toCharArray();
-      char[] caOther = other.additional.toLowerCase().toCharArray();
-
-      List<Pair<String, Long>> values = decodeAdditional(ca);
-      List<Pair<String, Long>> valuesOther = decodeAdditional(caOther);
+      if (words == null || other.words == null) {
+        // One of the numbers was too big to decode, so compare the additional strings lexically
+        return additional.compareTo(other.additional);
+      }
 
-      for (int i = 0; i < values.size(); i++) {
+      for (int i = 0; i < words.length; i++) {
         // This happens with 1.0-RC4-B2 and 1.0-RC4 and the shorter one should win
-        if (i == valuesOther.size()) {
+        if (i == other.words.length) {
           return -1;
         }
 
-        Pair<String, Long> value = values.get(i);
-        Pair<String, Long> valueOther = valuesOther.get(i);
-        if (value.first.equals(valueOther.first)) {
-          if (value.second != null && valueOther.second != null) {
-            int result = value.second.compareTo(valueOther.second);
-            if (result == 0) {
+        if (words[i].equals(other.words[i])) {
+          long number = numbers[i];
+          long numberOther = other.numbers[i];
+          if (number != NO_NUMBER && numberOther != NO_NUMBER) {
+            if (number == numberOther) {
               continue;
             }
 
-            return result;
-          } else if (value.second == null && valueOther.second != null) {
+            return number < numberOther ? -1 : 1;
+          } else if (number == NO_NUMBER && numberOther != NO_NUMBER) {
             return 1;
-          } else if (value.second != null && valueOther.second == null) {
+          } else if (number != NO_NUMBER && numberOther == NO_NUMBER) {
             return -1;
           }
         } else {
           // Mis-matched versions, tough decision, but I think the ordering goes alpha, beta,
           // M, RC
-          int rank = ADDITIONAL_RANKING.indexOf(value.first);
-          int rankOther = ADDITIONAL_RANKING.indexOf(valueOther.first);
+          int rank = ranks[i];
+          int rankOther = other.ranks[i];
 
           if (rank == -1 || rankOther == -1) {
             // Now we really have no option but to compare the additional strings lexically
@@ -490,7 +573,7 @@ public class Version implements Comparable<Version> {
 
       // If we got here, then the match and either the other is longer, in which case this one
       // wins, or they are equal and 0 will be returned at the end
-      if (valuesOther.size() > values.size()) {
+      if (other.words.length > words.length) {
         return 1;
       }
     } else if (additional == null && other.additional != null) {
@@ -502,10 +585,19 @@ public class Version implements Comparable<Version> {
     return 0;
   }
 
-  private List<Pair<String, Long>> decodeAdditional(char[] ca) {
+  /**
+   * Breaks the additional information into parts. Each part is a word followed by an optional number and the
+   * number is {@link #NO_NUMBER} if there isn't one.
+   *
+   * @param ca The lowercase additional information.
+   * @return The words and the numbers.
+   * @throws NumberFormatException If one of the numbers is too big for a long.
+   */
+  private static Pair<String[], long[]> decodeAdditional(char[] ca) {
     StringBuilder str = new StringBuilder();
     StringBuilder num = new StringBuilder();
-    List<Pair<String, Long>> list = new ArrayList<Pair<String, Long>>();
+    List<String> words = new ArrayList<String>();
+    List<Long> numbers = new ArrayList<Long>();
     boolean insideDigits = false;
     for (char c : ca) {
       boolean digit = Character.isDigit(c);
@@ -515,15 +607,11 @@ public class Version implements Comparable<Version> {
       } else {
         // Clear it out since that last digits was embedded
         if (insideDigits) {
-          Long l = null;
-          if (num.length() > 0) {
-            l = Long.valueOf(num.toString());
-          }
-
-          list.add(new Pair<String, Long>(str.toString(), l));
+          words.add(str.toString());
+          numbers.add(num.length() > 0 ? Long.parseLong(num.toString()) : NO_NUMBER);
 
-          num = new StringBuilder();
-          str = new StringBuilder();
+          num.setLength(0);
+          str.setLength(0);
         }
 
         insideDigits = false;
@@ -535,15 +623,16 @@ public class Version implements Comparable<Version> {
     }
 
     if (num.length() > 0 || str.length() > 0) {
-      Long l = null;
-      if (num.length() > 0) {
-        l = Long.valueOf(num.toString());
-      }
+      words.add(str.toString());
+      numbers.add(num.length() > 0 ? Long.parseLong(num.toString()) : NO_NUMBER);
+    }
 
-      list.add(new Pair<String, Long>(str.toString(), l));
+    long[] array = new long[numbers.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = numbers.get(i);
     }
 
-    return list;
+    return new Pair<String[], long[]>(words.toArray(new String[words.size()]), array);
   }
 
   /**
@@ -16,18 +16,34 @@
 package org.savantbuild.domain;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * <p>
  * This class defines a workflow process that is used for dependency management.
  * </p>
  *
+ * <p>
+ * The attributes of the workflow are used to tune the dependency resolution
+ * that is performed using the workflow. The supported attributes are:
+ * </p>
+ *
+ * <ul>
+ * <li>fetchThreads - The number of threads used to download artifacts and their meta data (defaults to 1)</li>
+ * <li>hedgeDelay - If set, the fetch processes that aren't caches are raced and the first result wins. Each process is
+ * started this many milliseconds after the one before it, or all at once if this is 0 (defaults to not racing)</li>
+ * <li>resolveTimeout - The number of seconds a dependency resolution can take before it fails (defaults to no
+ * limit)</li>
+ * </ul>
+ *
  * @author Brian Pontarelli
  */
 public class Workflow {
   private final List<Process> fetchProcesses = new ArrayList<Process>();
   private final List<Process> publishProcesses = new ArrayList<Process>();
+  private final Map<String, String> attributes = new HashMap<String, String>();
 
   public List<Process> getFetchProcesses() {
     return fetchProcesses;
@@ -36,4 +52,8 @@ public class Workflow {
   public List<Process> getPublishProcesses() {
     return publishProcesses;
   }
+
+  public Map<String, String> getAttributes() {
+    return attributes;
+  }
 }
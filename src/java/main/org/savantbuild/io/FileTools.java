@@ -16,15 +16,23 @@
 package org.savantbuild.io;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 
@@ -38,8 +46,11 @@ import org.savantbuild.util.StringTools;
  * @author Brian Pontarelli
  */
 public class FileTools {
+  private static volatile boolean linksSupported = true;
+
   /**
-   * Copies to contents of one file to another file.
+   * Copies to contents of one file to another file. The copy is done by the operating system when it can, so the
+   * contents don't pass through the JVM.
    *
    * @param from The from file.
    * @param to   The to file or directory.
@@ -56,19 +67,110 @@ public class FileTools {
       throw new IOException("Unable overwrite file [" + to.getAbsolutePath() + "]");
     }
 
-    FileInputStream in = new FileInputStream(from);
-    FileOutputStream out = new FileOutputStream(to);
-    int len;
-    byte[] buf = new byte[8192];
-    do {
-      len = in.read(buf);
-      if (len > 0) {
-        out.write(buf, 0, len);
+    transfer(from, to, false);
+  }
+
+  /**
+   * Copies the contents of one file to another file atomically. The contents are copied to a temporary file in the
+   * same directory as the to file, which is then renamed to the to file. Other processes see either the old file or
+   * the complete new file, but never a partial file.
+   *
+   * @param from The from file.
+   * @param to   The to file. The directory of this file must exist.
+   * @param sync True to force the contents to the disk before the rename, so that the file is complete even if the
+   *             machine crashes.
+   * @throws IOException If the copy or the rename fails.
+   */
+  public static void copyAtomically(File from, File to, boolean sync) throws IOException {
+    File temp = File.createTempFile("." + to.getName(), ".tmp", to.getAbsoluteFile().getParentFile());
+    try {
+      transfer(from, temp, sync);
+      rename(temp, to);
+    } finally {
+      temp.delete();
+    }
+  }
+
+  /**
+   * Forces the contents of the file to the disk.
+   *
+   * @param file The file.
+   * @throws IOException If the file couldn't be forced to the disk.
+   */
+  public static void sync(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.getChannel().force(true);
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Renames the from file to the to file, replacing the to file if it exists. On most platforms the replace is atomic.
+   * On platforms that can't rename over an existing file, such as Windows, the to file is deleted first.
+   *
+   * @param from The from file.
+   * @param to   The to file.
+   * @throws IOException If the rename fails.
+   */
+  public static void rename(File from, File to) throws IOException {
+    if (!from.renameTo(to) && !(to.delete() && from.renameTo(to))) {
+      throw new IOException("Unable to rename [" + from.getAbsolutePath() + "] to [" + to.getAbsolutePath() + "]");
+    }
+  }
+
+  /**
+   * Creates a hard link to the target file. Java doesn't support links, so this runs the <strong>ln</strong> command
+   * once. Hard links can't cross file systems, so callers should copy the file if this fails. If the command doesn't
+   * exist, such as on Windows, this always returns false after the first failure.
+   *
+   * @param target The existing file.
+   * @param link   The link to create. This must not exist.
+   * @return True if the link was created, false otherwise.
+   */
+  public static boolean link(File target, File link) {
+    if (!linksSupported) {
+      return false;
+    }
+
+    try {
+      return exec("ln", target.getAbsolutePath(), link.getAbsolutePath()) != null;
+    } catch (IOException e) {
+      // The command doesn't exist
+      linksSupported = false;
+      return false;
+    }
+  }
+
+  /**
+   * Finds the files under the given directory that have more than one hard link, which are the files that share their
+   * contents with another file. Java doesn't support links, so this runs the <strong>find</strong> command once for the
+   * whole directory.
+   *
+   * @param dir The directory.
+   * @return The absolute paths of the files or null if the links can't be counted, such as on Windows.
+   */
+  public static Set<String> sharedFiles(File dir) {
+    String result;
+    try {
+      result = exec("find", dir.getAbsolutePath(), "-type", "f", "-links", "+1");
+    } catch (IOException e) {
+      return null;
+    }
+
+    if (result == null) {
+      return null;
+    }
+
+    Set<String> paths = new HashSet<String>();
+    for (String line : result.split("\n")) {
+      if (line.length() > 0) {
+        paths.add(line);
       }
-    } while (len > 0);
+    }
 
-    in.close();
-    out.close();
+    return paths;
   }
 
   /**
@@ -166,26 +268,30 @@ public class FileTools {
    */
   public static void unzip(File file, File dir) throws IOException {
     JarInputStream jis = new JarInputStream(new FileInputStream(file));
-    JarEntry entry = jis.getNextJarEntry();
-    byte[] buf = new byte[1024];
-    while (entry != null) {
-      if (!entry.isDirectory()) {
-        File out = new File(dir, entry.getName());
-        if (!out.getParentFile().exists() && !out.getParentFile().mkdirs()) {
-          throw new IOException("Unable to create directory [" + out.getParentFile().getAbsolutePath() +
-            "] while expanding the JAR file [" + file.getAbsolutePath() + "]");
-        }
+    try {
+      ReadableByteChannel in = Channels.newChannel(jis);
+      JarEntry entry = jis.getNextJarEntry();
+      while (entry != null) {
+        if (!entry.isDirectory()) {
+          File out = new File(dir, entry.getName());
+          if (!out.getParentFile().exists() && !out.getParentFile().mkdirs()) {
+            throw new IOException("Unable to create directory [" + out.getParentFile().getAbsolutePath() +
+              "] while expanding the JAR file [" + file.getAbsolutePath() + "]");
+          }
 
-        FileOutputStream fos = new FileOutputStream(out);
-        int len;
-        while ((len = jis.read(buf)) > 0) {
-          fos.write(buf, 0, len);
+          // The channel reads the current entry until its end
+          FileOutputStream fos = new FileOutputStream(out);
+          try {
+            fos.getChannel().transferFrom(in, 0, Long.MAX_VALUE);
+          } finally {
+            fos.close();
+          }
         }
-        fos.flush();
-        fos.close();
-      }
 
-      entry = jis.getNextJarEntry();
+        entry = jis.getNextJarEntry();
+      }
+    } finally {
+      jis.close();
     }
   }
 
@@ -207,4 +313,53 @@ public class FileTools {
         }
         return parent;
     }
+
+  private static void transfer(File from, File to, boolean sync) throws IOException {
+    FileInputStream in = new FileInputStream(from);
+    try {
+      FileOutputStream out = new FileOutputStream(to);
+      try {
+        FileChannel source = in.getChannel();
+        FileChannel destination = out.getChannel();
+        long size = source.size();
+        long position = 0;
+        while (position < size) {
+          position += source.transferTo(position, size - position, destination);
+        }
+
+        if (sync) {
+          destination.force(true);
+        }
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Runs the given command and returns its output.
+   *
+   * @param command The command and its arguments.
+   * @return The output or null if the command failed.
+   * @throws IOException If the command doesn't exist.
+   */
+  private static String exec(String... command) throws IOException {
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    InputStream is = process.getInputStream();
+    try {
+      IOTools.write(is, os, null);
+    } finally {
+      is.close();
+    }
+
+    try {
+      return process.waitFor() == 0 ? os.toString("UTF-8") : null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
 }
@@ -193,6 +193,11 @@ public class IOTools {
       int len;
       while ((len = inputStream.read(b)) != -1) {
         bof.write(b, 0, len);
+
+        // Stop if the thread was cancelled, since most streams can't be interrupted
+        if (Thread.currentThread().isInterrupted()) {
+          throw new InterruptedIOException("Interrupted while writing from the InputStream to the OutputStream");
+        }
       }
     } finally {
       bof.close();
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.net;
+
+/**
+ * <p>
+ * This class is a simple holder for the result of a conditional download. It
+ * holds the body and the validators (ETag and Last-Modified) the server sent.
+ * If the server said the resource wasn't modified, the body is null.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class Content {
+  public final String body;
+  public final String etag;
+  public final String lastModified;
+
+  public Content(String body, String etag, String lastModified) {
+    this.body = body;
+    this.etag = etag;
+    this.lastModified = lastModified;
+  }
+
+  /**
+   * @return True if the body was downloaded, false if the server said the resource wasn't modified.
+   */
+  public boolean isModified() {
+    return body != null;
+  }
+}
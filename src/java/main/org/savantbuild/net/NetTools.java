@@ -15,40 +15,54 @@
  */
 package org.savantbuild.net;
 
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLSession;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URLConnection;
 import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 import org.savantbuild.BuildException;
 import org.savantbuild.io.DoesNotExistException;
+import org.savantbuild.io.FileTools;
 import org.savantbuild.io.IOTools;
 import org.savantbuild.io.MD5;
+import org.savantbuild.io.MD5Exception;
 import org.savantbuild.io.PermanentIOException;
 import org.savantbuild.io.TemporaryIOException;
-
-import sun.misc.BASE64Encoder;
+import org.savantbuild.util.StringTools;
 
 /**
  * <p>
  * This class provides toolkit methods for helping work with URLs and URIs and other network classes.
  * </p>
  *
+ * <p>
+ * Resources are downloaded using the {@link Transport}, which defaults to the keep-alive
+ * {@link URLConnectionTransport} with a 30 second connect timeout and a 60 second read timeout.
+ * The download methods also take a transport, so that each workflow process can use its own
+ * timeouts.
+ * </p>
+ *
  * @author Brian Pontarelli
  */
 public class NetTools {
+  private static volatile Transport transport = new URLConnectionTransport(30000, 60000);
+
   /**
    * Builds a URI from the given parts. These are concatenated together with slashes, depending on the endings of each.
    *
@@ -103,7 +117,26 @@ public class NetTools {
    * @throws TemporaryIOException  If there is a network error that might correct itself.
    * @throws PermanentIOException  If there is a network error or other error that won't correct itself.
    */
-  public static File downloadToFile(final URI uri, final String username, final String password, final MD5 md5)
+  public static File downloadToFile(URI uri, String username, String password, MD5 md5)
+    throws DoesNotExistException, TemporaryIOException, PermanentIOException {
+    return downloadToFile(transport, uri, username, password, md5);
+  }
+
+  /**
+   * Downloads the resource given using the given transport.
+   *
+   * @param transport The transport, such as one with the timeouts of a workflow process.
+   * @param uri       The resource.
+   * @param username  (Optional) The username that might be used to connect to the resource.
+   * @param password  (Optional) The password that might be used to connect to the resource.
+   * @param md5       (Optional) The MD5 of the resource (to verify).
+   * @return A temp file that stores the resource.
+   * @throws DoesNotExistException If the URI doesn't exist.
+   * @throws TemporaryIOException  If there is a network error that might correct itself.
+   * @throws PermanentIOException  If there is a network error or other error that won't correct itself.
+   */
+  public static File downloadToFile(final Transport transport, final URI uri, final String username,
+                                    final String password, final MD5 md5)
     throws DoesNotExistException, TemporaryIOException, PermanentIOException {
     return IOTools.protectIO(new Callable<File>() {
       @Override
@@ -111,12 +144,129 @@ public class NetTools {
         File file = File.createTempFile("savant-net-tools", "download");
         file.deleteOnExit();
         FileOutputStream os = new FileOutputStream(file);
-        download(uri, username, password, os, md5);
+        download(transport, uri, username, password, os, md5);
         return file;
       }
     });
   }
 
+  /**
+   * Downloads the resource given into the given file, such as a staging file in the cache.
+   *
+   * @param uri      The resource.
+   * @param username (Optional) The username that might be used to connect to the resource.
+   * @param password (Optional) The password that might be used to connect to the resource.
+   * @param md5      (Optional) The MD5 of the resource (to verify).
+   * @param file     The file to write the resource to. It is replaced if it exists.
+   * @throws DoesNotExistException If the URI doesn't exist.
+   * @throws TemporaryIOException  If there is a network error that might correct itself.
+   * @throws PermanentIOException  If there is a network error or other error that won't correct itself.
+   */
+  public static void downloadToFile(URI uri, String username, String password, MD5 md5, File file)
+    throws DoesNotExistException, TemporaryIOException, PermanentIOException {
+    downloadToFile(transport, uri, username, password, md5, file);
+  }
+
+  /**
+   * Downloads the resource given into the given file using the given transport.
+   *
+   * @param transport The transport, such as one with the timeouts of a workflow process.
+   * @param uri       The resource.
+   * @param username  (Optional) The username that might be used to connect to the resource.
+   * @param password  (Optional) The password that might be used to connect to the resource.
+   * @param md5       (Optional) The MD5 of the resource (to verify).
+   * @param file      The file to write the resource to. It is replaced if it exists.
+   * @throws DoesNotExistException If the URI doesn't exist.
+   * @throws TemporaryIOException  If there is a network error that might correct itself.
+   * @throws PermanentIOException  If there is a network error or other error that won't correct itself.
+   */
+  public static void downloadToFile(final Transport transport, final URI uri, final String username,
+                                    final String password, final MD5 md5, final File file)
+    throws DoesNotExistException, TemporaryIOException, PermanentIOException {
+    IOTools.protectIO(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        download(transport, uri, username, password, new FileOutputStream(file), md5);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Downloads the resource given into the given file and keeps the part that was downloaded if the download fails, so
+   * that the next download of the same resource can continue where it stopped. The part is stored in the partial
+   * directory under a name made from the URI and the MD5, so a resource is only continued if it is expected to have
+   * the same contents. A download is only continued using an HTTP Range request if the server said that it accepts
+   * ranges. The MD5 of the entire file is always verified, including the bytes that were downloaded before.
+   * <p/>
+   * If the MD5 isn't known or another download of the same resource is running, the resource is downloaded without
+   * keeping the part.
+   *
+   * @param uri        The resource.
+   * @param username   (Optional) The username that might be used to connect to the resource.
+   * @param password   (Optional) The password that might be used to connect to the resource.
+   * @param md5        (Optional) The MD5 of the resource (to verify).
+   * @param file       The file to write the resource to. It is replaced if it exists.
+   * @param partialDir The directory that partial downloads are kept in.
+   * @throws DoesNotExistException If the URI doesn't exist.
+   * @throws TemporaryIOException  If there is a network error that might correct itself.
+   * @throws PermanentIOException  If there is a network error or other error that won't correct itself.
+   */
+  public static void downloadToFile(URI uri, String username, String password, MD5 md5, File file, File partialDir)
+    throws DoesNotExistException, TemporaryIOException, PermanentIOException {
+    downloadToFile(transport, uri, username, password, md5, file, partialDir);
+  }
+
+  /**
+   * Downloads the resource given into the given file using the given transport and keeps the part that was downloaded
+   * if the download fails. See {@link #downloadToFile(URI, String, String, MD5, File, File)}.
+   *
+   * @param transport  The transport, such as one with the timeouts of a workflow process.
+   * @param uri        The resource.
+   * @param username   (Optional) The username that might be used to connect to the resource.
+   * @param password   (Optional) The password that might be used to connect to the resource.
+   * @param md5        (Optional) The MD5 of the resource (to verify).
+   * @param file       The file to write the resource to. It is replaced if it exists.
+   * @param partialDir The directory that partial downloads are kept in.
+   * @throws DoesNotExistException If the URI doesn't exist.
+   * @throws TemporaryIOException  If there is a network error that might correct itself.
+   * @throws PermanentIOException  If there is a network error or other error that won't correct itself.
+   */
+  public static void downloadToFile(final Transport transport, final URI uri, final String username,
+                                    final String password, final MD5 md5, final File file, final File partialDir)
+    throws DoesNotExistException, TemporaryIOException, PermanentIOException {
+    if (md5 == null || md5.sum == null || md5.bytes == null) {
+      downloadToFile(transport, uri, username, password, md5, file);
+      return;
+    }
+
+    IOTools.protectIO(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        if (!partialDir.mkdirs() && !partialDir.isDirectory()) {
+          throw new IOException("Unable to create the partial download directory [" + partialDir.getAbsolutePath() + "]");
+        }
+
+        byte[] key = MessageDigest.getInstance("MD5").digest((uri + " " + md5.sum.toLowerCase()).getBytes("UTF-8"));
+        File partial = new File(partialDir, StringTools.toHex(key));
+        if (!resume(transport, uri, username, password, md5, partial, true)) {
+          download(transport, uri, username, password, new FileOutputStream(file), md5);
+          return null;
+        }
+
+        try {
+          FileTools.rename(partial, file);
+        } catch (IOException e) {
+          // The partial directory is on a different file system
+          FileTools.copy(partial, file);
+          partial.delete();
+        }
+
+        return null;
+      }
+    });
+  }
+
   /**
    * Reads the contents of the given URI in a completely safe manner. All IOExceptions and other Exceptions are
    * translated into the three well-known exceptions on the signature.
@@ -141,47 +291,237 @@ public class NetTools {
     });
   }
 
+  /**
+   * Reads the contents of the given URI if it has changed. If either of the validators are given, they are sent to the
+   * server so that it can answer with a 304 and no body if the resource hasn't changed. All IOExceptions and other
+   * Exceptions are translated into the three well-known exceptions on the signature.
+   *
+   * @param uri          The URI to read.
+   * @param username     (Optional) The username to use if the URI is HTTP and uses HTTP-Basic-Auth.
+   * @param password     (Optional) The password to use if the URI is HTTP and uses HTTP-Basic-Auth.
+   * @param etag         (Optional) The ETag of the copy of the resource that the caller has.
+   * @param lastModified (Optional) The Last-Modified of the copy of the resource that the caller has.
+   * @return The content. If the resource hasn't changed, the body of the content is null.
+   * @throws DoesNotExistException If the URI doesn't exist.
+   * @throws TemporaryIOException  If there is a network error that might correct itself.
+   * @throws PermanentIOException  If there is a network error or other error that won't correct itself.
+   */
+  public static Content downloadToString(URI uri, String username, String password, String etag,
+                                         String lastModified)
+    throws DoesNotExistException, TemporaryIOException, PermanentIOException {
+    return downloadToString(transport, uri, username, password, etag, lastModified);
+  }
+
+  /**
+   * Reads the contents of the given URI using the given transport if it has changed. See
+   * {@link #downloadToString(URI, String, String, String, String)}.
+   *
+   * @param transport    The transport, such as one with the timeouts of a workflow process.
+   * @param uri          The URI to read.
+   * @param username     (Optional) The username to use if the URI is HTTP and uses HTTP-Basic-Auth.
+   * @param password     (Optional) The password to use if the URI is HTTP and uses HTTP-Basic-Auth.
+   * @param etag         (Optional) The ETag of the copy of the resource that the caller has.
+   * @param lastModified (Optional) The Last-Modified of the copy of the resource that the caller has.
+   * @return The content. If the resource hasn't changed, the body of the content is null.
+   * @throws DoesNotExistException If the URI doesn't exist.
+   * @throws TemporaryIOException  If there is a network error that might correct itself.
+   * @throws PermanentIOException  If there is a network error or other error that won't correct itself.
+   */
+  public static Content downloadToString(final Transport transport, final URI uri, final String username,
+                                         final String password, final String etag, final String lastModified)
+    throws DoesNotExistException, TemporaryIOException, PermanentIOException {
+    return IOTools.protectIO(new Callable<Content>() {
+      @Override
+      public Content call() throws Exception {
+        Map<String, String> headers = new HashMap<String, String>();
+        if (etag != null) {
+          headers.put("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+          headers.put("If-Modified-Since", lastModified);
+        }
+
+        Response response = transport.get(uri, username, password, headers);
+        try {
+          String newETag = response.getHeader("ETag");
+          String newLastModified = response.getHeader("Last-Modified");
+          if (response.getStatus() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            return new Content(null, newETag != null ? newETag : etag,
+              newLastModified != null ? newLastModified : lastModified);
+          }
+
+          ByteArrayOutputStream baos = new ByteArrayOutputStream();
+          read(response, baos, null);
+          return new Content(baos.toString("UTF-8"), newETag, newLastModified);
+        } finally {
+          response.close();
+        }
+      }
+    });
+  }
+
+  /**
+   * Downloads the resource given into the stream.
+   *
+   * @param uri      The resource.
+   * @param username (Optional) The username that might be used to connect to the resource.
+   * @param password (Optional) The password that might be used to connect to the resource.
+   * @param os       The stream to write the resource to, which is closed.
+   * @param md5      (Optional) The MD5 of the resource (to verify).
+   * @throws IOException If the download failed.
+   */
   public static void download(URI uri, String username, String password, OutputStream os, MD5 md5) throws IOException {
-    URLConnection uc = uri.toURL().openConnection();
-    if (uc instanceof HttpURLConnection && username != null) {
-      String credentials = username + ":" + password;
-      BASE64Encoder encoder = new BASE64Encoder();
-      uc.setRequestProperty("Authorization", "Basic " + encoder.encode(credentials.getBytes()));
+    download(transport, uri, username, password, os, md5);
+  }
+
+  /**
+   * Downloads the resource given into the stream using the given transport.
+   *
+   * @param transport The transport, such as one with the timeouts of a workflow process.
+   * @param uri       The resource.
+   * @param username  (Optional) The username that might be used to connect to the resource.
+   * @param password  (Optional) The password that might be used to connect to the resource.
+   * @param os        The stream to write the resource to, which is closed.
+   * @param md5       (Optional) The MD5 of the resource (to verify).
+   * @throws IOException If the download failed.
+   */
+  public static void download(Transport transport, URI uri, String username, String password, OutputStream os,
+                              MD5 md5) throws IOException {
+    try {
+      Response response = transport.get(uri, username, password, Collections.<String, String>emptyMap());
+      try {
+        read(response, os, md5);
+      } finally {
+        response.close();
+      }
+    } finally {
+      os.close();
+    }
+  }
+
+  /**
+   * Downloads the resource into the partial file, continuing from the end of the partial file if the server accepts
+   * ranges. The partial file is locked while it is written, since other builds might share it.
+   *
+   * @param partial The partial file.
+   * @param retry   True to start over once if the server rejects the range.
+   * @return True if the partial file is complete and verified, false if another download holds the lock.
+   * @throws IOException If the download failed.
+   */
+  private static boolean resume(Transport transport, URI uri, String username, String password, MD5 md5,
+                                File partial, boolean retry) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(partial, "rw");
+    FileLock lock;
+    try {
+      lock = raf.getChannel().tryLock();
+    } catch (OverlappingFileLockException e) {
+      lock = null;
+    }
+
+    if (lock == null) {
+      raf.close();
+      return false;
     }
 
-    if (uc instanceof HttpsURLConnection) {
-      HttpsURLConnection huc = (HttpsURLConnection) uc;
-      huc.setHostnameVerifier(new HostnameVerifier() {
-        public boolean verify(String s, SSLSession sslSession) {
+    boolean keep = false;
+    Response response = null;
+    try {
+      long offset = raf.length();
+      Map<String, String> headers = new HashMap<String, String>();
+      if (offset > 0) {
+        headers.put("Range", "bytes=" + offset + "-");
+      }
+
+      response = transport.get(uri, username, password, headers);
+      if (offset > 0 && response.getStatus() == 416) {
+        // The range starts at the end of the resource, so the partial file is either complete or bad
+        if (verify(partial, md5)) {
+          keep = true;
           return true;
         }
-      });
-    }
 
-    uc.connect();
-
-    if (uc instanceof HttpURLConnection) {
-      HttpURLConnection huc = (HttpURLConnection) uc;
-      int result = huc.getResponseCode();
-      if (result >= 100 && result <= 199) {
-        throw new TemporaryIOException("HTTP server returned 1xx resposne");
-      } else if (result == 302 || result == 307) {
-        throw new TemporaryIOException("HTTP sent redirect and the current HTTP client cannot redirect");
-      } else if (result >= 300 && result <= 399) {
-        throw new PermanentIOException("HTTP sent redirect and the current HTTP client cannot redirect");
-      } else if (result == 404 || result == 410) {
-        throw new DoesNotExistException("HTTP resource doesn't exist");
-      } else if (result == 401) {
-        throw new DoesNotExistException("HTTP server requires authentication and nothing was set");
-      } else if (result >= 400 && result <= 599) {
-        throw new TemporaryIOException("HTTP sent [" + result + "] failure and not a 404 or 500");
+        raf.setLength(0);
+        if (retry) {
+          // The retry cleans up the partial file itself
+          keep = true;
+          response.close();
+          response = null;
+          raf.close();
+          return resume(transport, uri, username, password, md5, partial, false);
+        }
+      }
+
+      String range = response.getHeader("Content-Range");
+      boolean append = offset > 0 && response.getStatus() == 206 && range != null &&
+        range.trim().startsWith("bytes " + offset + "-");
+      keep = append || "bytes".equalsIgnoreCase(response.getHeader("Accept-Ranges"));
+      if (append) {
+        raf.seek(offset);
+      } else {
+        raf.setLength(0);
+      }
+
+      // A continued download is verified from the start of the file once it is complete
+      read(response, Channels.newOutputStream(raf.getChannel()), append ? null : md5);
+      if (append && !verify(partial, md5)) {
+        keep = false;
+        throw new MD5Exception("MD5 mismatch when continuing the download of [" + uri + "]");
+      }
+
+      keep = true;
+      return true;
+    } catch (MD5Exception e) {
+      keep = false;
+      throw e;
+    } finally {
+      if (response != null) {
+        response.close();
+      }
+
+      raf.close();
+      if (!keep) {
+        partial.delete();
       }
     }
+  }
+
+  private static boolean verify(File file, MD5 md5) throws IOException {
+    return Arrays.equals(FileTools.md5(file).bytes, md5.bytes);
+  }
+
+  /**
+   * @return The transport used to download resources.
+   */
+  public static Transport getTransport() {
+    return transport;
+  }
 
-    InputStream is = uc.getInputStream();
-    IOTools.write(is, os, md5);
+  /**
+   * Sets the transport used to download resources.
+   *
+   * @param transport The transport.
+   */
+  public static void setTransport(Transport transport) {
+    NetTools.transport = transport;
+  }
+
+  private static void read(Response response, OutputStream os, MD5 md5) throws IOException {
+    int result = response.getStatus();
+    if (result >= 100 && result <= 199) {
+      throw new TemporaryIOException("HTTP server returned 1xx resposne");
+    } else if (result == 302 || result == 307) {
+      throw new TemporaryIOException("HTTP sent redirect and the current HTTP client cannot redirect");
+    } else if (result >= 300 && result <= 399) {
+      throw new PermanentIOException("HTTP sent redirect and the current HTTP client cannot redirect");
+    } else if (result == 404 || result == 410) {
+      throw new DoesNotExistException("HTTP resource doesn't exist");
+    } else if (result == 401) {
+      throw new DoesNotExistException("HTTP server requires authentication and nothing was set");
+    } else if (result >= 400 && result <= 599) {
+      throw new TemporaryIOException("HTTP sent [" + result + "] failure and not a 404 or 500");
+    }
 
+    IOTools.write(response.getBody(), os, md5);
     os.close();
-    is.close();
   }
 }
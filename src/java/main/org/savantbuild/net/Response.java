@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>
+ * This interface is the response to a request sent using a {@link Transport}.
+ * The response must always be closed, even if the body isn't read, so that
+ * the transport can reuse the connection.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public interface Response {
+  /**
+   * @return The HTTP status code or -1 if the resource isn't HTTP.
+   */
+  int getStatus() throws IOException;
+
+  /**
+   * @param name The name of the header.
+   * @return The value of the header or null if the response doesn't have it.
+   */
+  String getHeader(String name);
+
+  /**
+   * @return The body of the response.
+   * @throws IOException If the body couldn't be opened.
+   */
+  InputStream getBody() throws IOException;
+
+  /**
+   * Closes the response. Any of the body that wasn't read is discarded.
+   */
+  void close();
+}
@@ -74,14 +74,15 @@ public class SCP {
 
       Session session = jsch.getSession(options.username, options.server, options.port);
       session.setUserInfo(new BaseUserInfo(options.password, options.passphrase, options.trustUnknownHosts));
-      session.connect();
+      session.setTimeout(options.readTimeout);
+      session.connect(options.connectTimeout);
 
       ChannelExec exec = (ChannelExec) session.openChannel("exec");
       exec.setCommand("scp -p -t " + to);
 
       InputStream is = exec.getInputStream();
       OutputStream os = exec.getOutputStream();
-      exec.connect();
+      exec.connect(options.connectTimeout);
 
       checkAck(is);
 
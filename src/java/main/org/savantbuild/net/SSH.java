@@ -71,7 +71,8 @@ public class SSH {
 
       Session session = jsch.getSession(options.username, options.server, options.port);
       session.setUserInfo(new BaseUserInfo(options.password, options.passphrase, options.trustUnknownHosts));
-      session.connect();
+      session.setTimeout(options.readTimeout);
+      session.connect(options.connectTimeout);
 
       final ChannelExec exec = (ChannelExec) session.openChannel("exec");
       exec.setCommand(command);
@@ -84,7 +85,7 @@ public class SSH {
       ByteArrayOutputStream error = new ByteArrayOutputStream();
       exec.setErrStream(error);
 
-      exec.connect();
+      exec.connect(options.connectTimeout);
 
       // wait for it to finish
       final AtomicBoolean finished = new AtomicBoolean(false);
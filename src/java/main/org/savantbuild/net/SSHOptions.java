@@ -32,4 +32,6 @@ public class SSHOptions {
   public String identity = System.getProperty("user.home") + "/.ssh/id_dsa";
   public String passphrase = "";
   public String cipher;
+  public int connectTimeout = 30000;
+  public int readTimeout = 60000;
 }
@@ -26,6 +26,7 @@ import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.internal.io.dav.DAVRepositoryFactory;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
 import org.tmatesoft.svn.core.internal.io.svn.SVNRepositoryFactoryImpl;
+import org.tmatesoft.svn.core.internal.wc.DefaultSVNAuthenticationManager;
 import org.tmatesoft.svn.core.internal.wc.DefaultSVNOptions;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.wc.SVNClientManager;
@@ -98,6 +99,46 @@ public class SubVersion {
       throw new BuildException("Invalid SubVersion repository URL [" + repository + "]", e);
     }
 
+    verify();
+  }
+
+  /**
+   * Constructs a SubVersion wrapper around the SVNKit SubVersion client. This uses the repository
+   * URL and credentials given (if supplied) and the given timeouts.
+   *
+   * @param repository     The SubVersion repository URL.
+   * @param username       (Optional) The username used to connect to the repository.
+   * @param password       (Optional) The password used to connect to the repository.
+   * @param connectTimeout The number of milliseconds to wait for a connection or 0 to wait forever.
+   * @param readTimeout    The number of milliseconds to wait for data or 0 to wait forever.
+   * @throws BuildException If the creation of the SubVersion client failed for any reason.
+   */
+  public SubVersion(String repository, String username, String password, final int connectTimeout,
+                    final int readTimeout) throws BuildException {
+    try {
+      DefaultSVNOptions options = SVNWCUtil.createDefaultOptions(true);
+      options.setAuthStorageEnabled(false);
+      this.svnURL = SVNURL.parseURIEncoded(repository);
+      DefaultSVNAuthenticationManager auth = new DefaultSVNAuthenticationManager(null, false, username, password) {
+        @Override
+        public int getConnectTimeout(SVNRepository repository) {
+          return connectTimeout;
+        }
+
+        @Override
+        public int getReadTimeout(SVNRepository repository) {
+          return readTimeout;
+        }
+      };
+      this.clientManager = SVNClientManager.newInstance(options, auth);
+    } catch (SVNException e) {
+      throw new BuildException("Invalid SubVersion repository URL [" + repository + "]", e);
+    }
+
+    verify();
+  }
+
+  private void verify() throws BuildException {
     // Check the URL is correct
     try {
       this.repository = clientManager.createRepository(svnURL, false);
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.net;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * <p>
+ * This interface defines how {@link NetTools} talks to remote resources. The
+ * default is the {@link URLConnectionTransport}, which reuses the persistent
+ * connections of the JDK. A different transport can be installed using
+ * {@link NetTools#setTransport(Transport)}.
+ * </p>
+ *
+ * <p>
+ * Implementations must be thread safe. They should throw the standard
+ * IOExceptions, such as ConnectException and SocketTimeoutException, so that
+ * NetTools can translate them into the well-known exceptions.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public interface Transport {
+  /**
+   * Sends a GET request for the given resource.
+   *
+   * @param uri      The resource.
+   * @param username (Optional) The username to use if the URI is HTTP and uses HTTP-Basic-Auth.
+   * @param password (Optional) The password to use if the URI is HTTP and uses HTTP-Basic-Auth.
+   * @param headers  The request headers, which might be empty.
+   * @return The response, which must be closed by the caller.
+   * @throws IOException If the request failed.
+   */
+  Response get(URI uri, String username, String password, Map<String, String> headers) throws IOException;
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.net;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLConnection;
+import java.util.Map;
+
+import org.savantbuild.util.StringTools;
+
+/**
+ * <p>
+ * This is the default {@link Transport}. It uses URLConnection, which keeps
+ * the persistent (keep-alive) connections to each host in a cache and reuses
+ * them for later requests, including the TLS sessions. A connection is only
+ * put back in the cache if the body of the response is closed and the
+ * connection isn't disconnected, so the responses of this transport always
+ * read the rest of a small body, including error bodies, and close it.
+ * </p>
+ *
+ * <p>
+ * This transport doesn't have a connection pool of its own and doesn't limit
+ * the number of connections to a host. The keep-alive cache of the JDK only
+ * bounds the number of idle connections it keeps per host, which is set by
+ * the standard <strong>http.maxConnections</strong> system property and
+ * defaults to 5. The number of open connections is bounded by the number of
+ * threads that fetch at the same time. The JDK doesn't support HTTP/2, so
+ * each connection handles one request at a time.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class URLConnectionTransport implements Transport {
+  // A single instance so that cached HTTPS connections can be reused, since they are matched by their verifier
+  private static final HostnameVerifier VERIFIER = new HostnameVerifier() {
+    public boolean verify(String s, SSLSession sslSession) {
+      return true;
+    }
+  };
+
+  private static final int DRAIN_LIMIT = 64 * 1024;
+
+  private final int connectTimeout;
+  private final int readTimeout;
+
+  /**
+   * @param connectTimeout The number of milliseconds to wait for a connection or 0 to wait forever.
+   * @param readTimeout    The number of milliseconds to wait for data or 0 to wait forever.
+   */
+  public URLConnectionTransport(int connectTimeout, int readTimeout) {
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Response get(URI uri, String username, String password, Map<String, String> headers) throws IOException {
+    URLConnection uc = uri.toURL().openConnection();
+    uc.setConnectTimeout(connectTimeout);
+    uc.setReadTimeout(readTimeout);
+    if (uc instanceof HttpURLConnection && username != null) {
+      String credentials = username + ":" + password;
+      uc.setRequestProperty("Authorization", "Basic " + StringTools.toBase64(credentials.getBytes("UTF-8")));
+    }
+
+    if (uc instanceof HttpsURLConnection) {
+      ((HttpsURLConnection) uc).setHostnameVerifier(VERIFIER);
+    }
+
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      uc.setRequestProperty(header.getKey(), header.getValue());
+    }
+
+    uc.connect();
+    return new URLConnectionResponse(uc);
+  }
+
+  private static class URLConnectionResponse implements Response {
+    private final URLConnection uc;
+    private InputStream body;
+
+    private URLConnectionResponse(URLConnection uc) {
+      this.uc = uc;
+    }
+
+    @Override
+    public int getStatus() throws IOException {
+      return uc instanceof HttpURLConnection ? ((HttpURLConnection) uc).getResponseCode() : -1;
+    }
+
+    @Override
+    public String getHeader(String name) {
+      return uc.getHeaderField(name);
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      if (body == null) {
+        body = uc.getInputStream();
+      }
+
+      return body;
+    }
+
+    @Override
+    public void close() {
+      try {
+        InputStream is = body;
+        if (is == null && uc instanceof HttpURLConnection) {
+          HttpURLConnection huc = (HttpURLConnection) uc;
+          is = huc.getResponseCode() >= 400 ? huc.getErrorStream() : huc.getInputStream();
+        } else if (is == null) {
+          is = uc.getInputStream();
+        }
+
+        // Read the rest of a small body so that the connection goes back to the cache right away. A large body is
+        // cheaper to drop along with the connection.
+        if (is != null) {
+          byte[] buf = new byte[4096];
+          int total = 0;
+          int count;
+          while (total < DRAIN_LIMIT && (count = is.read(buf)) != -1) {
+            total += count;
+          }
+
+          is.close();
+        }
+      } catch (IOException e) {
+        // The connection can't be reused, which the JDK handles by closing it
+      }
+    }
+  }
+}
@@ -20,7 +20,9 @@ import java.util.List;
 
 import org.apache.commons.cli.CommandLine;
 import org.savantbuild.BuildException;
+import org.savantbuild.dep.workflow.process.CacheCleaner;
 import org.savantbuild.domain.Context;
+import org.savantbuild.run.output.Level;
 import org.savantbuild.run.output.Output;
 
 import com.google.inject.Inject;
@@ -30,6 +32,12 @@ import com.google.inject.Inject;
  * This is the build executor for Savant. It determines which targets to call and then invokes them.
  * </p>
  *
+ * <p>
+ * The <strong>--clean-cache</strong> option cleans the caches of the workflows instead of running targets. After a
+ * build, the caches whose <strong>cleanAfterBuild</strong> attribute is true are cleaned in a background thread
+ * that doesn't keep the JVM running.
+ * </p>
+ *
  * @author Brian Pontarelli
  */
 public class DefaultBuildExecutor implements BuildExecutor {
@@ -54,6 +62,15 @@ public class DefaultBuildExecutor implements BuildExecutor {
       helpOutputer.print(context.getProject());
     } else if (cli.hasOption("version")) {
       output.info("Savant Build System Version " + Main.class.getPackage().getImplementationVersion());
+    } else if (cli.hasOption("clean-cache")) {
+      List<CacheCleaner> cleaners = CacheCleaner.forWorkflows(output, context.getWorkflows(), false);
+      if (cleaners.isEmpty()) {
+        output.info("None of the cache processes in the workflows have a maxSize");
+      }
+
+      for (CacheCleaner cleaner : cleaners) {
+        cleaner.clean();
+      }
     } else {
       if (!context.getBuildFile().isFile()) {
         throw new BuildException("Invalid or missing build script [" + context.getBuildFile().toString() + "]");
@@ -78,6 +95,43 @@ public class DefaultBuildExecutor implements BuildExecutor {
         output.debug("Executing target [" + target + "]");
         targetExecutor.run(context.getProject(), target, targetCallArgs);
       }
+
+      cleanInBackground(context);
+    }
+  }
+
+  /**
+   * Cleans the caches whose cleanAfterBuild attribute is true in a low priority daemon thread, so neither the build
+   * nor the exit of sb waits for the cleaning. If the JVM exits first, the cleaning just stops. That is safe because
+   * a version is evicted by renaming its directory out of the way before it is pruned, and the next cleaning prunes
+   * any directories that were left behind.
+   *
+   * @param context The context.
+   */
+  private void cleanInBackground(Context context) {
+    if (context.getWorkflows() == null) {
+      return;
+    }
+
+    final List<CacheCleaner> cleaners = CacheCleaner.forWorkflows(output, context.getWorkflows(), true);
+    if (cleaners.isEmpty()) {
+      return;
     }
+
+    Thread thread = new Thread("savant-cache-cleaner") {
+      @Override
+      public void run() {
+        for (CacheCleaner cleaner : cleaners) {
+          try {
+            cleaner.clean();
+          } catch (RuntimeException e) {
+            output.println(Level.DEBUG, "Unable to clean the cache", e);
+          }
+        }
+      }
+    };
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.setDaemon(true);
+    thread.start();
   }
 }
@@ -45,6 +45,8 @@ public class Main {
     options.addOption("d", "debug", false, "turns on debugging output");
     options.addOption("f", "file", true, "the build file (defaults to build.savant)");
     options.addOption("w", "workflows", true, "the workflows file (defaults to ~/.savant/workflows.savant)");
+    options.addOption("r", "refresh", false, "ignores the dependency lock files and resolves all dependencies again");
+    options.addOption("c", "clean-cache", false, "evicts the least recently used artifacts from the caches that have a maxSize");
     options.addOption("v", "version", false, "print the version of Savant");
     options.addOption("h", "help", false, "print this help message");
   }
@@ -35,6 +35,27 @@ public class DefaultOutput implements Output {
     }
   }
 
+  @Override
+  public void debug(String format, Object... args) {
+    if (isEnabled(Level.DEBUG)) {
+      debug(String.format(format, args));
+    }
+  }
+
+  @Override
+  public void debug(String format, Object arg) {
+    if (isEnabled(Level.DEBUG)) {
+      debug(String.format(format, arg));
+    }
+  }
+
+  @Override
+  public void debug(String format, Object first, Object second) {
+    if (isEnabled(Level.DEBUG)) {
+      debug(String.format(format, first, second));
+    }
+  }
+
   @Override
   public void info(String message) {
     if (Level.INFO.ordinal() >= this.level.ordinal()) {
@@ -85,6 +106,11 @@ public class DefaultOutput implements Output {
     }
   }
 
+  @Override
+  public boolean isEnabled(Level level) {
+    return level.ordinal() >= this.level.ordinal();
+  }
+
   @Override
   public Level getLevel() {
     return level;
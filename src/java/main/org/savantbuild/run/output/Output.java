@@ -33,6 +33,33 @@ public interface Output {
    */
   void debug(String message);
 
+  /**
+   * Prints out a message at the debug level. The message is built using {@link String#format(String, Object...)},
+   * but only if debug output is enabled. This should be used instead of building the message with String
+   * concatenation in code that is called often.
+   *
+   * @param format The format of the message.
+   * @param args   The arguments for the format.
+   */
+  void debug(String format, Object... args);
+
+  /**
+   * The same as {@link #debug(String, Object...)} for a single argument, without creating an array.
+   *
+   * @param format The format of the message.
+   * @param arg    The argument for the format.
+   */
+  void debug(String format, Object arg);
+
+  /**
+   * The same as {@link #debug(String, Object...)} for two arguments, without creating an array.
+   *
+   * @param format The format of the message.
+   * @param first  The first argument for the format.
+   * @param second The second argument for the format.
+   */
+  void debug(String format, Object first, Object second);
+
   /**
    * Prints out the given message at the info level.
    *
@@ -87,6 +114,14 @@ public interface Output {
    */
   void println(Level level, String message, Throwable t);
 
+  /**
+   * Determines if messages at the given level are printed. This can be used to skip building expensive messages.
+   *
+   * @param level The level.
+   * @return True if messages at the level are printed, false otherwise.
+   */
+  boolean isEnabled(Level level);
+
   /**
    * @return The output level.
    */
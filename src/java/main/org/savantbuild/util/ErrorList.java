@@ -28,7 +28,7 @@ import java.util.List;
 public class ErrorList {
   private final List<String> errors = new ArrayList<String>();
 
-  public void addError(String error) {
+  public synchronized void addError(String error) {
     errors.add(error);
   }
 
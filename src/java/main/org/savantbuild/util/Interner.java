@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.util;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * <p>
+ * This class is a pool of canonical instances of immutable values, similar
+ * to {@link String#intern()}. Equal values that are interned share a single
+ * instance, which saves memory and lets equals checks stop at the identity
+ * check.
+ * </p>
+ *
+ * <p>
+ * The values are weakly referenced, so values that are no longer used are
+ * removed from the pool. This keeps the pool from growing forever in long
+ * running processes. It is thread safe.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class Interner<T> {
+  private final Map<T, WeakReference<T>> pool = new WeakHashMap<T, WeakReference<T>>();
+
+  /**
+   * Returns the canonical instance that is equal to the given value. If there isn't one yet, the given value becomes
+   * the canonical instance.
+   *
+   * @param value The value. If this is null, null is returned.
+   * @return The canonical instance.
+   */
+  public synchronized T intern(T value) {
+    if (value == null) {
+      return null;
+    }
+
+    T canonical = get(value);
+    if (canonical == null) {
+      pool.put(value, new WeakReference<T>(value));
+      canonical = value;
+    }
+
+    return canonical;
+  }
+
+  /**
+   * Returns the canonical instance that is equal to the given value.
+   *
+   * @param value The value.
+   * @return The canonical instance or null if the value hasn't been interned.
+   */
+  public synchronized T get(T value) {
+    WeakReference<T> ref = pool.get(value);
+    return ref == null ? null : ref.get();
+  }
+
+  /**
+   * @return The number of values in the pool.
+   */
+  public synchronized int size() {
+    return pool.size();
+  }
+}
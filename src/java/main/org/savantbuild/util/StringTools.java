@@ -23,6 +23,20 @@ package org.savantbuild.util;
  * @author Brian Pontarelli
  */
 public class StringTools {
+  private static final Interner<String> strings = new Interner<String>();
+  private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+  /**
+   * Returns the canonical instance of the given String. Unlike {@link String#intern()}, the canonical instances are
+   * kept on the heap and are garbage collected once they aren't used anymore.
+   *
+   * @param str The String.
+   * @return The canonical instance or null if the String is null.
+   */
+  public static String intern(String str) {
+    return strings.intern(str);
+  }
+
   /**
    * Converts the object to a String safely.
    *
@@ -88,6 +102,28 @@ public class StringTools {
     return buf.toString();
   }
 
+  /**
+   * Encodes the given bytes using Base64 with padding and without line breaks, such as for the credentials of an HTTP
+   * Basic Authorization header.
+   *
+   * @param bytes The bytes to encode.
+   * @return The Base64 String.
+   */
+  public static String toBase64(byte[] bytes) {
+    StringBuilder build = new StringBuilder((bytes.length + 2) / 3 * 4);
+    for (int i = 0; i < bytes.length; i += 3) {
+      int b1 = bytes[i] & 0xFF;
+      int b2 = i + 1 < bytes.length ? bytes[i + 1] & 0xFF : 0;
+      int b3 = i + 2 < bytes.length ? bytes[i + 2] & 0xFF : 0;
+      build.append(BASE64.charAt(b1 >> 2));
+      build.append(BASE64.charAt(((b1 & 0x03) << 4) | (b2 >> 4)));
+      build.append(i + 1 < bytes.length ? BASE64.charAt(((b2 & 0x0F) << 2) | (b3 >> 6)) : '=');
+      build.append(i + 2 < bytes.length ? BASE64.charAt(b3 & 0x3F) : '=');
+    }
+
+    return build.toString();
+  }
+
   /**
    * Converts the contents of the given String from hexadecimal to an array of bytes. Each character of the String is
    * a single hex value. Therefore, the the pair of characters equals a single byte. This method is little-endian.
@@ -143,4 +179,35 @@ public class StringTools {
 
     return Boolean.parseBoolean(str);
   }
+
+  /**
+   * Parses the String for a number of bytes. The number can end with k, m or g (in either case) for kilobytes,
+   * megabytes or gigabytes.
+   *
+   * @param str The String to parse.
+   * @param def The default value if the string is empty or null.
+   * @return The parsed value or the default.
+   */
+  public static long toSize(String str, long def) {
+    if (isTrimmedEmpty(str)) {
+      return def;
+    }
+
+    String size = str.trim().toLowerCase();
+    long multiplier = 1;
+    char unit = size.charAt(size.length() - 1);
+    if (unit == 'k') {
+      multiplier = 1024L;
+    } else if (unit == 'm') {
+      multiplier = 1024L * 1024L;
+    } else if (unit == 'g') {
+      multiplier = 1024L * 1024L * 1024L;
+    }
+
+    if (multiplier > 1) {
+      size = size.substring(0, size.length() - 1).trim();
+    }
+
+    return Long.parseLong(size) * multiplier;
+  }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.savantbuild.domain.Artifact;
+import org.savantbuild.domain.ArtifactGroup;
+import org.savantbuild.domain.Dependencies;
+import org.savantbuild.domain.Process;
+import org.savantbuild.domain.Workflow;
+import org.savantbuild.io.FileTools;
+import org.savantbuild.run.StringBuilderOutput;
+import org.savantbuild.run.output.DefaultOutput;
+import org.savantbuild.run.output.Level;
+import org.testng.annotations.Test;
+
+import static org.savantbuild.TestTools.*;
+import static org.testng.Assert.*;
+
+/**
+ * <p>
+ * This class tests the caching dependency resolver.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class CachingDependencyResolverTest {
+  @Test
+  public void groupTypeViews() throws Exception {
+    File cache = new File("target/test/deps");
+    FileTools.prune(cache);
+
+    Workflow w = makeWorkflow();
+    StringBuilderOutput output = new StringBuilderOutput();
+    output.level = Level.DEBUG;
+    CachingDependencyResolver caching = new CachingDependencyResolver(output);
+    DefaultDependencyResolver plain = new DefaultDependencyResolver(new DefaultOutput());
+
+    Map<Artifact, File> compile = caching.resolve(makeDependencies(), w, set("compile"), true);
+    assertEquals(compile, plain.resolve(makeDependencies(), w, set("compile"), true));
+    assertFalse(output.build.toString().contains("Reusing the dependency graph"));
+
+    // Different group types use a new copy of the same graph
+    Map<Artifact, File> all = caching.resolve(makeDependencies(), w, null, true);
+    assertEquals(all, plain.resolve(makeDependencies(), w, null, true));
+    assertTrue(output.build.toString().contains("Reusing the dependency graph"));
+    assertFalse(all.equals(compile));
+
+    // The first view is still the same
+    assertEquals(caching.resolve(makeDependencies(), w, set("compile"), true), compile);
+
+    // Non-transitive resolutions have their own graph
+    output.build.setLength(0);
+    Map<Artifact, File> nonTransitive = caching.resolve(makeDependencies(), w, null, false);
+    assertEquals(nonTransitive.size(), 1);
+    assertFalse(output.build.toString().contains("Reusing the dependency graph"));
+  }
+
+  @Test
+  public void workflows() throws Exception {
+    FileTools.prune(new File("target/test/deps"));
+    FileTools.prune(new File("target/test/other-deps"));
+
+    CachingDependencyResolver caching = new CachingDependencyResolver(new DefaultOutput());
+    Map<Artifact, File> first = caching.resolve(makeDependencies(), makeWorkflow("target/test/deps"), null, true);
+    Map<Artifact, File> second = caching.resolve(makeDependencies(), makeWorkflow("target/test/other-deps"), null, true);
+    assertEquals(second.keySet(), first.keySet());
+
+    // The files of a workflow that uses another cache aren't reused
+    for (File file : second.values()) {
+      assertTrue(file.getAbsolutePath().contains("other-deps"));
+    }
+  }
+
+  private Dependencies makeDependencies() {
+    Artifact a = new Artifact("org.savantbuild.test", "dependencies-with-groups", "dependencies-with-groups", "1.0", "jar");
+    ArtifactGroup group = new ArtifactGroup("compile");
+    group.getArtifacts().add(a);
+
+    Dependencies d = new Dependencies();
+    d.getArtifactGroups().put("compile", group);
+    return d;
+  }
+
+  private Workflow makeWorkflow() throws MalformedURLException {
+    return makeWorkflow("target/test/deps");
+  }
+
+  private Workflow makeWorkflow(String dir) throws MalformedURLException {
+    Workflow w = new Workflow();
+    w.getFetchProcesses().add(new Process(map("type", "url", "url", new File("test-deps/savant").toURI().toURL().toString())));
+    w.getPublishProcesses().add(new Process(map("type", "cache", "dir", dir)));
+    return w;
+  }
+
+  private HashSet<String> set(String... strs) {
+    HashSet<String> set = new HashSet<String>();
+    for (String str : strs) {
+      set.add(str);
+    }
+    return set;
+  }
+}
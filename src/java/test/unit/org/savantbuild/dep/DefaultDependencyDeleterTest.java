@@ -17,6 +17,7 @@ package org.savantbuild.dep;
 
 import java.io.File;
 
+import org.savantbuild.dep.workflow.process.NegativeCache;
 import org.savantbuild.domain.Artifact;
 import org.savantbuild.domain.ArtifactGroup;
 import org.savantbuild.domain.Dependencies;
@@ -92,5 +93,9 @@ public class DefaultDependencyDeleterTest extends AbstractDependencyTest {
     // Second cache
     files = new File("target/test/deps2/org/savantbuild/test/no-amd/1.0").listFiles();
     assertEquals(files.length, 0);
+
+    // The negatives are deleted too
+    assertFalse(new NegativeCache("target/test/deps", 0).contains(a, "no-amd-1.0-src.jar"));
+    assertFalse(new NegativeCache("target/test/deps2", 0).contains(a, "no-amd-1.0.jar.amd"));
   }
 }
@@ -16,13 +16,21 @@
 package org.savantbuild.dep;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 
 import org.savantbuild.BuildException;
+import org.savantbuild.dep.workflow.process.NegativeCache;
 import org.savantbuild.domain.Artifact;
 import org.savantbuild.domain.ArtifactGroup;
 import org.savantbuild.domain.Dependencies;
@@ -100,13 +108,18 @@ public class DefaultDependencyResolverTest {
     assertEquals(files.length, 1);
 
     files = new File(cache, "org/savantbuild/test/no-amd/1.0").listFiles();
-    assertEquals(files.length, 4);
+    assertEquals(files.length, 2);
 
     Arrays.sort(files);
-    assertEquals(files[0].getName(), "no-amd-1.0-src.jar.neg");
-    assertEquals(files[1].getName(), "no-amd-1.0.jar");
-    assertEquals(files[2].getName(), "no-amd-1.0.jar.amd.neg");
-    assertEquals(files[3].getName(), "no-amd-1.0.jar.md5");
+    assertEquals(files[0].getName(), "no-amd-1.0.jar");
+    assertEquals(files[1].getName(), "no-amd-1.0.jar.md5");
+
+    // The negatives are stored for the project
+    assertTrue(new File(cache, "org/savantbuild/test/no-amd/.negatives").isFile());
+    NegativeCache negatives = new NegativeCache("target/test/deps", 0);
+    assertTrue(negatives.contains(a, "no-amd-1.0-src.jar"));
+    assertTrue(negatives.contains(a, "no-amd-1.0.jar.amd"));
+    assertFalse(negatives.contains(a, "no-amd-1.0.jar"));
 
     Dependencies dependencies = dm.dependencies(a, w);
     assertNotNull(dependencies);
@@ -138,23 +151,20 @@ public class DefaultDependencyResolverTest {
     assertEquals(files.length, 1);
 
     files = new File(cache, "org/savantbuild/test/no-amd/1.0").listFiles();
-    assertEquals(files.length, 4);
+    assertEquals(files.length, 2);
     Arrays.sort(files);
-    assertEquals(files[0].getName(), "no-amd-1.0-src.jar.neg");
-    assertEquals(files[1].getName(), "no-amd-1.0.jar");
-    assertEquals(files[2].getName(), "no-amd-1.0.jar.amd.neg");
-    assertEquals(files[3].getName(), "no-amd-1.0.jar.md5");
+    assertEquals(files[0].getName(), "no-amd-1.0.jar");
+    assertEquals(files[1].getName(), "no-amd-1.0.jar.md5");
 
     files = new File(cache2, "org/savantbuild/test").listFiles();
     assertEquals(files.length, 1);
+    assertTrue(new NegativeCache("target/test/deps2", 0).contains(a, "no-amd-1.0-src.jar"));
 
     files = new File(cache, "org/savantbuild/test/no-amd/1.0").listFiles();
-    assertEquals(files.length, 4);
+    assertEquals(files.length, 2);
     Arrays.sort(files);
-    assertEquals(files[0].getName(), "no-amd-1.0-src.jar.neg");
-    assertEquals(files[1].getName(), "no-amd-1.0.jar");
-    assertEquals(files[2].getName(), "no-amd-1.0.jar.amd.neg");
-    assertEquals(files[3].getName(), "no-amd-1.0.jar.md5");
+    assertEquals(files[0].getName(), "no-amd-1.0.jar");
+    assertEquals(files[1].getName(), "no-amd-1.0.jar.md5");
   }
 
   @Test(enabled = true)
@@ -185,46 +195,83 @@ public class DefaultDependencyResolverTest {
     assertEquals(files[3].getName(), "patch-compat");
 
     files = new File(cache, "org/savantbuild/test/dependencies/1.0").listFiles();
-    assertEquals(files.length, 5);
+    assertEquals(files.length, 4);
     Arrays.sort(files);
-    assertEquals(files[0].getName(), "dependencies-1.0-src.jar.neg");
-    assertEquals(files[1].getName(), "dependencies-1.0.jar");
-    assertEquals(files[2].getName(), "dependencies-1.0.jar.amd");
-    assertEquals(files[3].getName(), "dependencies-1.0.jar.amd.md5");
-    assertEquals(files[4].getName(), "dependencies-1.0.jar.md5");
+    assertEquals(files[0].getName(), "dependencies-1.0.jar");
+    assertEquals(files[1].getName(), "dependencies-1.0.jar.amd");
+    assertEquals(files[2].getName(), "dependencies-1.0.jar.amd.md5");
+    assertEquals(files[3].getName(), "dependencies-1.0.jar.md5");
 
     files = new File(cache, "org/savantbuild/test/major-compat/2.0").listFiles();
-    assertEquals(files.length, 5);
+    assertEquals(files.length, 4);
     Arrays.sort(files);
-    assertEquals(files[0].getName(), "major-compat-2.0-src.jar.neg");
-    assertEquals(files[1].getName(), "major-compat-2.0.jar");
-    assertEquals(files[2].getName(), "major-compat-2.0.jar.amd");
-    assertEquals(files[3].getName(), "major-compat-2.0.jar.amd.md5");
-    assertEquals(files[4].getName(), "major-compat-2.0.jar.md5");
+    assertEquals(files[0].getName(), "major-compat-2.0.jar");
+    assertEquals(files[1].getName(), "major-compat-2.0.jar.amd");
+    assertEquals(files[2].getName(), "major-compat-2.0.jar.amd.md5");
+    assertEquals(files[3].getName(), "major-compat-2.0.jar.md5");
 
     files = new File(cache, "org/savantbuild/test/minor-compat/1.1").listFiles();
-    assertEquals(files.length, 5);
+    assertEquals(files.length, 4);
     Arrays.sort(files);
-    assertEquals(files[0].getName(), "minor-compat-1.1-src.jar.neg");
-    assertEquals(files[1].getName(), "minor-compat-1.1.jar");
-    assertEquals(files[2].getName(), "minor-compat-1.1.jar.amd");
-    assertEquals(files[3].getName(), "minor-compat-1.1.jar.amd.md5");
-    assertEquals(files[4].getName(), "minor-compat-1.1.jar.md5");
+    assertEquals(files[0].getName(), "minor-compat-1.1.jar");
+    assertEquals(files[1].getName(), "minor-compat-1.1.jar.amd");
+    assertEquals(files[2].getName(), "minor-compat-1.1.jar.amd.md5");
+    assertEquals(files[3].getName(), "minor-compat-1.1.jar.md5");
 
     files = new File(cache, "org/savantbuild/test/patch-compat/1.0").listFiles();
-    assertEquals(files.length, 5);
+    assertEquals(files.length, 4);
     Arrays.sort(files);
-    assertEquals(files[0].getName(), "patch-compat-1.0-src.jar.neg");
-    assertEquals(files[1].getName(), "patch-compat-1.0.jar");
-    assertEquals(files[2].getName(), "patch-compat-1.0.jar.amd");
-    assertEquals(files[3].getName(), "patch-compat-1.0.jar.amd.md5");
-    assertEquals(files[4].getName(), "patch-compat-1.0.jar.md5");
+    assertEquals(files[0].getName(), "patch-compat-1.0.jar");
+    assertEquals(files[1].getName(), "patch-compat-1.0.jar.amd");
+    assertEquals(files[2].getName(), "patch-compat-1.0.jar.amd.md5");
+    assertEquals(files[3].getName(), "patch-compat-1.0.jar.md5");
 
     Dependencies dependencies = dm.dependencies(a, w);
     assertNotNull(dependencies);
     assertEquals(dependencies.getAllArtifacts().size(), 3);
   }
 
+  @Test(enabled = true)
+  public void projectHasTransitivesParallelFetch() {
+    File cache = new File("target/test/deps");
+    FileTools.prune(cache);
+
+    Artifact a = new Artifact("org.savantbuild.test", "dependencies", "dependencies", "1.0", "jar");
+    ArtifactGroup group = new ArtifactGroup("run");
+    group.getArtifacts().add(a);
+
+    Dependencies d = new Dependencies();
+    d.getArtifactGroups().put("run", group);
+
+    File root = new File("test-deps/savant");
+    Workflow w = makeWorkflow(root);
+    w.getAttributes().put("fetchThreads", "4");
+
+    final Set<Artifact> found = new HashSet<Artifact>();
+    DefaultDependencyResolver dm = new DefaultDependencyResolver(new DefaultOutput());
+    Map<Artifact, File> results = dm.resolve(d, w, null, true, new DependencyListener() {
+      public void artifactFound(File file, Artifact artifact) {
+        found.add(artifact);
+      }
+
+      public void artifactCleaned(Artifact artifact) {
+      }
+
+      public void artifactPublished(Artifact artifact) {
+      }
+    });
+
+    assertEquals(results.size(), 4);
+    assertEquals(found, results.keySet());
+    assertTrue(results.containsKey(a));
+    assertTrue(results.containsKey(new Artifact("org.savantbuild.test", "major-compat", "major-compat", "2.0", "jar")));
+    assertTrue(results.containsKey(new Artifact("org.savantbuild.test", "minor-compat", "minor-compat", "1.1", "jar")));
+    assertTrue(results.containsKey(new Artifact("org.savantbuild.test", "patch-compat", "patch-compat", "1.0", "jar")));
+    for (File file : results.values()) {
+      assertTrue(file.isFile());
+    }
+  }
+
   @Test(enabled = true)
   public void missingDependencyFailure() {
     Artifact a = new Artifact("bad-group", "missing-project", "missing-artifact", "1.0", "jar");
@@ -275,13 +322,12 @@ public class DefaultDependencyResolverTest {
     assertEquals(files[4].getName(), "upgrade-versions");
 
     files = new File(cache, "org/savantbuild/test/dependencies/1.0").listFiles();
-    assertEquals(files.length, 5);
+    assertEquals(files.length, 4);
     Arrays.sort(files);
-    assertEquals(files[0].getName(), "dependencies-1.0-src.jar.neg");
-    assertEquals(files[1].getName(), "dependencies-1.0.jar");
-    assertEquals(files[2].getName(), "dependencies-1.0.jar.amd");
-    assertEquals(files[3].getName(), "dependencies-1.0.jar.amd.md5");
-    assertEquals(files[4].getName(), "dependencies-1.0.jar.md5");
+    assertEquals(files[0].getName(), "dependencies-1.0.jar");
+    assertEquals(files[1].getName(), "dependencies-1.0.jar.amd");
+    assertEquals(files[2].getName(), "dependencies-1.0.jar.amd.md5");
+    assertEquals(files[3].getName(), "dependencies-1.0.jar.md5");
 
     files = new File(cache, "org/savantbuild/test/major-compat/1.0").listFiles();
     assertEquals(files.length, 2);
@@ -290,13 +336,12 @@ public class DefaultDependencyResolverTest {
     assertEquals(files[1].getName(), "major-compat-1.0.jar.amd.md5");
 
     files = new File(cache, "org/savantbuild/test/major-compat/2.0").listFiles();
-    assertEquals(files.length, 5);
+    assertEquals(files.length, 4);
     Arrays.sort(files);
-    assertEquals(files[0].getName(), "major-compat-2.0-src.jar.neg");
-    assertEquals(files[1].getName(), "major-compat-2.0.jar");
-    assertEquals(files[2].getName(), "major-compat-2.0.jar.amd");
-    assertEquals(files[3].getName(), "major-compat-2.0.jar.amd.md5");
-    assertEquals(files[4].getName(), "major-compat-2.0.jar.md5");
+    assertEquals(files[0].getName(), "major-compat-2.0.jar");
+    assertEquals(files[1].getName(), "major-compat-2.0.jar.amd");
+    assertEquals(files[2].getName(), "major-compat-2.0.jar.amd.md5");
+    assertEquals(files[3].getName(), "major-compat-2.0.jar.md5");
 
     files = new File(cache, "org/savantbuild/test/minor-compat/1.0").listFiles();
     assertEquals(files.length, 2);
@@ -305,13 +350,12 @@ public class DefaultDependencyResolverTest {
     assertEquals(files[1].getName(), "minor-compat-1.0.jar.amd.md5");
 
     files = new File(cache, "org/savantbuild/test/minor-compat/1.1").listFiles();
-    assertEquals(files.length, 5);
+    assertEquals(files.length, 4);
     Arrays.sort(files);
-    assertEquals(files[0].getName(), "minor-compat-1.1-src.jar.neg");
-    assertEquals(files[1].getName(), "minor-compat-1.1.jar");
-    assertEquals(files[2].getName(), "minor-compat-1.1.jar.amd");
-    assertEquals(files[3].getName(), "minor-compat-1.1.jar.amd.md5");
-    assertEquals(files[4].getName(), "minor-compat-1.1.jar.md5");
+    assertEquals(files[0].getName(), "minor-compat-1.1.jar");
+    assertEquals(files[1].getName(), "minor-compat-1.1.jar.amd");
+    assertEquals(files[2].getName(), "minor-compat-1.1.jar.amd.md5");
+    assertEquals(files[3].getName(), "minor-compat-1.1.jar.md5");
 
     files = new File(cache, "org/savantbuild/test/patch-compat/1.0").listFiles();
     assertEquals(files.length, 2);
@@ -320,13 +364,12 @@ public class DefaultDependencyResolverTest {
     assertEquals(files[1].getName(), "patch-compat-1.0.jar.amd.md5");
 
     files = new File(cache, "org/savantbuild/test/patch-compat/1.0.1").listFiles();
-    assertEquals(files.length, 5);
+    assertEquals(files.length, 4);
     Arrays.sort(files);
-    assertEquals(files[0].getName(), "patch-compat-1.0.1-src.jar.neg");
-    assertEquals(files[1].getName(), "patch-compat-1.0.1.jar");
-    assertEquals(files[2].getName(), "patch-compat-1.0.1.jar.amd");
-    assertEquals(files[3].getName(), "patch-compat-1.0.1.jar.amd.md5");
-    assertEquals(files[4].getName(), "patch-compat-1.0.1.jar.md5");
+    assertEquals(files[0].getName(), "patch-compat-1.0.1.jar");
+    assertEquals(files[1].getName(), "patch-compat-1.0.1.jar.amd");
+    assertEquals(files[2].getName(), "patch-compat-1.0.1.jar.amd.md5");
+    assertEquals(files[3].getName(), "patch-compat-1.0.1.jar.md5");
   }
 
   @Test(enabled = true)
@@ -422,31 +465,28 @@ public class DefaultDependencyResolverTest {
     assertEquals(files[3].getName(), "patch-compat");
 
     files = new File(cache, "org/savantbuild/test/dependencies-with-groups/1.0").listFiles();
-    assertEquals(files.length, 5);
+    assertEquals(files.length, 4);
     Arrays.sort(files);
-    assertEquals(files[0].getName(), "dependencies-with-groups-1.0-src.jar.neg");
-    assertEquals(files[1].getName(), "dependencies-with-groups-1.0.jar");
-    assertEquals(files[2].getName(), "dependencies-with-groups-1.0.jar.amd");
-    assertEquals(files[3].getName(), "dependencies-with-groups-1.0.jar.amd.md5");
-    assertEquals(files[4].getName(), "dependencies-with-groups-1.0.jar.md5");
+    assertEquals(files[0].getName(), "dependencies-with-groups-1.0.jar");
+    assertEquals(files[1].getName(), "dependencies-with-groups-1.0.jar.amd");
+    assertEquals(files[2].getName(), "dependencies-with-groups-1.0.jar.amd.md5");
+    assertEquals(files[3].getName(), "dependencies-with-groups-1.0.jar.md5");
 
     files = new File(cache, "org/savantbuild/test/major-compat/2.0").listFiles();
-    assertEquals(files.length, 5);
+    assertEquals(files.length, 4);
     Arrays.sort(files);
-    assertEquals(files[0].getName(), "major-compat-2.0-src.jar.neg");
-    assertEquals(files[1].getName(), "major-compat-2.0.jar");
-    assertEquals(files[2].getName(), "major-compat-2.0.jar.amd");
-    assertEquals(files[3].getName(), "major-compat-2.0.jar.amd.md5");
-    assertEquals(files[4].getName(), "major-compat-2.0.jar.md5");
+    assertEquals(files[0].getName(), "major-compat-2.0.jar");
+    assertEquals(files[1].getName(), "major-compat-2.0.jar.amd");
+    assertEquals(files[2].getName(), "major-compat-2.0.jar.amd.md5");
+    assertEquals(files[3].getName(), "major-compat-2.0.jar.md5");
 
     files = new File(cache, "org/savantbuild/test/minor-compat/1.1").listFiles();
-    assertEquals(files.length, 5);
+    assertEquals(files.length, 4);
     Arrays.sort(files);
-    assertEquals(files[0].getName(), "minor-compat-1.1-src.jar.neg");
-    assertEquals(files[1].getName(), "minor-compat-1.1.jar");
-    assertEquals(files[2].getName(), "minor-compat-1.1.jar.amd");
-    assertEquals(files[3].getName(), "minor-compat-1.1.jar.amd.md5");
-    assertEquals(files[4].getName(), "minor-compat-1.1.jar.md5");
+    assertEquals(files[0].getName(), "minor-compat-1.1.jar");
+    assertEquals(files[1].getName(), "minor-compat-1.1.jar.amd");
+    assertEquals(files[2].getName(), "minor-compat-1.1.jar.amd.md5");
+    assertEquals(files[3].getName(), "minor-compat-1.1.jar.md5");
 
     files = new File(cache, "org/savantbuild/test/patch-compat/1.0").listFiles();
     assertEquals(files.length, 2, "Bad file list " + asList(files));
@@ -480,13 +520,12 @@ public class DefaultDependencyResolverTest {
     assertEquals(files[0].getName(), "dependencies");
 
     files = new File(cache, "org/savantbuild/test/dependencies/1.0").listFiles();
-    assertEquals(files.length, 5);
+    assertEquals(files.length, 4);
     Arrays.sort(files);
-    assertEquals(files[0].getName(), "dependencies-1.0-src.jar.neg");
-    assertEquals(files[1].getName(), "dependencies-1.0.jar");
-    assertEquals(files[2].getName(), "dependencies-1.0.jar.amd");
-    assertEquals(files[3].getName(), "dependencies-1.0.jar.amd.md5");
-    assertEquals(files[4].getName(), "dependencies-1.0.jar.md5");
+    assertEquals(files[0].getName(), "dependencies-1.0.jar");
+    assertEquals(files[1].getName(), "dependencies-1.0.jar.amd");
+    assertEquals(files[2].getName(), "dependencies-1.0.jar.amd.md5");
+    assertEquals(files[3].getName(), "dependencies-1.0.jar.md5");
   }
 
   @Test
@@ -514,13 +553,12 @@ public class DefaultDependencyResolverTest {
     assertEquals(files[0].getName(), "integration-build");
 
     files = new File(cache, "org/savantbuild/test/integration-build/2.1.1-{integration}").listFiles();
-    assertEquals(files.length, 5);
+    assertEquals(files.length, 4);
     Arrays.sort(files);
-    assertEquals(files[0].getName(), "integration-build-2.1.1-IB20080103144403111-src.jar.neg");
-    assertEquals(files[1].getName(), "integration-build-2.1.1-IB20080103144403111.jar");
-    assertEquals(files[2].getName(), "integration-build-2.1.1-IB20080103144403111.jar.amd");
-    assertEquals(files[3].getName(), "integration-build-2.1.1-IB20080103144403111.jar.amd.md5");
-    assertEquals(files[4].getName(), "integration-build-2.1.1-IB20080103144403111.jar.md5");
+    assertEquals(files[0].getName(), "integration-build-2.1.1-IB20080103144403111.jar");
+    assertEquals(files[1].getName(), "integration-build-2.1.1-IB20080103144403111.jar.amd");
+    assertEquals(files[2].getName(), "integration-build-2.1.1-IB20080103144403111.jar.amd.md5");
+    assertEquals(files[3].getName(), "integration-build-2.1.1-IB20080103144403111.jar.md5");
   }
 
   @Test
@@ -574,6 +612,68 @@ public class DefaultDependencyResolverTest {
     assertTrue(files.get(a).getAbsolutePath().endsWith("test-deps/savant/org/savantbuild/test/integration-build/2.1.1-{integration}/integration-build-2.1.1-IB20080103144403111.jar"));
   }
 
+  @Test
+  public void resolveTimeout() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+    server.createContext("/", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          // Done
+        }
+
+        exchange.close();
+      }
+    });
+    server.start();
+
+    try {
+      Artifact a = new Artifact("org.savantbuild.test", "major-compat", "major-compat", "1.0", "jar");
+      ArtifactGroup group = new ArtifactGroup("run");
+      group.getArtifacts().add(a);
+
+      Dependencies d = new Dependencies();
+      d.getArtifactGroups().put("run", group);
+
+      Workflow w = new Workflow();
+      w.getAttributes().put("resolveTimeout", "1");
+      w.getFetchProcesses().add(new Process(map("type", "url", "url", "http://localhost:" + server.getAddress().getPort())));
+      w.getPublishProcesses().add(new Process(map("type", "cache", "dir", "target/test/deps")));
+
+      long start = System.currentTimeMillis();
+      DefaultDependencyResolver dm = new DefaultDependencyResolver(new DefaultOutput());
+      try {
+        dm.resolve(d, w, null, false);
+        fail("Should have failed");
+      } catch (BuildException e) {
+        assertEquals(e.getErrors().getErrors(), asList("Still fetching the MetaData for artifact [" + a + "]"));
+      }
+
+      assertTrue(System.currentTimeMillis() - start < 5000);
+
+      // Listing the versions counts against the deadline as well
+      Artifact ib = new Artifact("org.savantbuild.test", "integration-build", "integration-build", "2.1.1-{integration}", "jar");
+      group.getArtifacts().clear();
+      group.getArtifacts().add(ib);
+      w.getFetchProcesses().get(0).getAttributes().put("listingCache", "false");
+
+      start = System.currentTimeMillis();
+      try {
+        dm.resolve(d, w, null, false);
+        fail("Should have failed");
+      } catch (BuildException e) {
+        assertEquals(e.getErrors().getErrors(), asList("Still fetching the version of artifact [" + ib + "]"));
+      }
+
+      assertTrue(System.currentTimeMillis() - start < 5000);
+    } finally {
+      latch.countDown();
+      server.stop(0);
+    }
+  }
+
   /**
    * Sets up a simple workflow that fetches via URLs and caches to the target dir.
    *
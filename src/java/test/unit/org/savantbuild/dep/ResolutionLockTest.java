@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.savantbuild.dep.graph.ArtifactGraph;
+import org.savantbuild.dep.workflow.WorkflowHandler;
+import org.savantbuild.domain.Artifact;
+import org.savantbuild.domain.ArtifactGroup;
+import org.savantbuild.domain.Context;
+import org.savantbuild.domain.Dependencies;
+import org.savantbuild.domain.Process;
+import org.savantbuild.domain.Workflow;
+import org.savantbuild.io.FileTools;
+import org.savantbuild.run.output.DefaultOutput;
+import org.testng.annotations.Test;
+
+import static org.savantbuild.TestTools.*;
+import static org.testng.Assert.*;
+
+/**
+ * <p>
+ * This class tests the resolution lock files.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class ResolutionLockTest {
+  @Test
+  public void lock() throws Exception {
+    File cache = new File("target/test/deps");
+    File locks = new File("target/test/locks");
+    FileTools.prune(cache);
+    FileTools.prune(locks);
+
+    Context context = new Context();
+    context.setLockDirectory(locks);
+
+    Workflow w = makeWorkflow();
+    DefaultDependencyResolver dm = new DefaultDependencyResolver(new DefaultOutput(), context);
+    Dependencies d = makeDependencies();
+    Map<Artifact, File> results = dm.resolve(d, w, null, true);
+    assertEquals(results.size(), 4);
+    assertEquals(locks.listFiles().length, 1);
+
+    // Load the lock directly
+    ResolutionLock lock = new ResolutionLock(new DefaultOutput(), locks);
+    WorkflowHandler handler = WorkflowHandler.build(w, new DefaultOutput());
+    String fingerprint = lock.fingerprint(makeDependencies(), w, new HashSet<String>(), true);
+    ArtifactGraph graph = lock.load(fingerprint, handler, new ResolutionContext());
+    assertNotNull(graph);
+    assertEquals(graph.getAllGraphNodesValues(), d.getGraph().getAllGraphNodesValues());
+    assertEquals(graph.getDependencies(makeArtifact()).getAllArtifacts(), d.getGraph().getDependencies(makeArtifact()).getAllArtifacts());
+
+    // Resolve from the lock
+    Dependencies locked = makeDependencies();
+    Map<Artifact, File> lockedResults = dm.resolve(locked, w, null, true);
+    assertEquals(lockedResults, results);
+
+    // Change the fingerprint
+    assertFalse(fingerprint.equals(lock.fingerprint(makeDependencies(), w, new HashSet<String>(), false)));
+
+    // Change an AMD file
+    File amd = new File(cache, "org/savantbuild/test/dependencies/1.0/dependencies-1.0.jar.amd");
+    FileTools.write(amd, FileTools.read(amd) + "\n");
+    assertNull(lock.load(fingerprint, handler, new ResolutionContext()));
+  }
+
+  @Test
+  public void integration() throws Exception {
+    ResolutionLock lock = new ResolutionLock(new DefaultOutput(), new File("target/test/locks"));
+    Dependencies d = new Dependencies();
+    d.getArtifactGroups().put("run", new ArtifactGroup("run"));
+    d.getArtifactGroups().get("run").getArtifacts().add(new Artifact("org.savantbuild.test", "integration-build",
+      "integration-build", "2.1.1-{integration}", "jar"));
+    assertNull(lock.fingerprint(d, makeWorkflow(), new HashSet<String>(), true));
+  }
+
+  private Artifact makeArtifact() {
+    return new Artifact("org.savantbuild.test", "dependencies", "dependencies", "1.0", "jar");
+  }
+
+  private Dependencies makeDependencies() {
+    Dependencies d = new Dependencies();
+    d.getArtifactGroups().put("run", new ArtifactGroup("run"));
+    d.getArtifactGroups().get("run").getArtifacts().add(makeArtifact());
+    return d;
+  }
+
+  private Workflow makeWorkflow() throws MalformedURLException {
+    Workflow w = new Workflow();
+    w.getFetchProcesses().add(new Process(map("type", "cache", "dir", "target/test/deps")));
+    w.getFetchProcesses().add(new Process(map("type", "url", "url", new File("test-deps/savant").toURI().toURL().toString())));
+    w.getPublishProcesses().add(new Process(map("type", "cache", "dir", "target/test/deps")));
+    return w;
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.graph;
+
+import java.util.List;
+
+import org.savantbuild.domain.Artifact;
+import org.savantbuild.domain.ArtifactID;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * <p>
+ * This tests the compact graph.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class CompactGraphTest {
+  @Test
+  public void addLink() throws Exception {
+    CompactGraph<String, String> graph = new CompactGraph<String, String>();
+    int foo = graph.addNode("foo");
+    int bar = graph.addNode("bar");
+    assertEquals(foo, graph.addNode("foo"));
+    assertEquals(-1, graph.getId("baz"));
+    assertEquals(2, graph.getAllGraphNodesValues().size());
+
+    graph.addLink("foo", "bar", "link1");
+    graph.addLink("foo", "bar", "link2");
+    assertEquals(2, graph.getOutboundCount(foo));
+    assertEquals(0, graph.getInboundCount(foo));
+    assertEquals(2, graph.getInboundCount(bar));
+    assertEquals("link1", graph.getLinkValue(graph.getOutboundLink(foo, 0)));
+    assertEquals("link2", graph.getLinkValue(graph.getInboundLink(bar, 1)));
+
+    // Links added after the index was built
+    int baz = graph.addNode("baz");
+    graph.addLink(bar, baz, "link3");
+    assertEquals(1, graph.getOutboundCount(bar));
+    assertEquals(foo, graph.getOrigin(graph.getInboundLink(bar, 0)));
+    assertEquals(baz, graph.getDestination(graph.getOutboundLink(bar, 0)));
+
+    GraphNode<String, String> node = graph.getGraphNode("bar");
+    assertEquals(2, node.getInboundLinksList().size());
+    assertEquals("foo", node.getInboundLinksList().get(0).origin.getValue());
+    assertEquals("baz", node.getOutboundLinksList().get(0).destination.getValue());
+  }
+
+  @Test
+  public void removeLink() throws Exception {
+    CompactGraph<String, String> graph = new CompactGraph<String, String>();
+    graph.addLink("one", "two", "link");
+    graph.addLink("one", "three", "link");
+    graph.addLink("two", "three", "link");
+    int one = graph.getId("one");
+    int three = graph.getId("three");
+    assertEquals(2, graph.getInboundCount(three));
+
+    graph.removeLink("one", "three", "link");
+    assertEquals(1, graph.getOutboundCount(one));
+    assertEquals(1, graph.getInboundCount(three));
+    assertEquals("two", graph.getValue(graph.getOrigin(graph.getInboundLink(three, 0))));
+
+    // Change the value in place
+    int link = graph.getInboundLink(three, 0);
+    graph.setLinkValue(link, "better");
+    assertEquals("better", graph.getInboundLinks("three").get(0).value);
+    assertEquals("better", graph.getOutboundLinks("two").get(0).value);
+
+    // Removed links stay removed when the index is rebuilt
+    graph.addLink("three", "four", "link");
+    assertEquals(1, graph.getOutboundCount(one));
+    assertEquals(1, graph.getInboundCount(three));
+    assertNull(graph.getOutboundLinks("five"));
+  }
+
+  @Test
+  public void relink() throws Exception {
+    CompactGraph<String, String> graph = new CompactGraph<String, String>();
+    for (int i = 0; i < 1000; i++) {
+      graph.addLink("node" + i, "node" + (i + 1), "1.0");
+      graph.addLink("node" + i, "common", "1." + i);
+    }
+
+    int common = graph.getId("common");
+    assertEquals(1000, graph.getInboundCount(common));
+    assertEquals(1, graph.getIndexBuilds());
+
+    // Relinking the way the mediation does uses the index that was already built
+    for (int i = 0; i < 1000; i++) {
+      graph.removeLink("node" + i, "common", "1." + i);
+      graph.addLink("node" + i, "common", "2.0");
+      assertEquals(2, graph.getOutboundCount(graph.getId("node" + i)));
+    }
+
+    assertEquals(1, graph.getIndexBuilds());
+    assertEquals(1000, graph.getInboundCount(common));
+    assertEquals("node0", graph.getValue(graph.getOrigin(graph.getInboundLink(common, 0))));
+    assertEquals("2.0", graph.getLinkValue(graph.getInboundLink(common, 999)));
+
+    // New nodes and links after the index was built
+    graph.addLink("common", "new", "1.0");
+    assertEquals(1, graph.getOutboundCount(common));
+    assertEquals(1, graph.getInboundCount(graph.getId("new")));
+    assertEquals(1, graph.getIndexBuilds());
+  }
+
+  @Test
+  public void getPaths() throws Exception {
+    CompactGraph<String, String> graph = new CompactGraph<String, String>();
+    graph.addLink("one", "two", "link");
+    graph.addLink("two", "three", "link");
+    graph.addLink("three", "four", "link");
+    graph.addLink("one", "four", "link");
+    graph.addLink("two", "four", "link");
+    graph.addLink("three", "one", "link");
+
+    List<GraphPath<String>> paths = graph.getPaths("one", "four");
+    assertEquals(3, paths.size());
+    assertEquals(4, paths.get(0).getPath().size());
+    assertEquals(3, paths.get(1).getPath().size());
+    assertEquals(2, paths.get(2).getPath().size());
+    assertEquals("three", paths.get(0).getPath().get(2));
+    assertNull(graph.getPaths("one", "five"));
+  }
+
+  @Test
+  public void artifactGraph() throws Exception {
+    Artifact a1 = new Artifact("group", "project", "artifact1", "1.0", "jar");
+    Artifact a2 = new Artifact("group", "project", "artifact2", "1.0", "jar");
+    Artifact a3 = new Artifact("group", "project", "artifact3", "1.0", "jar");
+    Artifact a4 = new Artifact("group", "project", "artifact4", "1.0", "jar");
+
+    ArtifactGraph ag = new ArtifactGraph(a1);
+    ag.addLink(a1.getId(), a2.getId(), new ArtifactLink(a1.getVersion(), a2.getVersion(), null, "compile", null));
+    ag.addLink(a1.getId(), a3.getId(), new ArtifactLink(a1.getVersion(), a3.getVersion(), null, "run", null));
+    ag.addLink(a3.getId(), a4.getId(), new ArtifactLink(a3.getVersion(), a4.getVersion(), null, "compile", null));
+
+    CompactArtifactGraph compact = new CompactArtifactGraph(ag);
+    assertEquals(0, compact.getId(a1.getId()));
+    assertEquals(4, compact.getNodeCount());
+    assertEquals(ag.getAllGraphNodesValues(), compact.getAllGraphNodesValues());
+    assertEquals(ag.getDependencies(a1).getAllArtifacts(), compact.getDependencies(a1).getAllArtifacts());
+    assertEquals(ag.getDependencies(a3).getAllArtifacts(), compact.getDependencies(a3).getAllArtifacts());
+    assertEquals(0, compact.getDependencies(a4).getAllArtifacts().size());
+
+    List<GraphPath<ArtifactID>> paths = compact.getPaths(a1.getId(), a4.getId());
+    assertEquals(1, paths.size());
+    assertEquals(ag.getPaths(a1.getId(), a4.getId()).get(0).getPath(), paths.get(0).getPath());
+  }
+
+  @Test
+  public void mediate() throws Exception {
+    Artifact root = new Artifact("group", "project", "root", "1.0", "jar");
+    Artifact a1 = new Artifact("group", "project", "artifact1", "1.0", "jar");
+    Artifact a2 = new Artifact("group", "project", "artifact2", "1.0", "jar");
+    Artifact a3 = new Artifact("group", "project", "artifact3", "1.0", "jar");
+
+    CompactArtifactGraph graph = new CompactArtifactGraph(root);
+    int r = graph.getId(root.getId());
+    int n1 = graph.addNode(a1.getId());
+    int n2 = graph.addNode(a2.getId());
+    int n3 = graph.addNode(a3.getId());
+    graph.addLink(r, n1, new ArtifactLink("1.0", "1.0", null, "compile", null));
+    graph.addLink(r, n2, new ArtifactLink("1.0", "1.0", null, "compile", null));
+    graph.addLink(n1, n3, new ArtifactLink("1.0", "1.0", null, "compile", null));
+    int best = graph.addLink(n2, n3, new ArtifactLink("1.0", "1.1", null, "run", null));
+    graph.addLink(n3, n1, new ArtifactLink("1.0", "1.0", null, "compile", null));
+    graph.addLink(n3, n2, new ArtifactLink("1.1", "1.0", null, "compile", null));
+
+    graph.mediate(n3, graph.getLinkValue(best), "minor");
+    assertEquals(2, graph.getInboundCount(n3));
+    for (int i = 0; i < 2; i++) {
+      ArtifactLink link = graph.getLinkValue(graph.getInboundLink(n3, i));
+      assertEquals("1.1", link.getDependencyVersion());
+      assertEquals("minor", link.getCompatibility());
+    }
+
+    assertEquals("compile", graph.getLinkValue(graph.getInboundLink(n3, 0)).getType());
+    assertEquals(1, graph.getOutboundCount(n3));
+    assertEquals(n2, graph.getDestination(graph.getOutboundLink(n3, 0)));
+    assertEquals(1, graph.getIndexBuilds());
+  }
+}
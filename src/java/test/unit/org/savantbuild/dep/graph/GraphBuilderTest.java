@@ -16,6 +16,7 @@
 package org.savantbuild.dep.graph;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -76,6 +77,10 @@ public class GraphBuilderTest {
     // Including the project node.
     assertEquals(graph.getAllGraphNodesValues().size(), 7);
 
+    // Each artifact's meta data is only fetched once
+    assertEquals(resolutionContext.getMetaDataMisses(), 6);
+    assertEquals(resolutionContext.getMetaDataHits(), 0);
+
     Dependencies artDeps = graph.getDependencies(transArtifact);
     assertEquals(artDeps.getArtifactGroups().size(), 1);
     assertEquals(artDeps.getAllArtifacts().size(), 2);
@@ -341,4 +346,76 @@ public class GraphBuilderTest {
     // Including the project node.
     assertEquals(graph.getAllGraphNodesValues().size(), 6);
   }
+
+  @Test(enabled = true)
+  public void metaDataReused() throws Exception {
+    File cache = new File("target/test/deps");
+    FileTools.prune(cache);
+
+    Dependencies d = new Dependencies();
+    for (String type : new String[]{"compile", "run"}) {
+      ArtifactGroup group = new ArtifactGroup(type);
+      group.getArtifacts().add(new Artifact("org.savantbuild.test", "dependencies", "dependencies", "1.0", "jar"));
+      d.getArtifactGroups().put(type, group);
+    }
+
+    DefaultOutput output = new DefaultOutput();
+    WorkflowHandler wh = new WorkflowHandler(new FetchWorkflowHandler(output), new PublishWorkflowHandler());
+    wh.getFetchWorkflowHandler().getProcesses().add(new URLProcessHandler(new DefaultOutput(), map("url", new File("test-deps/savant").toURI().toURL().toString())));
+    wh.getPublishWorkflowHandler().getProcesses().add(new CacheProcess(new DefaultOutput(), map("dir", "target/test/deps")));
+
+    ResolutionContext resolutionContext = new ResolutionContext();
+    GraphBuilder builder = new GraphBuilder(new DefaultOutput(), d, wh, true);
+    ArtifactGraph graph = builder.buildGraph(resolutionContext);
+    assertEquals(graph.getInboundLinks(new ArtifactID("org.savantbuild.test", "dependencies", "dependencies", "jar")).size(), 2);
+    assertEquals(resolutionContext.getMetaDataMisses(), 4);
+    assertEquals(resolutionContext.getMetaDataHits(), 1);
+  }
+
+  @Test(enabled = true)
+  public void concurrentMatchesSerial() throws Exception {
+    ArtifactGraph serial = build(1);
+    ArtifactGraph concurrent = build(4);
+
+    assertEquals(concurrent.getAllGraphNodesValues(), serial.getAllGraphNodesValues());
+    for (ArtifactID id : serial.getAllGraphNodesValues()) {
+      assertEquals(links(concurrent.getInboundLinks(id)), links(serial.getInboundLinks(id)));
+      assertEquals(links(concurrent.getOutboundLinks(id)), links(serial.getOutboundLinks(id)));
+    }
+  }
+
+  private ArtifactGraph build(int threads) throws Exception {
+    File cache = new File("target/test/deps");
+    FileTools.prune(cache);
+
+    Artifact upgrade = new Artifact("org.savantbuild.test", "upgrade-versions", "upgrade-versions", "1.0", "jar");
+    ArtifactGroup group = new ArtifactGroup("run");
+    group.getArtifacts().add(upgrade);
+
+    Dependencies d = new Dependencies();
+    d.getArtifactGroups().put("run", group);
+
+    DefaultOutput output = new DefaultOutput();
+    WorkflowHandler wh = new WorkflowHandler(new FetchWorkflowHandler(output), new PublishWorkflowHandler());
+    wh.getFetchWorkflowHandler().getProcesses().add(new URLProcessHandler(new DefaultOutput(), map("url", new File("test-deps/savant").toURI().toURL().toString())));
+    wh.getPublishWorkflowHandler().getProcesses().add(new CacheProcess(new DefaultOutput(), map("dir", "target/test/deps")));
+
+    GraphBuilder builder = new GraphBuilder(new DefaultOutput(), d, wh, true, threads);
+    ResolutionContext resolutionContext = new ResolutionContext();
+    try {
+      return builder.buildGraph(resolutionContext);
+    } finally {
+      resolutionContext.shutdown();
+    }
+  }
+
+  private List<String> links(List<GraphLink<ArtifactID, ArtifactLink>> links) {
+    List<String> result = new ArrayList<String>();
+    for (GraphLink<ArtifactID, ArtifactLink> link : links) {
+      result.add(link.origin.getValue() + "->" + link.destination.getValue() + " " + link.value.getDependentVersion() +
+        " " + link.value.getDependencyVersion() + " " + link.value.getType() + " " + link.value.getCompatibility());
+    }
+
+    return result;
+  }
 }
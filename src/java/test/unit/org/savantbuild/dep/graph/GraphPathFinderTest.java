@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.graph;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * <p>
+ * This tests the graph path finder.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class GraphPathFinderTest {
+  @Test
+  public void shortestFirst() throws Exception {
+    HashGraph<String, String> graph = new HashGraph<String, String>();
+    graph.addLink("one", "two", "link");
+    graph.addLink("two", "three", "link");
+    graph.addLink("three", "four", "link");
+    graph.addLink("one", "four", "link");
+    graph.addLink("two", "four", "link");
+    graph.addLink("one", "five", "link");
+
+    GraphPathFinder<String, String> finder = new GraphPathFinder<String, String>(graph);
+    List<GraphPath<String>> paths = finder.getShortestPaths("one", "four", 10);
+    assertEquals(3, paths.size());
+    assertEquals(Arrays.asList("one", "four"), paths.get(0).getPath());
+    assertEquals(Arrays.asList("one", "two", "four"), paths.get(1).getPath());
+    assertEquals(Arrays.asList("one", "two", "three", "four"), paths.get(2).getPath());
+
+    assertEquals(2, finder.getShortestPaths("one", "four", 2).size());
+    assertEquals(0, finder.getShortestPaths("five", "four", 10).size());
+    assertNull(finder.getShortestPaths("one", "six", 10));
+    assertEquals((Integer) 1, finder.getDistances("four").get("one"));
+  }
+
+  @Test
+  public void cyclic() throws Exception {
+    HashGraph<String, String> graph = new HashGraph<String, String>();
+    graph.addLink("one", "two", "link");
+    graph.addLink("two", "one", "link");
+    graph.addLink("two", "three", "link");
+
+    GraphPathFinder<String, String> finder = new GraphPathFinder<String, String>(graph);
+    List<GraphPath<String>> paths = finder.getShortestPaths("one", "three", 10);
+    assertEquals(1, paths.size());
+    assertEquals(Arrays.asList("one", "two", "three"), paths.get(0).getPath());
+  }
+
+  /**
+   * Builds a ladder with 2^20 paths between the ends and makes sure only the requested number is built.
+   */
+  @Test
+  public void bounded() throws Exception {
+    HashGraph<String, String> graph = new HashGraph<String, String>();
+    String previous = "start";
+    for (int i = 0; i < 20; i++) {
+      graph.addLink(previous, "left" + i, "link");
+      graph.addLink(previous, "right" + i, "link");
+      graph.addLink("left" + i, "join" + i, "link");
+      graph.addLink("right" + i, "join" + i, "link");
+      previous = "join" + i;
+    }
+
+    GraphPathFinder<String, String> finder = new GraphPathFinder<String, String>(graph);
+    List<GraphPath<String>> paths = finder.getShortestPaths("start", previous, 5);
+    assertEquals(5, paths.size());
+    assertEquals(41, paths.get(0).getPath().size());
+    assertEquals(Arrays.asList("start", "left0", "join0"), paths.get(0).getPath().subList(0, 3));
+  }
+}
@@ -63,6 +63,33 @@ public class HashGraphTest {
     assertEquals("link", link.value);
   }
 
+  @Test
+  public void removeLink() throws Exception {
+    HashGraph<String, String> graph = new HashGraph<String, String>();
+    graph.addLink("one", "four", "link1");
+    graph.addLink("two", "four", "link1");
+    graph.addLink("one", "four", "link2");
+    graph.addLink("three", "four", "link1");
+
+    graph.removeLink("one", "four", "link1");
+    graph.addLink("one", "four", "link3");
+    List<GraphLink<String, String>> links = graph.getInboundLinks("four");
+    assertEquals(4, links.size());
+    assertEquals("two", links.get(0).origin.getValue());
+    assertEquals("link2", links.get(1).value);
+    assertEquals("three", links.get(2).origin.getValue());
+    assertEquals("link3", links.get(3).value);
+
+    GraphNode<String, String> one = graph.getGraphNode("one");
+    GraphNode<String, String> four = graph.getGraphNode("four");
+    assertEquals("link2", one.getOutboundLink(four).value);
+    assertEquals("link2", four.getInboundLink(one).value);
+    assertFalse(four.removeInboundLink(one, "link1"));
+    assertTrue(four.removeInboundLink(one, "link2"));
+    assertEquals("link3", four.getInboundLink(one).value);
+    assertNull(four.getOutboundLink(one));
+  }
+
   @Test
   public void getPaths() throws Exception {
     HashGraph<String, String> graph = new HashGraph<String, String>();
@@ -19,6 +19,7 @@ import org.savantbuild.dep.graph.ArtifactGraph;
 import org.savantbuild.dep.graph.ArtifactLink;
 import org.savantbuild.domain.Artifact;
 import org.savantbuild.domain.ArtifactGroup;
+import org.savantbuild.domain.ArtifactID;
 import org.savantbuild.domain.Dependencies;
 import org.savantbuild.run.output.DefaultOutput;
 import org.savantbuild.util.ErrorList;
@@ -89,4 +90,45 @@ public class CompatibilityVerifierTest {
     assertEquals(graph.getOutboundLinks(middle1.getId()).get(0).value.getDependentVersion(), "1.1");
     assertEquals(graph.getOutboundLinks(middle1.getId()).get(0).value.getDependencyVersion(), "1.0");
   }
+
+  /**
+   * Two incompatible versions of an artifact that are at the bottom of a ladder with 2^20 paths. The error only
+   * contains the shortest paths.
+   */
+  @Test
+  public void errorPathsBounded() {
+    CompatibilityVerifier verifier = new CompatibilityVerifier(new DefaultOutput());
+
+    Artifact project = new Artifact("project", "project", "art", "1.0", "jar");
+    Artifact top = new Artifact("top", "top", "art", "1.0", "jar");
+    Artifact dep = new Artifact("dep", "dep", "art", "1.0", "jar");
+
+    Dependencies deps = new Dependencies();
+    deps.getArtifactGroups().put("compile", new ArtifactGroup("compile"));
+    deps.getArtifactGroups().get("compile").getArtifacts().add(top);
+
+    ArtifactGraph graph = new ArtifactGraph(project);
+    graph.addLink(project.getId(), top.getId(), new ArtifactLink("1.0", "1.0", null, "compile", "minor"));
+    graph.addLink(top.getId(), dep.getId(), new ArtifactLink("1.0", "1.0", null, "compile", "minor"));
+
+    ArtifactID previous = top.getId();
+    for (int i = 0; i < 20; i++) {
+      ArtifactID left = new ArtifactID("left", "left", "art" + i, "jar");
+      ArtifactID right = new ArtifactID("right", "right", "art" + i, "jar");
+      ArtifactID join = new ArtifactID("join", "join", "art" + i, "jar");
+      graph.addLink(previous, left, new ArtifactLink("1.0", "1.0", null, "compile", "minor"));
+      graph.addLink(previous, right, new ArtifactLink("1.0", "1.0", null, "compile", "minor"));
+      graph.addLink(left, join, new ArtifactLink("1.0", "1.0", null, "compile", "minor"));
+      graph.addLink(right, join, new ArtifactLink("1.0", "1.0", null, "compile", "minor"));
+      previous = join;
+    }
+    graph.addLink(previous, dep.getId(), new ArtifactLink("1.0", "2.0", null, "compile", "minor"));
+
+    ErrorList errors = verifier.verifyCompatibility(deps, graph, null);
+    assertEquals(errors.size(), 1);
+
+    String error = errors.getErrors().get(0);
+    assertTrue(error.contains("\t\t[top:top:art:jar] -> [dep:dep:art:jar]\n"), error);
+    assertTrue(error.contains("(Only the 10 shortest paths are shown)"), error);
+  }
 }
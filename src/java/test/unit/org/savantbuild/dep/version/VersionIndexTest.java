@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.version;
+
+import java.util.HashSet;
+
+import org.savantbuild.domain.Artifact;
+import org.testng.annotations.Test;
+
+import static java.util.Arrays.*;
+import static org.testng.Assert.*;
+
+/**
+ * <p>
+ * This tests the version index.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class VersionIndexTest {
+  @Test
+  public void latest() throws Exception {
+    VersionIndex index = new VersionIndex();
+    Artifact artifact = new Artifact("group", "project", "name", "{latest}", "jar");
+    assertFalse(index.hasVersions());
+    assertNull(index.latest(artifact));
+
+    index.setVersions(new HashSet<String>(asList("1.0", "1.10", "1.2", "bad..version", "name-2.0.jar", "other-3.0.jar")));
+    assertTrue(index.hasVersions());
+    assertEquals(index.latest(artifact), "2.0");
+
+    Artifact other = new Artifact("group", "project", "other", "{latest}", "jar");
+    assertEquals(index.latest(other), "3.0");
+
+    index.setVersions(new HashSet<String>(asList("1.0", "1.10", "1.2")));
+    assertEquals(index.latest(artifact), "1.10");
+  }
+
+  @Test
+  public void bestIntegration() throws Exception {
+    VersionIndex index = new VersionIndex();
+    Artifact artifact = new Artifact("group", "project", "name", "1.0-{integration}", "jar");
+    assertFalse(index.hasIntegrations("1.0"));
+    assertNull(index.bestIntegration(artifact));
+
+    index.setIntegrations("1.0", new HashSet<String>(asList("name-1.0-IB2.jar", "name-1.0-IB10.jar",
+      "name-1.0-IB10.jar.md5", "name-1.0-IBbad.jar", "other-1.0-IB20.jar")));
+    assertTrue(index.hasIntegrations("1.0"));
+    assertEquals(index.bestIntegration(artifact), "1.0-IB10");
+
+    Artifact other = new Artifact("group", "project", "other", "1.0-{integration}", "jar");
+    assertEquals(index.bestIntegration(other), "1.0-IB20");
+
+    Artifact missing = new Artifact("group", "project", "missing", "1.0-{integration}", "jar");
+    assertNull(index.bestIntegration(missing));
+  }
+
+  @Test
+  public void forProject() throws Exception {
+    VersionIndex index = VersionIndex.forProject("location", "group", "project");
+    assertSame(VersionIndex.forProject("location", "group", "project"), index);
+    assertNotSame(VersionIndex.forProject("other", "group", "project"), index);
+
+    VersionIndex.invalidate("location", "group", "project");
+    assertNotSame(VersionIndex.forProject("location", "group", "project"), index);
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.workflow.process;
+
+import java.io.File;
+import java.util.List;
+
+import org.savantbuild.domain.Artifact;
+import org.savantbuild.domain.Process;
+import org.savantbuild.domain.Workflow;
+import org.savantbuild.domain.Workflows;
+import org.savantbuild.io.FileTools;
+import org.savantbuild.run.output.DefaultOutput;
+import org.testng.annotations.Test;
+
+import static org.savantbuild.TestTools.*;
+import static org.testng.Assert.*;
+
+/**
+ * <p>
+ * This tests the cache cleaner.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class CacheCleanerTest {
+  @Test
+  public void clean() throws Exception {
+    File dir = new File("target/test/deps");
+    FileTools.prune(dir);
+
+    File one = version(dir, "1.0", 100, 3000);
+    File two = version(dir, "2.0", 100, 2000);
+    File three = version(dir, "3.0", 100, 1000);
+    File neg = new File(three, "project-3.0-src.jar.neg");
+    neg.createNewFile();
+    File stale = new File(three, ".project-3.0.jar123.tmp");
+    stale.createNewFile();
+    stale.setLastModified(System.currentTimeMillis() - 2 * 24 * 60 * 60 * 1000);
+    three.setLastModified(System.currentTimeMillis() - 1000 * 1000);
+    File leftover = new File(dir, "org/savantbuild/test/project/.4.0.1.deleted");
+    leftover.mkdirs();
+
+    // Fetching the oldest version makes it the most recently used
+    CacheProcess process = new CacheProcess(new DefaultOutput(), map("dir", "target/test/deps"));
+    Artifact artifact = new Artifact("org.savantbuild.test", "project", "project", "1.0", "jar");
+    assertNotNull(process.fetch(artifact, "project-1.0.jar", null));
+
+    assertEquals(new CacheCleaner(new DefaultOutput(), "target/test/deps", 300).clean(), 0);
+    assertFalse(neg.exists());
+    assertFalse(leftover.exists());
+    assertFalse(stale.exists());
+
+    assertEquals(new CacheCleaner(new DefaultOutput(), "target/test/deps", 150).clean(), 200);
+    assertTrue(one.isDirectory());
+    assertFalse(two.exists());
+    assertFalse(three.exists());
+    assertEquals(new File(dir, "org/savantbuild/test/project").list().length, 1);
+  }
+
+  @Test
+  public void blobs() throws Exception {
+    File dir = new File("target/test/deps");
+    FileTools.prune(dir);
+
+    // Two versions share the same blob and the third has its own
+    CacheProcess process = new CacheProcess(new DefaultOutput(), map("dir", "target/test/deps", "blobs", "true"));
+    File shared = new File("target/test/blob-shared.jar");
+    FileTools.write(shared, new String(new char[100]).replace('\0', 'a'));
+    File own = new File("target/test/blob-own.jar");
+    FileTools.write(own, new String(new char[100]).replace('\0', 'b'));
+    File one = publish(process, "1.0", shared, 3000);
+    File two = publish(process, "2.0", shared, 2000);
+    File three = publish(process, "3.0", own, 1000);
+    File blobs = new File(dir, ".blobs");
+    assertEquals(blobs.list().length, 2);
+
+    // A blob without any links is deleted even if the cache is under the budget
+    File unused = new File(blobs, "ff/ffffffffffffffffffffffffffffffff");
+    unused.getParentFile().mkdirs();
+    FileTools.write(unused, "unused");
+    long budget = shared.length() + own.length();
+    assertEquals(new CacheCleaner(new DefaultOutput(), "target/test/deps", budget).clean(), 6);
+    assertFalse(unused.exists());
+    assertTrue(one.isDirectory());
+
+    // Both versions that link to the shared blob are evicted before the space is freed
+    assertEquals(new CacheCleaner(new DefaultOutput(), "target/test/deps", own.length()).clean(), shared.length());
+    assertFalse(one.exists());
+    assertFalse(two.exists());
+    assertTrue(three.isDirectory());
+    assertEquals(blobs.list().length, 1);
+    assertEquals(new CacheCleaner(new DefaultOutput(), "target/test/deps", own.length()).clean(), 0);
+  }
+
+  @Test
+  public void forWorkflows() {
+    Workflows workflows = new Workflows();
+    Workflow workflow = new Workflow();
+    workflow.getFetchProcesses().add(new Process(map("type", "cache", "dir", "target/test/deps", "maxSize", "1g")));
+    workflow.getFetchProcesses().add(new Process(map("type", "url", "url", "http://localhost")));
+    workflow.getPublishProcesses().add(new Process(map("type", "cache", "dir", "target/test/deps", "maxSize", "1g")));
+    workflow.getPublishProcesses().add(new Process(map("type", "cache", "dir", "target/test/other")));
+    workflows.getWorkflows().put(null, workflow);
+
+    List<CacheCleaner> cleaners = CacheCleaner.forWorkflows(new DefaultOutput(), workflows, false);
+    assertEquals(cleaners.size(), 1);
+    assertTrue(CacheCleaner.forWorkflows(new DefaultOutput(), workflows, true).isEmpty());
+  }
+
+  private File publish(CacheProcess process, String version, File file, int age) {
+    Artifact artifact = new Artifact("org.savantbuild.test", "project", "project", version, "jar");
+    File published = process.publish(artifact, artifact.getArtifactFile(), file);
+    File versionDir = published.getParentFile();
+    versionDir.setLastModified(System.currentTimeMillis() - age * 1000L);
+    return versionDir;
+  }
+
+  private File version(File dir, String version, int size, int age) throws Exception {
+    File versionDir = new File(dir, "org/savantbuild/test/project/" + version);
+    versionDir.mkdirs();
+    FileTools.write(new File(versionDir, "project-" + version + ".jar"), new String(new char[size]).replace('\0', 'a'));
+    versionDir.setLastModified(System.currentTimeMillis() - age * 1000L);
+    return versionDir;
+  }
+}
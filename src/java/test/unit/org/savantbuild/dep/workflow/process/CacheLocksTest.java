@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.workflow.process;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.savantbuild.io.FileTools;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * <p>
+ * This tests the cache locks.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class CacheLocksTest {
+  @Test
+  public void lock() throws Exception {
+    File dir = new File("target/test/deps");
+    FileTools.prune(dir);
+
+    final CacheLocks locks = CacheLocks.forDirectory(dir);
+    assertSame(CacheLocks.forDirectory(new File("target/test/deps")), locks);
+
+    // The lock is reentrant for the same thread
+    locks.lock("org/savantbuild/test/project/1.0");
+    locks.lock("org/savantbuild/test/project/1.0");
+    locks.unlock("org/savantbuild/test/project/1.0");
+    assertEquals(new File(dir, ".locks").list().length, 1);
+
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(1);
+    final AtomicBoolean locked = new AtomicBoolean();
+    Thread thread = new Thread() {
+      public void run() {
+        started.countDown();
+        locks.lock("org/savantbuild/test/project/1.0");
+        locked.set(true);
+        locks.unlock("org/savantbuild/test/project/1.0");
+        done.countDown();
+      }
+    };
+    thread.start();
+
+    // The other thread waits until the lock is released
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+    assertFalse(locked.get());
+
+    locks.unlock("org/savantbuild/test/project/1.0");
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertTrue(locked.get());
+  }
+}
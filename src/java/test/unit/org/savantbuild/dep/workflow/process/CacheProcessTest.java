@@ -16,8 +16,11 @@
 package org.savantbuild.dep.workflow.process;
 
 import java.io.File;
+import java.io.FileOutputStream;
 
+import org.savantbuild.dep.xml.ArtifactTools;
 import org.savantbuild.domain.Artifact;
+import org.savantbuild.domain.ArtifactMetaData;
 import org.savantbuild.io.FileTools;
 import org.savantbuild.run.output.DefaultOutput;
 import org.testng.annotations.Test;
@@ -89,6 +92,9 @@ public class CacheProcessTest {
     forPath = new Artifact("org.savantbuild.test", "integration-build", "integration-build", "2.1.1", "jar");
     process.deleteIntegrationBuilds(forPath);
     assertFalse(f.isFile());
+
+    // The directory is renamed out of the way before it is pruned and nothing is left behind
+    assertEquals(new File(cache, "org/savantbuild/test/integration-build").list().length, 0);
   }
 
   /**
@@ -113,4 +119,121 @@ public class CacheProcessTest {
     artifact = new Artifact("org.savantbuild.test", "integration-build", "integration-build", "{latest}", "jar");
     assertEquals(process.determineVersion(artifact), "2.1.1-{integration}");
   }
+
+  @Test
+  public void staging() throws Exception {
+    FileTools.prune(new File("target/test/deps"));
+
+    CacheProcess process = new CacheProcess(new DefaultOutput(), map("dir", "target/test/deps"));
+    Artifact artifact = new Artifact("org.savantbuild.test", "integration-build", "integration-build", "2.1.1-{integration}", "jar");
+    File staging = process.stagingFile(artifact, "integration-build-2.1.1-IB20080103144403111.jar");
+    assertTrue(staging.isFile());
+
+    // Staging files aren't listed as versions
+    assertNull(process.determineVersion(artifact));
+    new File("target/test/deps/org/savantbuild/test/integration-build/.2.2.deleted").mkdirs();
+    artifact = new Artifact("org.savantbuild.test", "integration-build", "integration-build", "{latest}", "jar");
+    assertEquals(process.determineVersion(artifact), "2.1.1-{integration}");
+
+    process.discardStagingFile(staging);
+    assertFalse(staging.exists());
+  }
+
+  @Test
+  public void metaDataIndex() throws Exception {
+    File cache = new File("target/test/deps");
+    FileTools.prune(cache);
+
+    CacheProcess process = new CacheProcess(new DefaultOutput(), map("dir", "target/test/deps"));
+    Artifact artifact = new Artifact("org.savantbuild.test", "dependencies", "dependencies", "1.0", "jar");
+
+    File amdFile = new File("test-deps/savant/org/savantbuild/test/dependencies/1.0/dependencies-1.0.jar.amd");
+    process.publish(artifact, artifact.getArtifactMetaDataFile() + ".md5", new File(amdFile.getPath() + ".md5"));
+    process.publish(artifact, artifact.getArtifactMetaDataFile(), amdFile);
+    assertTrue(new File(cache, ".amd-index").isFile());
+
+    ArtifactMetaData expected = ArtifactTools.parseArtifactMetaData(amdFile);
+    ArtifactMetaData amd = process.fetchMetaData(artifact, null);
+    assertEquals(amd.getCompatibility(), expected.getCompatibility());
+    assertEquals(amd.getDependencies(), expected.getDependencies());
+
+    // Read the index from disk
+    String md5 = FileTools.md5(amdFile).sum;
+    ArtifactMetaDataIndex index = new ArtifactMetaDataIndex(new File(cache, ".amd-index"));
+    String path = "org/savantbuild/test/dependencies/1.0/dependencies-1.0.jar.amd";
+    amd = index.get(path, md5);
+    assertNotNull(amd);
+    assertEquals(amd.getDependencies(), expected.getDependencies());
+    assertNull(index.get(path, "00000000000000000000000000000000"));
+    assertNull(index.get("org/savantbuild/test/missing/1.0/missing-1.0.jar.amd", md5));
+  }
+
+  @Test
+  public void metaDataIndexRepair() throws Exception {
+    File cache = new File("target/test/deps");
+    FileTools.prune(cache);
+    cache.mkdirs();
+
+    File amdFile = new File("test-deps/savant/org/savantbuild/test/dependencies/1.0/dependencies-1.0.jar.amd");
+    ArtifactMetaData expected = ArtifactTools.parseArtifactMetaData(amdFile);
+    File file = new File(cache, ".amd-index");
+    ArtifactMetaDataIndex index = new ArtifactMetaDataIndex(file);
+    index.put("a.amd", "1", expected);
+    index.put("b.amd", "2", expected);
+    long length = file.length();
+
+    // A partial record at the end is skipped and the file isn't truncated
+    FileOutputStream fos = new FileOutputStream(file, true);
+    fos.write(new byte[]{0, 0, 1, 0, 1, 2});
+    fos.close();
+
+    ArtifactMetaDataIndex other = new ArtifactMetaDataIndex(file);
+    assertEquals(other.get("a.amd", "1").getDependencies(), expected.getDependencies());
+    assertEquals(other.get("b.amd", "2").getDependencies(), expected.getDependencies());
+    assertEquals(file.length(), length + 6);
+
+    // The next put rebuilds the file without the partial record and puts from the first instance see the new file
+    other.put("c.amd", "3", expected);
+    assertNotNull(index.get("b.amd", "2"));
+    index.put("b.amd", "4", expected);
+    assertNull(new ArtifactMetaDataIndex(file).get("b.amd", "2"));
+    assertNotNull(new ArtifactMetaDataIndex(file).get("b.amd", "4"));
+    assertNotNull(new ArtifactMetaDataIndex(file).get("c.amd", "3"));
+
+    // Republishing compacts the file
+    for (int i = 0; i < 100; i++) {
+      index.put("a.amd", "1", expected);
+    }
+    assertTrue(file.length() < length * 12);
+    assertEquals(new ArtifactMetaDataIndex(file).get("a.amd", "1").getDependencies(), expected.getDependencies());
+  }
+
+  @Test
+  public void blobs() throws Exception {
+    File cache = new File("target/test/deps");
+    FileTools.prune(cache);
+
+    CacheProcess process = new CacheProcess(new DefaultOutput(), map("dir", "target/test/deps", "blobs", "true"));
+    Artifact first = new Artifact("org.savantbuild.test", "integration-build", "integration-build", "2.1.1-IB1", "jar");
+    Artifact second = new Artifact("org.savantbuild.test", "integration-build", "integration-build", "2.1.1-IB2", "jar");
+
+    File artFile = new File("test-deps/savant/org/savantbuild/test/integration-build/2.1.1-{integration}/integration-build-2.1.1-IB20071231144403111.jar");
+    File f1 = process.publish(first, first.getArtifactFile(), artFile);
+    File f2 = process.publish(second, second.getArtifactFile(), artFile);
+    process.publish(second, second.getArtifactFile() + ".md5", new File(artFile.getPath() + ".md5"));
+
+    // One copy of the contents for both versions and the MD5 file is copied
+    String md5 = FileTools.md5(artFile).sum;
+    File[] blobs = new File(cache, ".blobs/" + md5.substring(0, 2)).listFiles();
+    assertEquals(blobs.length, 1);
+    assertEquals(blobs[0].getName(), md5);
+    assertEquals(new File(cache, ".blobs").listFiles().length, 1);
+    assertEquals(FileTools.md5(f1).sum, md5);
+    assertEquals(FileTools.md5(f2).sum, md5);
+
+    // Publishing again replaces the link
+    f1 = process.publish(first, first.getArtifactFile(), artFile);
+    assertEquals(FileTools.md5(f1).sum, md5);
+    assertEquals(FileTools.md5(blobs[0]).sum, md5);
+  }
 }
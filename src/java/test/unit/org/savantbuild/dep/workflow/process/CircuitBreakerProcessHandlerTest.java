@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.workflow.process;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.savantbuild.dep.workflow.PublishWorkflowHandler;
+import org.savantbuild.domain.Artifact;
+import org.savantbuild.io.DoesNotExistException;
+import org.savantbuild.io.FileTools;
+import org.savantbuild.io.TemporaryIOException;
+import org.savantbuild.run.output.DefaultOutput;
+import org.testng.annotations.Test;
+
+import static java.util.Arrays.*;
+import static org.savantbuild.TestTools.*;
+import static org.testng.Assert.*;
+
+/**
+ * <p>
+ * This tests the circuit breaker process handler.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class CircuitBreakerProcessHandlerTest {
+  private final Artifact artifact = new Artifact("org.savantbuild.test", "major-compat", "major-compat", "1.0", "jar");
+
+  @Test
+  public void opens() {
+    FakeProcess process = new FakeProcess("http://opens");
+    CircuitBreakerProcessHandler breaker = new CircuitBreakerProcessHandler(new DefaultOutput(), process,
+      map("maxFailures", "2"));
+
+    // A failure and then a success resets the count
+    process.fail = true;
+    fetch(breaker, TemporaryIOException.class);
+    process.fail = false;
+    fetch(breaker, DoesNotExistException.class);
+    process.fail = true;
+    fetch(breaker, TemporaryIOException.class);
+    assertFalse(breaker.getHealth().isOpen());
+    fetch(breaker, TemporaryIOException.class);
+    assertTrue(breaker.getHealth().isOpen());
+    assertEquals(process.calls, 4);
+
+    // The process is skipped from now on, even by other workflows
+    process.fail = false;
+    fetch(breaker, TemporaryIOException.class);
+    breaker = new CircuitBreakerProcessHandler(new DefaultOutput(), process, map("maxFailures", "2"));
+    fetch(breaker, TemporaryIOException.class);
+    assertNull(breaker.determineVersion(artifact));
+    assertEquals(process.calls, 4);
+  }
+
+  @Test
+  public void off() {
+    FakeProcess process = new FakeProcess("http://off");
+    process.fail = true;
+    CircuitBreakerProcessHandler breaker = new CircuitBreakerProcessHandler(new DefaultOutput(), process,
+      map("maxFailures", "0"));
+    for (int i = 0; i < 5; i++) {
+      fetch(breaker, TemporaryIOException.class);
+    }
+
+    assertEquals(process.calls, 5);
+  }
+
+  @Test
+  public void probe() throws Exception {
+    File healthDir = new File("target/test/health");
+    FileTools.prune(healthDir);
+
+    FakeProcess process = new FakeProcess("http://probe");
+    process.fail = true;
+    final long[] time = {1000000};
+    CircuitBreakerProcessHandler breaker = new CircuitBreakerProcessHandler(new DefaultOutput(), process,
+      map("maxFailures", "1", "retryAfter", "1", "healthDir", healthDir.getPath())) {
+      @Override
+      long now() {
+        return time[0];
+      }
+    };
+    fetch(breaker, TemporaryIOException.class);
+    assertTrue(breaker.getHealth().isOpen());
+    assertEquals(healthDir.list().length, 1);
+
+    // A later build reads the record and skips the process until the retry time has passed
+    ProcessHealth later = new ProcessHealth("http://probe", new File(healthDir, healthDir.list()[0]));
+    assertTrue(later.isOpen());
+    assertFalse(later.allow(1000, time[0] + 999));
+    assertTrue(later.allow(1000, time[0] + 1000));
+
+    // The probe fails and opens the circuit again
+    time[0] += 1000;
+    fetch(breaker, TemporaryIOException.class);
+    assertEquals(process.calls, 2);
+    fetch(breaker, TemporaryIOException.class);
+    assertEquals(process.calls, 2);
+
+    // The probe works and closes the circuit
+    time[0] += 1000;
+    process.fail = false;
+    fetch(breaker, DoesNotExistException.class);
+    assertFalse(breaker.getHealth().isOpen());
+    assertEquals(healthDir.list().length, 0);
+    fetch(breaker, DoesNotExistException.class);
+    assertEquals(process.calls, 4);
+  }
+
+  @Test
+  public void hedgeLoser() throws Exception {
+    final SlowProcess slow = new SlowProcess("http://slow");
+    FakeProcess fast = new FakeProcess("http://fast") {
+      @Override
+      public File fetch(Artifact artifact, String item, PublishWorkflowHandler publishWorkflowHandler) {
+        // Only win once the slow process is running, so that it is always the one that is cancelled
+        slow.started.acquireUninterruptibly();
+        return new File(item);
+      }
+    };
+    CircuitBreakerProcessHandler slowBreaker = new CircuitBreakerProcessHandler(new DefaultOutput(), slow,
+      map("maxFailures", "2"));
+    CircuitBreakerProcessHandler fastBreaker = new CircuitBreakerProcessHandler(new DefaultOutput(), fast,
+      map("maxFailures", "2"));
+    Finished finished = new Finished(slowBreaker, 5);
+    HedgedProcessHandler hedged = new HedgedProcessHandler(new DefaultOutput(),
+      asList((ProcessHandler) finished, fastBreaker), 0);
+
+    // The fast process always answers first and the slow one is cancelled
+    for (int i = 0; i < 5; i++) {
+      assertNotNull(hedged.fetch(artifact, artifact.getArtifactFile(), new PublishWorkflowHandler()));
+    }
+
+    assertTrue(finished.done.await(10, TimeUnit.SECONDS));
+    assertEquals(slow.cancelled, 5);
+    assertFalse(slowBreaker.getHealth().isOpen());
+  }
+
+  private void fetch(CircuitBreakerProcessHandler breaker, Class<? extends Exception> expected) {
+    try {
+      breaker.fetch(artifact, artifact.getArtifactFile(), new PublishWorkflowHandler());
+      fail("Should have failed");
+    } catch (Exception e) {
+      assertEquals(e.getClass(), expected);
+    }
+  }
+
+  private static class SlowProcess extends FakeProcess {
+    private final Semaphore started = new Semaphore(0);
+    private volatile int cancelled;
+
+    private SlowProcess(String url) {
+      super(url);
+    }
+
+    @Override
+    public File fetch(Artifact artifact, String item, PublishWorkflowHandler publishWorkflowHandler) {
+      // Wait until cancelled, like a download whose writes check for interrupts
+      started.release();
+      while (!Thread.currentThread().isInterrupted()) {
+        Thread.yield();
+      }
+
+      synchronized (this) {
+        cancelled++;
+      }
+
+      throw new TemporaryIOException(new InterruptedIOException("Interrupted"));
+    }
+  }
+
+  /**
+   * Counts down once the breaker it wraps has handled each fetch, including the failures.
+   */
+  private static class Finished extends FakeProcess {
+    private final CircuitBreakerProcessHandler breaker;
+    private final CountDownLatch done;
+
+    private Finished(CircuitBreakerProcessHandler breaker, int fetches) {
+      super(breaker.toString());
+      this.breaker = breaker;
+      this.done = new CountDownLatch(fetches);
+    }
+
+    @Override
+    public File fetch(Artifact artifact, String item, PublishWorkflowHandler publishWorkflowHandler) {
+      try {
+        return breaker.fetch(artifact, item, publishWorkflowHandler);
+      } finally {
+        done.countDown();
+      }
+    }
+  }
+
+  private static class FakeProcess extends AbstractProcessHandler {
+    private final String url;
+    private boolean fail;
+    private int calls;
+
+    private FakeProcess(String url) {
+      this.url = url;
+    }
+
+    @Override
+    public File fetch(Artifact artifact, String item, PublishWorkflowHandler publishWorkflowHandler) {
+      calls++;
+      if (fail) {
+        throw new TemporaryIOException("Connection refused");
+      }
+
+      throw new DoesNotExistException();
+    }
+
+    @Override
+    public String determineVersion(Artifact artifact) {
+      return "1.0";
+    }
+
+    @Override
+    public File publish(Artifact artifact, String item, File file) {
+      return null;
+    }
+
+    @Override
+    public boolean delete(Artifact artifact, String item) {
+      return false;
+    }
+
+    @Override
+    public void deleteIntegrationBuilds(Artifact artifact) {
+    }
+
+    @Override
+    public String toString() {
+      return url;
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.workflow.process;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.savantbuild.dep.workflow.PublishWorkflowHandler;
+import org.savantbuild.domain.Artifact;
+import org.savantbuild.io.DoesNotExistException;
+import org.savantbuild.io.FileTools;
+import org.savantbuild.io.TemporaryIOException;
+import org.savantbuild.run.output.DefaultOutput;
+import org.testng.annotations.Test;
+
+import static java.util.Arrays.*;
+import static org.savantbuild.TestTools.*;
+import static org.testng.Assert.*;
+
+/**
+ * <p>
+ * This tests the hedged process handler.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class HedgedProcessHandlerTest {
+  private static final long HOUR = 60 * 60 * 1000;
+  private final Artifact artifact = new Artifact("org.savantbuild.test", "major-compat", "major-compat", "1.0", "jar");
+  private final File source = new File("test-deps/savant/org/savantbuild/test/major-compat/1.0/major-compat-1.0.jar");
+
+  @Test
+  public void fastestWins() throws Exception {
+    PublishWorkflowHandler pw = publishWorkflow();
+    CountDownLatch release = new CountDownLatch(1);
+    FakeProcess slow = new FakeProcess(release, null, 1);
+    FakeProcess fast = new FakeProcess(null, null, 1);
+    HedgedProcessHandler hedged = new HedgedProcessHandler(new DefaultOutput(), asList((ProcessHandler) slow, fast), 0);
+
+    // The slow process is still blocked when the fast one wins
+    File file = hedged.fetch(artifact, artifact.getArtifactFile(), pw);
+    assertTrue(file.isFile());
+    assertEquals(fast.published.get(), 1);
+
+    // The slow process was cancelled and never publishes once it finishes
+    release.countDown();
+    assertTrue(slow.done.await(10, TimeUnit.SECONDS));
+    assertEquals(slow.published.get(), 0);
+  }
+
+  @Test
+  public void sharedPool() throws Exception {
+    PublishWorkflowHandler pw = publishWorkflow();
+    CountDownLatch release = new CountDownLatch(1);
+    FakeProcess slow = new FakeProcess(release, null, 5);
+    FakeProcess fast = new FakeProcess(null, null, 5);
+    HedgedProcessHandler hedged = new HedgedProcessHandler(new DefaultOutput(), asList((ProcessHandler) slow, fast), 0);
+    for (int i = 0; i < 5; i++) {
+      assertNotNull(hedged.fetch(artifact, artifact.getArtifactFile(), pw));
+    }
+
+    // The slow processes of the earlier races finish after later races ran and are still shut out
+    release.countDown();
+    assertTrue(slow.done.await(10, TimeUnit.SECONDS));
+    assertEquals(fast.published.get(), 5);
+    assertEquals(slow.published.get(), 0);
+
+    hedged.shutdown();
+    assertNotNull(hedged.fetch(artifact, artifact.getArtifactFile(), pw));
+    hedged.shutdown();
+  }
+
+  @Test
+  public void delay() throws Exception {
+    PublishWorkflowHandler pw = publishWorkflow();
+    FakeProcess first = new FakeProcess(null, null, 1);
+    FakeProcess second = new FakeProcess(null, null, 1);
+    HedgedProcessHandler hedged = new HedgedProcessHandler(new DefaultOutput(), asList((ProcessHandler) first, second), HOUR);
+
+    assertNotNull(hedged.fetch(artifact, artifact.getArtifactFile(), pw));
+    assertEquals(first.started.get(), 1);
+    assertEquals(second.started.get(), 0);
+  }
+
+  /**
+   * The delay is an hour, so this only finishes if the failure starts the next process right away.
+   */
+  @Test(timeOut = 60000)
+  public void failureStartsNext() throws Exception {
+    PublishWorkflowHandler pw = publishWorkflow();
+    FakeProcess broken = new FakeProcess(null, new TemporaryIOException(), 1);
+    FakeProcess mirror = new FakeProcess(null, null, 1);
+    HedgedProcessHandler hedged = new HedgedProcessHandler(new DefaultOutput(), asList((ProcessHandler) broken, mirror), HOUR);
+
+    assertNotNull(hedged.fetch(artifact, artifact.getArtifactFile(), pw));
+    assertEquals(mirror.published.get(), 1);
+  }
+
+  @Test
+  public void allFail() throws Exception {
+    PublishWorkflowHandler pw = publishWorkflow();
+    FakeProcess missing = new FakeProcess(null, new DoesNotExistException(), 2);
+    FakeProcess broken = new FakeProcess(null, new TemporaryIOException(), 1);
+    HedgedProcessHandler hedged = new HedgedProcessHandler(new DefaultOutput(), asList((ProcessHandler) missing, broken), 0);
+    try {
+      hedged.fetch(artifact, artifact.getArtifactFile(), pw);
+      fail("Should have failed");
+    } catch (TemporaryIOException e) {
+      // Expected
+    }
+
+    hedged = new HedgedProcessHandler(new DefaultOutput(), asList((ProcessHandler) missing, missing), 0);
+    try {
+      hedged.fetch(artifact, artifact.getArtifactFile(), pw);
+      fail("Should have failed");
+    } catch (DoesNotExistException e) {
+      // Expected
+    }
+  }
+
+  private PublishWorkflowHandler publishWorkflow() {
+    FileTools.prune(new File("target/test/deps"));
+    PublishWorkflowHandler pw = new PublishWorkflowHandler();
+    pw.getProcesses().add(new CacheProcess(new DefaultOutput(), map("dir", "target/test/deps")));
+    return pw;
+  }
+
+  private class FakeProcess extends AbstractProcessHandler {
+    private final CountDownLatch release;
+    private final Exception failure;
+    private final CountDownLatch done;
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger published = new AtomicInteger();
+
+    /**
+     * @param release The latch the process waits on before it publishes or null to publish right away.
+     * @param failure The failure to throw or null.
+     * @param fetches The number of fetches that count down the done latch.
+     */
+    private FakeProcess(CountDownLatch release, Exception failure, int fetches) {
+      this.release = release;
+      this.failure = failure;
+      this.done = new CountDownLatch(fetches);
+    }
+
+    @Override
+    public File fetch(Artifact artifact, String item, PublishWorkflowHandler publishWorkflowHandler)
+      throws TemporaryIOException, DoesNotExistException {
+      started.incrementAndGet();
+      try {
+        if (failure instanceof TemporaryIOException) {
+          throw (TemporaryIOException) failure;
+        } else if (failure instanceof DoesNotExistException) {
+          throw (DoesNotExistException) failure;
+        }
+
+        // Wait like a download that ignores interrupts
+        while (release != null) {
+          try {
+            release.await();
+            break;
+          } catch (InterruptedException e) {
+            // Keep waiting
+          }
+        }
+
+        File file = publishWorkflowHandler.publish(artifact, item, source);
+        published.incrementAndGet();
+        return file;
+      } finally {
+        done.countDown();
+      }
+    }
+
+    @Override
+    public String determineVersion(Artifact artifact) {
+      return null;
+    }
+
+    @Override
+    public File publish(Artifact artifact, String item, File file) {
+      return null;
+    }
+
+    @Override
+    public boolean delete(Artifact artifact, String item) {
+      return false;
+    }
+
+    @Override
+    public void deleteIntegrationBuilds(Artifact artifact) {
+    }
+  }
+}
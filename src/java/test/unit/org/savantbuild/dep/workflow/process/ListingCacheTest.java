@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.workflow.process;
+
+import java.io.File;
+import java.net.URI;
+import java.util.HashSet;
+
+import org.savantbuild.io.FileTools;
+import org.testng.annotations.Test;
+
+import static java.util.Arrays.*;
+import static org.testng.Assert.*;
+
+/**
+ * <p>
+ * This tests the listing cache.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class ListingCacheTest {
+  @Test
+  public void putAndGet() throws Exception {
+    File dir = new File("target/test/listings");
+    FileTools.prune(dir);
+
+    URI uri = new URI("http://localhost/org/savantbuild/test/project");
+    ListingCache cache = new ListingCache(dir, 60);
+    assertNull(cache.get(uri));
+
+    cache.put(uri, new HashSet<String>(asList("1.0", "2.0")), "\"v1\"", null);
+    ListingCache.Listing listing = cache.get(uri);
+    assertEquals(listing.names, new HashSet<String>(asList("1.0", "2.0")));
+    assertEquals(listing.etag, "\"v1\"");
+    assertNull(listing.lastModified);
+    assertTrue(cache.isFresh(listing));
+    assertNull(cache.get(new URI("http://localhost/org/savantbuild/test/other")));
+
+    // Expired listings are still returned so that they can be revalidated
+    ListingCache expired = new ListingCache(dir, 0);
+    listing = expired.get(uri);
+    assertFalse(expired.isFresh(listing));
+
+    cache.put(uri, new HashSet<String>(asList("3.0")), null, "Mon, 03 Jan 2011 00:00:00 GMT");
+    listing = cache.get(uri);
+    assertEquals(listing.names, new HashSet<String>(asList("3.0")));
+    assertNull(listing.etag);
+    assertEquals(listing.lastModified, "Mon, 03 Jan 2011 00:00:00 GMT");
+    assertEquals(dir.listFiles().length, 1);
+  }
+}
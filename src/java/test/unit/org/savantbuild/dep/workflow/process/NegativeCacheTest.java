@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.dep.workflow.process;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.savantbuild.domain.Artifact;
+import org.savantbuild.io.FileTools;
+import org.testng.annotations.Test;
+
+import static java.util.Arrays.*;
+import static org.testng.Assert.*;
+
+/**
+ * <p>
+ * This tests the negative cache.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class NegativeCacheTest {
+  @Test
+  public void addAndRemove() throws Exception {
+    File dir = new File("target/test/deps");
+    FileTools.prune(dir);
+
+    Artifact one = new Artifact("org.savantbuild.test", "project", "one", "1.0", "jar");
+    Artifact two = new Artifact("org.savantbuild.test", "project", "two", "1.0", "jar");
+    NegativeCache cache = new NegativeCache("target/test/deps", 0);
+    assertFalse(cache.contains(one, "one-1.0-src.jar"));
+
+    Map<Artifact, Set<String>> negatives = new HashMap<Artifact, Set<String>>();
+    negatives.put(one, new HashSet<String>(asList("one-1.0-src.jar", "one-1.0.jar.amd")));
+    negatives.put(two, new HashSet<String>(asList("two-1.0-src.jar")));
+    cache.add(negatives);
+    assertTrue(cache.contains(one, "one-1.0-src.jar"));
+    assertTrue(cache.contains(two, "two-1.0-src.jar"));
+    assertFalse(cache.contains(two, "two-1.0.jar.amd"));
+
+    // Both artifacts are in the same project file
+    assertEquals(new File(dir, "org/savantbuild/test/project").listFiles().length, 1);
+
+    // Another build sees the records and its removals are merged with the file
+    NegativeCache other = new NegativeCache("target/test/deps", 0);
+    assertTrue(other.contains(one, "one-1.0.jar.amd"));
+    assertTrue(other.remove(one, "one-1.0.jar.amd"));
+    assertFalse(other.remove(one, "one-1.0.jar.amd"));
+    assertFalse(new NegativeCache("target/test/deps", 0).contains(one, "one-1.0.jar.amd"));
+    assertTrue(new NegativeCache("target/test/deps", 0).contains(one, "one-1.0-src.jar"));
+  }
+
+  @Test
+  public void expires() throws Exception {
+    File dir = new File("target/test/deps");
+    FileTools.prune(dir);
+
+    Artifact artifact = new Artifact("org.savantbuild.test", "project", "one", "1.0", "jar");
+    File file = new File(dir, "org/savantbuild/test/project/.negatives");
+    file.getParentFile().mkdirs();
+    long past = System.currentTimeMillis() - 1000;
+    FileTools.write(file, past + " 1.0/one-1.0-src.jar\n0 1.0/one-1.0.jar.amd\nbad line\n");
+
+    NegativeCache cache = new NegativeCache("target/test/deps", 60);
+    assertFalse(cache.contains(artifact, "one-1.0-src.jar"));
+    assertTrue(cache.contains(artifact, "one-1.0.jar.amd"));
+
+    // Rewriting drops the expired records
+    Map<Artifact, Set<String>> negatives = new HashMap<Artifact, Set<String>>();
+    negatives.put(artifact, new HashSet<String>(asList("one-1.0.jar")));
+    cache.add(negatives);
+    String contents = FileTools.read(file);
+    assertFalse(contents.contains("one-1.0-src.jar"));
+    assertTrue(contents.contains("0 1.0/one-1.0.jar.amd"));
+    assertTrue(cache.contains(artifact, "one-1.0.jar"));
+  }
+}
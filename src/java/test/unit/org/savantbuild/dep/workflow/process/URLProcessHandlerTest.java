@@ -16,13 +16,23 @@
 package org.savantbuild.dep.workflow.process;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
+import java.util.concurrent.CountDownLatch;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.savantbuild.BuildException;
 import org.savantbuild.dep.workflow.PublishWorkflowHandler;
 import org.savantbuild.domain.Artifact;
 import org.savantbuild.domain.ArtifactMetaData;
+import org.savantbuild.domain.Process;
 import org.savantbuild.io.DoesNotExistException;
 import org.savantbuild.io.FileTools;
+import org.savantbuild.io.TemporaryIOException;
 import org.savantbuild.run.output.DefaultOutput;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -71,6 +81,31 @@ public class URLProcessHandlerTest {
     assertNotNull(file);
 
     assertEquals(file.getAbsolutePath(), new File(result).getAbsolutePath());
+
+    // The download was renamed into place, so there aren't any staging files left
+    assertEquals(file.getParentFile().list().length, 2);
+  }
+
+  @Test
+  public void fetchStagedToMultipleProcesses() throws Exception {
+    FileTools.prune(new File("target/test/deps"));
+    FileTools.prune(new File("target/test/deps2"));
+
+    Artifact artifact = new Artifact("org.savantbuild.test", "major-compat", "major-compat", "1.0", "jar");
+
+    PublishWorkflowHandler pw = new PublishWorkflowHandler();
+    pw.getProcesses().add(new CacheProcess(new DefaultOutput(), map("dir", "target/test/deps")));
+    pw.getProcesses().add(new CacheProcess(new DefaultOutput(), map("dir", "target/test/deps2")));
+
+    URLProcessHandler ufp = new URLProcessHandler(new DefaultOutput(), map("url", makeCurDirURL() + "/test-deps/savant"));
+    File file = ufp.fetch(artifact, artifact.getArtifactFile(), pw);
+    assertEquals(file.getAbsolutePath(), new File("target/test/deps/org/savantbuild/test/major-compat/1.0/major-compat-1.0.jar").getAbsolutePath());
+
+    // The second process copies the file the first process renamed into place
+    File copy = new File("target/test/deps2/org/savantbuild/test/major-compat/1.0/major-compat-1.0.jar");
+    assertTrue(copy.isFile());
+    assertEquals(copy.length(), file.length());
+    assertEquals(file.getParentFile().list().length, 2);
   }
 
   @Test(enabled = true)
@@ -199,4 +234,53 @@ public class URLProcessHandlerTest {
     File file = new File("");
     return file.toURI().toURL().toString();
   }
+
+  @Test
+  public void readTimeout() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+    server.createContext("/", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          // Done
+        }
+
+        exchange.close();
+      }
+    });
+    server.start();
+
+    try {
+      String url = "http://localhost:" + server.getAddress().getPort();
+      ProcessHandler process = ProcessHandlerFactory.buildProcess(new DefaultOutput(),
+        new Process(map("type", "url", "url", url, "readTimeout", "1")));
+
+      Artifact artifact = new Artifact("org.savantbuild.test", "major-compat", "major-compat", "1.0", "jar");
+      long start = System.currentTimeMillis();
+      try {
+        process.fetch(artifact, artifact.getArtifactFile(), new PublishWorkflowHandler());
+        fail("Should have timed out");
+      } catch (TemporaryIOException e) {
+        // Expected
+      }
+
+      assertTrue(System.currentTimeMillis() - start < 5000);
+    } finally {
+      latch.countDown();
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void invalidTimeout() {
+    try {
+      ProcessHandlerFactory.buildProcess(new DefaultOutput(),
+        new Process(map("type", "url", "url", "http://localhost", "connectTimeout", "-1")));
+      fail("Should have failed");
+    } catch (BuildException e) {
+      assertTrue(e.getMessage().contains("connectTimeout"));
+    }
+  }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2001-2011, Inversoft, All Rights Reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package org.savantbuild.domain;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * <p>
+ * This class tests the artifact id.
+ * </p>
+ *
+ * @author Brian Pontarelli
+ */
+public class ArtifactIDTest {
+  @Test
+  public void intern() {
+    ArtifactID id = ArtifactID.intern("group", "project", "name", null);
+    assertTrue(id.isInterned());
+    assertEquals(id.getType(), "jar");
+    assertSame(ArtifactID.intern("group", "project", "name", "jar"), id);
+    assertSame(new ArtifactID("group", "project", "name", "jar").intern(), id);
+    assertSame(ArtifactID.intern(new String("group"), "project", "other", "jar").getGroup(), id.getGroup());
+
+    try {
+      id.setName("other");
+      fail("Should have failed");
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void changeArtifact() {
+    ArtifactID id = ArtifactID.intern("group", "project", "name", "jar");
+    Artifact artifact = new Artifact(id, "1.0", null);
+    artifact.setName("other");
+    assertEquals(artifact.getName(), "other");
+    assertEquals(artifact.getProject(), "project");
+    assertFalse(artifact.getId().isInterned());
+    assertEquals(id.getName(), "name");
+  }
+
+  @Test
+  public void hashCodeChanges() {
+    ArtifactID id = new ArtifactID("group", "project", "name", "jar");
+    int hash = id.hashCode();
+    id.setName("other");
+    assertFalse(hash == id.hashCode());
+    assertEquals(id.hashCode(), new ArtifactID("group", "project", "other", "jar").hashCode());
+  }
+}
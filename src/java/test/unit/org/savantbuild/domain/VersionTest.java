@@ -481,4 +481,37 @@ public class VersionTest {
       assertTrue(v.isPatchVersion());
     }
   }
+
+  @Test
+  public void parse() {
+    Version v = Version.parse("1.0-RC4");
+    assertSame(Version.parse("1.0-RC4"), v);
+    assertEquals(new Version("1.0-RC4"), v);
+    assertTrue(Version.parse("1.0-RC4").compareTo(Version.parse("1.0-RC5")) < 0);
+    assertTrue(Version.parse("1.0-RC4").compareTo(Version.parse("1.0-beta5")) > 0);
+    assertTrue(Version.parse("1.0-RC4-B2").compareTo(Version.parse("1.0-RC4")) < 0);
+
+    // Numbers that are too big for a long are compared lexically
+    Version big = Version.parse("1.0-b99999999999999999999");
+    assertTrue(big.compareTo(Version.parse("1.0-b100000000000000000000")) > 0);
+    assertEquals(big.compareTo(Version.parse("1.0-b99999999999999999999")), 0);
+  }
+
+  @Test
+  public void parseCache() {
+    Version hot = Version.parse("3.2.1");
+    Version cold = Version.parse("1.0.0");
+    for (int i = 0; i < 30000; i++) {
+      Version.parse("1.0." + i);
+
+      // The versions that are used keep their instance while the others are dropped
+      if (i % 1000 == 0) {
+        assertSame(Version.parse("3.2.1"), hot);
+      }
+    }
+
+    assertSame(Version.parse("3.2.1"), hot);
+    assertNotSame(Version.parse("1.0.0"), cold);
+    assertEquals(Version.parse("1.0.0"), cold);
+  }
 }
@@ -16,8 +16,11 @@
 package org.savantbuild.io;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 
 import org.testng.annotations.Test;
 
@@ -87,6 +90,63 @@ public class FileToolsTest {
     assertEquals(md5.sum, "c0bfbec19e8e5578e458ce5bfee20751");
   }
 
+  @Test
+  public void copyAtomically() throws Exception {
+    File from = new File("src/java/test/unit/org/savantbuild/io/FileToolsTest.java");
+    File dir = new File("target/test/atomic");
+    FileTools.prune(dir);
+    dir.mkdirs();
+
+    // Replaces the existing file and leaves nothing else behind
+    File to = new File(dir, "FileToolsTest.java");
+    FileTools.write(to, "old");
+    FileTools.copyAtomically(from, to, true);
+    assertEquals(to.length(), from.length());
+    compare(from, to);
+    assertEquals(dir.listFiles().length, 1);
+  }
+
+  @Test
+  public void link() throws Exception {
+    File dir = new File("target/test/link");
+    FileTools.prune(dir);
+    dir.mkdirs();
+
+    File target = new File(dir, "target.txt");
+    FileTools.write(target, "target");
+    File link = new File(dir, "link.txt");
+    assertTrue(FileTools.link(target, link));
+    assertEquals(FileTools.read(link), "target");
+
+    // A hard link still has the contents after the target is deleted
+    assertTrue(target.delete());
+    assertEquals(FileTools.read(link), "target");
+    assertFalse(FileTools.link(target, new File(dir, "missing.txt")));
+  }
+
+  @Test
+  public void unzip() throws Exception {
+    File dir = new File("target/test/unzip");
+    FileTools.prune(dir);
+    dir.mkdirs();
+
+    File jar = new File(dir, "test.jar");
+    JarOutputStream jos = new JarOutputStream(new FileOutputStream(jar));
+    jos.putNextEntry(new JarEntry("org/"));
+    jos.putNextEntry(new JarEntry("org/first.txt"));
+    jos.write("first".getBytes("UTF-8"));
+    jos.putNextEntry(new JarEntry("org/empty.txt"));
+    jos.putNextEntry(new JarEntry("second.txt"));
+    jos.write("second".getBytes("UTF-8"));
+    jos.close();
+
+    File out = new File(dir, "out");
+    FileTools.unzip(jar, out);
+    assertEquals(FileTools.read(new File(out, "org/first.txt")), "first");
+    assertEquals(new File(out, "org/empty.txt").length(), 0);
+    assertEquals(FileTools.read(new File(out, "second.txt")), "second");
+  }
+
   private void compare(File from, File to) {
     if (from.isDirectory()) {
       assertTrue(to.isDirectory());
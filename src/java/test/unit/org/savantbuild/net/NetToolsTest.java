@@ -15,7 +15,31 @@
  */
 package org.savantbuild.net;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.URI;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.savantbuild.io.DoesNotExistException;
+import org.savantbuild.io.FileTools;
+import org.savantbuild.io.MD5;
+import org.savantbuild.io.TemporaryIOException;
+import org.savantbuild.util.StringTools;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 
 import org.testng.annotations.Test;
 
@@ -36,4 +60,200 @@ public class NetToolsTest {
     uri = NetTools.build("http://www.example.com/", "/org/apache/commons/", "common-collections", "3.0", "commons-collections-3.0.jar");
     assertEquals(uri.toString(), "http://www.example.com/org/apache/commons/common-collections/3.0/commons-collections-3.0.jar");
   }
+
+  @Test
+  public void conditional() throws Exception {
+    final int[] bodies = new int[1];
+    HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+    server.createContext("/", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("ETag", "\"v1\"");
+        if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+          exchange.sendResponseHeaders(304, -1);
+        } else {
+          bodies[0]++;
+          byte[] body = "1.0\n2.0".getBytes("UTF-8");
+          exchange.sendResponseHeaders(200, body.length);
+          OutputStream os = exchange.getResponseBody();
+          os.write(body);
+          os.close();
+        }
+        exchange.close();
+      }
+    });
+    server.start();
+
+    try {
+      URI uri = new URI("http://localhost:" + server.getAddress().getPort() + "/project");
+      Content content = NetTools.downloadToString(uri, null, null, null, null);
+      assertTrue(content.isModified());
+      assertEquals(content.body, "1.0\n2.0");
+      assertEquals(content.etag, "\"v1\"");
+
+      content = NetTools.downloadToString(uri, null, null, content.etag, null);
+      assertFalse(content.isModified());
+      assertEquals(content.etag, "\"v1\"");
+      assertEquals(bodies[0], 1);
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void keepAlive() throws Exception {
+    final Set<Integer> ports = Collections.synchronizedSet(new HashSet<Integer>());
+    HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+    server.createContext("/", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        ports.add(exchange.getRemoteAddress().getPort());
+        byte[] body = "body".getBytes("UTF-8");
+        if (exchange.getRequestURI().getPath().endsWith("missing")) {
+          exchange.sendResponseHeaders(404, body.length);
+        } else if (exchange.getRequestHeaders().getFirst("If-None-Match") != null) {
+          exchange.sendResponseHeaders(304, -1);
+          body = null;
+        } else {
+          exchange.sendResponseHeaders(200, body.length);
+        }
+
+        OutputStream os = exchange.getResponseBody();
+        if (body != null) {
+          os.write(body);
+        }
+        os.close();
+        exchange.close();
+      }
+    });
+    server.start();
+
+    try {
+      String base = "http://localhost:" + server.getAddress().getPort();
+      assertEquals(NetTools.downloadToString(new URI(base + "/one"), null, null), "body");
+      try {
+        NetTools.downloadToString(new URI(base + "/missing"), null, null);
+        fail("Should have failed");
+      } catch (DoesNotExistException e) {
+        // Expected
+      }
+
+      assertFalse(NetTools.downloadToString(new URI(base + "/two"), null, null, "\"v1\"", null).isModified());
+      assertEquals(NetTools.downloadToString(new URI(base + "/three"), null, null), "body");
+
+      // The errors and the 304 don't close the connection, so a single connection was used
+      assertEquals(ports.size(), 1);
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void transport() throws Exception {
+    Transport old = NetTools.getTransport();
+    NetTools.setTransport(new Transport() {
+      public Response get(URI uri, String username, String password, Map<String, String> headers) {
+        return new Response() {
+          public int getStatus() {
+            return 503;
+          }
+
+          public String getHeader(String name) {
+            return null;
+          }
+
+          public InputStream getBody() {
+            return new ByteArrayInputStream(new byte[0]);
+          }
+
+          public void close() {
+          }
+        };
+      }
+    });
+
+    try {
+      NetTools.downloadToString(new URI("http://localhost/project"), null, null);
+      fail("Should have failed");
+    } catch (TemporaryIOException e) {
+      // Expected
+    } finally {
+      NetTools.setTransport(old);
+    }
+  }
+
+  @Test
+  public void resume() throws Exception {
+    final byte[] body = new byte[100000];
+    for (int i = 0; i < body.length; i++) {
+      body[i] = (byte) i;
+    }
+
+    final List<String> ranges = Collections.synchronizedList(new ArrayList<String>());
+    HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+    server.createContext("/", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        ranges.add(range);
+        exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+        OutputStream os;
+        if (range == null) {
+          // Send part of the body and then stall so that the client times out
+          exchange.sendResponseHeaders(200, body.length);
+          os = exchange.getResponseBody();
+          os.write(body, 0, 40000);
+          os.flush();
+          try {
+            Thread.sleep(1500);
+          } catch (InterruptedException e) {
+            // Ignore
+          }
+        } else {
+          int start = Integer.parseInt(range.substring(6, range.length() - 1));
+          exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + (body.length - 1) + "/" + body.length);
+          exchange.sendResponseHeaders(206, body.length - start);
+          os = exchange.getResponseBody();
+          os.write(body, start, body.length - start);
+        }
+
+        try {
+          os.close();
+        } catch (IOException e) {
+          // The client went away
+        }
+        exchange.close();
+      }
+    });
+    server.start();
+
+    Transport old = NetTools.getTransport();
+    NetTools.setTransport(new URLConnectionTransport(1000, 500));
+    File partials = new File("target/test/partials");
+    FileTools.prune(partials);
+    try {
+      byte[] sum = MessageDigest.getInstance("MD5").digest(body);
+      MD5 md5 = new MD5(StringTools.toHex(sum), sum, null);
+      URI uri = new URI("http://localhost:" + server.getAddress().getPort() + "/big.jar");
+      File file = File.createTempFile("savant-net-tools-test", "download");
+      file.deleteOnExit();
+      try {
+        NetTools.downloadToFile(uri, null, null, md5, file, partials);
+        fail("Should have timed out");
+      } catch (TemporaryIOException e) {
+        // Expected
+      }
+
+      File[] parts = partials.listFiles();
+      assertEquals(parts.length, 1);
+      assertTrue(parts[0].length() > 0);
+      long downloaded = parts[0].length();
+
+      NetTools.downloadToFile(uri, null, null, md5, file, partials);
+      assertEquals(ranges.get(1), "bytes=" + downloaded + "-");
+      assertEquals(file.length(), body.length);
+      assertTrue(Arrays.equals(FileTools.md5(file).bytes, sum));
+      assertEquals(partials.listFiles().length, 0);
+    } finally {
+      NetTools.setTransport(old);
+      server.stop(0);
+    }
+  }
 }
@@ -39,6 +39,11 @@ public class StringBuilderOutput extends DefaultOutput {
     }
   }
 
+  @Override
+  public boolean isEnabled(Level level) {
+    return level.ordinal() >= this.level.ordinal();
+  }
+
   @Override
   public void info(String message) {
     if (Level.INFO.ordinal() >= level.ordinal()) {
@@ -71,6 +71,16 @@ public class StringToolsTest {
     assertEquals(StringTools.toHex((byte) 234, (byte) 93), "ea5d");
   }
 
+  @Test
+  public void toBase64() throws Exception {
+    assertEquals(StringTools.toBase64(new byte[0]), "");
+    assertEquals(StringTools.toBase64("f".getBytes("UTF-8")), "Zg==");
+    assertEquals(StringTools.toBase64("fo".getBytes("UTF-8")), "Zm8=");
+    assertEquals(StringTools.toBase64("foo".getBytes("UTF-8")), "Zm9v");
+    assertEquals(StringTools.toBase64("Aladdin:open sesame".getBytes("UTF-8")), "QWxhZGRpbjpvcGVuIHNlc2FtZQ==");
+    assertEquals(StringTools.toBase64(new byte[]{(byte) 0xFB, (byte) 0xFF}), "+/8=");
+  }
+
   @Test
   public void fromHex() {
     assertTrue(Arrays.equals(StringTools.fromHex("00"), new byte[]{(byte) 0}));
@@ -93,4 +103,14 @@ public class StringToolsTest {
     assertFalse(StringTools.toBoolean("", false));
     assertFalse(StringTools.toBoolean("  ", false));
   }
+
+  @Test
+  public void toSize() {
+    assertEquals(StringTools.toSize("10", 1), 10);
+    assertEquals(StringTools.toSize("2k", 1), 2048);
+    assertEquals(StringTools.toSize("3M", 1), 3 * 1024 * 1024);
+    assertEquals(StringTools.toSize(" 4 g ", 1), 4L * 1024 * 1024 * 1024);
+    assertEquals(StringTools.toSize(null, 1), 1);
+    assertEquals(StringTools.toSize("  ", 1), 1);
+  }
 }